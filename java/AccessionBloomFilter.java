@@ -0,0 +1,338 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class AccessionBloomFilter
+{
+	// Concept:
+	//	  IS: a Bloom filter of sequence record accessions
+	//	 HAS: a bit array and the number of bits set per accession
+	//	DOES: adds the seqIds of sequence records or of whole release
+	//	      files, saves itself to disk and is loaded by memory-
+	//	      mapping. Given an accession, says whether it may have
+	//	      been added; a "no" is always right, a "yes" is wrong with
+	//	      the false positive rate chosen when it was built
+	// Implementation:
+	//	The bit count is a power of two. An accession is hashed once
+	//	with 64 bit FNV-1a followed by the MurmurHash3 finalizer, and
+	//	the bits are picked by double hashing from that hash. Queries
+	//	on bytes or characters do not allocate. Accessions are ASCII so
+	//	a char and its byte hash alike. File layout: magic, bit count,
+	//	hash count, accessions added, then the bit array as longs.
+	//	Typical use in a loader:
+	//	    AccessionBloomFilter known = AccessionBloomFilter.load(file);
+	//	    ...
+	//	    if (known.contains(accession, database)) ...
+	//	where 'database' does the exact lookup, only asked for
+	//	accessions that pass the filter.
+
+	//
+	// Constructors
+	//
+
+	public AccessionBloomFilter(
+		long expectedCount,        // the number of accessions expected
+		double falsePositiveRate)  // e.g. 0.01
+	{
+		// Purpose: creates an empty filter sized for 'expectedCount'
+		//          accessions at 'falsePositiveRate'
+		// Throws: IllegalArgumentException if the filter would be
+		//         larger than 2^33 bits (1GB)
+
+		double bits = -expectedCount * Math.log(falsePositiveRate) /
+			(Math.log(2) * Math.log(2));
+		long bitCount = 64;
+		while (bitCount < bits)
+		{
+			bitCount <<= 1;
+		}
+		if (bitCount > MAXBITS)
+		{
+			throw new IllegalArgumentException(
+				"filter of " + bitCount + " bits is too large");
+		}
+		int hashCount = (int)Math.round(
+			(double)bitCount / Math.max(1, expectedCount) * Math.log(2));
+		init(LongBuffer.wrap(new long[(int)(bitCount >>> 6)]),
+		     bitCount, Math.max(1, Math.min(hashCount, MAXHASHES)), 0L);
+	}
+
+	private AccessionBloomFilter(LongBuffer bits, long bitCount,
+				     int hashCount, long count)
+	{
+		// Purpose: creates a filter over 'bits', used by load
+
+		init(bits, bitCount, hashCount, count);
+	}
+
+	//
+	// Methods
+	//
+
+	public void add(CharSequence accession)
+	{
+		// Purpose: adds 'accession' to the filter
+		// Throws: ReadOnlyBufferException if the filter was loaded
+
+		long hash = hash(accession);
+		long step = step(hash);
+		for (int i = 0; i < this.hashCount; i++)
+		{
+			long bit = (hash + i * step) & this.mask;
+			int word = (int)(bit >>> 6);
+			this.bits.put(word, this.bits.get(word) | (1L << bit));
+		}
+		this.count++;
+	}
+
+	public void add(SeqRecord record)
+	{
+		// Purpose: adds every seqId of 'record' to the filter
+
+		for (int i = 0; i < record.getSeqIds().size(); i++)
+		{
+			add((String)record.getSeqIds().get(i));
+		}
+	}
+
+	public void addFile(String file, SeqRecord record)
+		throws IOException
+	{
+		// Purpose: adds the seqIds of every record of 'file'
+		// Returns: nothing
+		// Assumes: 'record' is of the class for the format of 'file'
+		// Effects: reads 'file' into 'record' one record at a time
+		// Throws: IOException if 'file' can't be read
+
+		PositionedReader reader = new PositionedReader(file);
+		try
+		{
+			while (true)
+			{
+				record.readText(reader);
+				// a record the query of 'record' rejects is not added
+				if (!record.isRejected())
+				{
+					if (record.getSeqIds().isEmpty())
+					{
+						break;
+					}
+					add(record);
+				}
+				if (record.getLine() == null)
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	public boolean mightContain(CharSequence accession)
+	{
+		// Purpose: determines whether 'accession' may have been added
+		// Returns: false if it certainly was not added
+
+		long hash = hash(accession);
+		return test(hash);
+	}
+
+	public boolean mightContain(byte[] bytes, int offset, int length)
+	{
+		// Purpose: determines whether the accession in bytes 'offset'
+		//          to 'offset' + 'length' of 'bytes' may have been added
+		// Returns: false if it certainly was not added
+
+		long hash = FNVBASIS;
+		for (int i = offset; i < offset + length; i++)
+		{
+			hash = (hash ^ (bytes[i] & 0xff)) * FNVPRIME;
+		}
+		return test(mix(hash));
+	}
+
+	public boolean contains(CharSequence accession, ExactLookup exact)
+		throws IOException
+	{
+		// Purpose: determines whether 'accession' is known, asking
+		//          'exact' only when the filter can't rule it out
+		// Returns: true if 'exact' finds it
+		// Throws: whatever 'exact' throws
+
+		return mightContain(accession) &&
+			exact.contains(accession.toString());
+	}
+
+	public void save(String file)
+		throws IOException
+	{
+		// Purpose: writes the filter to 'file'
+
+		DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try
+		{
+			out.writeLong(MAGIC);
+			out.writeLong(this.bitCount);
+			out.writeLong(this.hashCount);
+			out.writeLong(this.count);
+			for (int i = 0; i < this.bits.limit(); i++)
+			{
+				out.writeLong(this.bits.get(i));
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public static AccessionBloomFilter load(String file)
+		throws IOException
+	{
+		// Purpose: maps the filter saved in 'file'
+		// Returns: a read only filter
+		// Throws: IOException if 'file' can't be mapped or is not a
+		//         saved filter
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mapped = channel.map(
+				FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() < HEADERSIZE || mapped.getLong(0) != MAGIC)
+			{
+				throw new IOException(file + " is not a Bloom filter");
+			}
+			long bitCount = mapped.getLong(8);
+			int hashCount = (int)mapped.getLong(16);
+			long count = mapped.getLong(24);
+			if (channel.size() != HEADERSIZE + bitCount / 8)
+			{
+				throw new IOException(file + " is truncated");
+			}
+			mapped.position(HEADERSIZE);
+			LongBuffer bits = mapped.slice().asLongBuffer();
+			return new AccessionBloomFilter(bits, bitCount, hashCount,
+							count);
+		}
+		finally
+		{
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+
+	public long getCount()
+		// Purpose: accessor for the number of accessions added
+	{
+		return this.count;
+	}
+
+	public long getBitCount()
+		// Purpose: accessor for the size of the filter in bits
+	{
+		return this.bitCount;
+	}
+
+	public int getHashCount()
+		// Purpose: accessor for the number of bits set per accession
+	{
+		return this.hashCount;
+	}
+
+	public interface ExactLookup
+	{
+		// Concept:
+		//	  IS: the exact check made when the filter says an
+		//	      accession may be known, e.g. a database query or a
+		//	      lookup in the previous release
+
+		public boolean contains(String accession)
+			throws IOException;
+	}
+
+	private void init(LongBuffer bits, long bitCount, int hashCount,
+			  long count)
+	{
+		this.bits = bits;
+		this.bitCount = bitCount;
+		this.mask = bitCount - 1;
+		this.hashCount = hashCount;
+		this.count = count;
+	}
+
+	private boolean test(long hash)
+	{
+		// Purpose: determines whether all bits of 'hash' are set
+
+		long step = step(hash);
+		for (int i = 0; i < this.hashCount; i++)
+		{
+			long bit = (hash + i * step) & this.mask;
+			if ((this.bits.get((int)(bit >>> 6)) & (1L << bit)) == 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long hash(CharSequence accession)
+	{
+		long hash = FNVBASIS;
+		for (int i = 0; i < accession.length(); i++)
+		{
+			hash = (hash ^ (accession.charAt(i) & 0xff)) * FNVPRIME;
+		}
+		return mix(hash);
+	}
+
+	private static long step(long hash)
+		// Purpose: the second hash for double hashing, always odd so
+		//          every bit can be reached
+	{
+		return mix(hash ^ 0x9e3779b97f4a7c15L) | 1L;
+	}
+
+	private static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the bit array, on the heap while building, mapped when loaded
+	private LongBuffer bits;
+
+	// number of bits, a power of two, and bitCount - 1
+	private long bitCount;
+	private long mask;
+
+	// bits set per accession
+	private int hashCount;
+
+	// accessions added
+	private long count;
+
+	private static final long MAGIC = 0x414343424c4f4f31L;  // ACCBLOO1
+	private static final int HEADERSIZE = 32;
+	private static final long MAXBITS = 1L << 33;
+	private static final int MAXHASHES = 16;
+	private static final long FNVBASIS = 0xcbf29ce484222325L;
+	private static final long FNVPRIME = 0x100000001b3L;
+}
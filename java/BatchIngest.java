@@ -0,0 +1,413 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+public class BatchIngest
+{
+	// Concept:
+	//	  IS: a parallel ingest of all the flat files of a release in a
+	//	      directory, or matching a glob such as "gb*.seq"
+	//	 HAS: the format of the files, a RecordHandler, a chunk size and
+	//	      a work stealing thread pool
+	//	DOES: runs the handler on every record of every file and writes
+	//	      one output file per input file, "<input name>.out" in the
+	//	      output directory, with the handler output in input order.
+	//	      Reports progress while it runs
+	// Implementation:
+	//	Each file is split into record aligned chunks of about
+	//	"chunkSize" bytes by ShardManifest.plan, so a large file is
+	//	spread over all threads instead of holding one. Every chunk is
+	//	a task in a ForkJoinPool, queued largest first so small chunks
+	//	fill in at the end. A chunk writes its output to a temporary
+	//	file; the task that finishes the last chunk of an input file
+	//	concatenates its chunk outputs in order. The caller's thread
+	//	waits on the root task and prints progress every
+	//	"progressInterval" milliseconds.
+
+	//
+	// Constructors
+	//
+
+	public BatchIngest(
+		String format,           // format of the files, see SeqRecordFactory
+		RecordHandler handler,   // the work done on each record
+		long chunkSize,          // bytes per chunk of a file
+		int threads)             // threads of the pool
+	{
+		// Purpose: creates an ingest
+		// Throws: IllegalArgumentException if 'format' is not known
+
+		SeqRecordFactory.create(format);
+		this.format = format;
+		this.handler = handler;
+		this.chunkSize = chunkSize;
+		this.threads = Math.max(1, threads);
+	}
+
+	//
+	// Methods
+	//
+
+	public void setProgress(PrintStream progress, long progressInterval)
+		// Purpose: reports progress to 'progress', or not if null, every
+		//          'progressInterval' milliseconds
+	{
+		this.progress = progress;
+		this.progressInterval = progressInterval;
+	}
+
+	public static Vector<String> listFiles(String input)
+		throws IOException
+	{
+		// Purpose: finds the files named by 'input', a directory or a
+		//          glob in the last path element
+		// Returns: the file names in name order
+		// Throws: IOException if the directory can't be read
+
+		File dir = new File(input);
+		String glob = "*";
+		if (!dir.isDirectory())
+		{
+			glob = dir.getName();
+			dir = dir.getAbsoluteFile().getParentFile();
+		}
+		Vector<String> files = new Vector<String>();
+		DirectoryStream<Path> entries =
+			Files.newDirectoryStream(dir.toPath(), glob);
+		try
+		{
+			for (Path entry : entries)
+			{
+				if (Files.isRegularFile(entry))
+				{
+					files.add(entry.toString());
+				}
+			}
+		}
+		finally
+		{
+			entries.close();
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	public void ingest(String input, String outputDir)
+		throws IOException
+	{
+		// Purpose: ingests the files named by 'input', see listFiles
+		// Returns: nothing
+		// Effects: writes one output per file in 'outputDir'
+		// Throws: IOException if a file can't be read or written
+
+		ingest(listFiles(input), outputDir);
+	}
+
+	public void ingest(Vector<String> files, String outputDir)
+		throws IOException
+	{
+		// Purpose: ingests 'files'
+		// Returns: nothing
+		// Effects: writes one output per file in 'outputDir'
+		// Throws: IOException if a file can't be read or written
+
+		final File outDir = new File(outputDir);
+		outDir.mkdirs();
+		this.totalBytes.set(0);
+		this.bytesDone.set(0);
+		this.recordCount.set(0);
+		this.filesDone.set(0);
+		this.fileCount = files.size();
+
+		final ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+		for (int i = 0; i < files.size(); i++)
+		{
+			ShardManifest manifest = new ShardManifest();
+			manifest.plan(files.get(i), this.format, this.chunkSize);
+			Vector<ShardManifest.Shard> shards = manifest.getShards();
+			InputFile inputFile = new InputFile(files.get(i), outDir,
+							    shards.size());
+			for (int j = 0; j < shards.size(); j++)
+			{
+				chunks.add(new Chunk(inputFile, j, shards.get(j)));
+				this.totalBytes.addAndGet(shards.get(j).getLength());
+			}
+			if (shards.isEmpty())
+			{
+				inputFile.finish();
+				this.filesDone.incrementAndGet();
+			}
+		}
+		Collections.sort(chunks);
+
+		long started = System.currentTimeMillis();
+		ForkJoinPool pool = new ForkJoinPool(this.threads);
+		try
+		{
+			ForkJoinTask<Void> root = pool.submit(new RecursiveAction()
+			{
+				protected void compute()
+				{
+					invokeAll(chunks);
+				}
+			});
+			while (true)
+			{
+				try
+				{
+					if (this.progress == null)
+					{
+						root.get();
+					}
+					else
+					{
+						root.get(this.progressInterval,
+							 TimeUnit.MILLISECONDS);
+					}
+					break;
+				}
+				catch (TimeoutException e)
+				{
+					report(started);
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException(e.toString());
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof UncheckedIOException)
+			{
+				throw ((UncheckedIOException)cause).getCause();
+			}
+			throw new IOException("ingest failed", cause);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		if (this.progress != null)
+		{
+			report(started);
+		}
+	}
+
+	public long getTotalBytes()
+		// Purpose: accessor for the bytes of the files being ingested
+	{
+		return this.totalBytes.get();
+	}
+
+	public long getBytesDone()
+		// Purpose: accessor for the bytes of the chunks done so far
+	{
+		return this.bytesDone.get();
+	}
+
+	public long getRecordCount()
+		// Purpose: accessor for the records handled so far
+	{
+		return this.recordCount.get();
+	}
+
+	public int getFilesDone()
+		// Purpose: accessor for the files whose output is complete
+	{
+		return this.filesDone.get();
+	}
+
+	private void report(long started)
+	{
+		// Purpose: prints one progress line
+
+		long elapsed = Math.max(1, System.currentTimeMillis() - started);
+		long done = this.bytesDone.get();
+		long total = Math.max(1, this.totalBytes.get());
+		this.progress.println("files " + this.filesDone.get() + "/" +
+			this.fileCount + "  bytes " + (100 * done / total) + "%  " +
+			"records " + this.recordCount.get() + "  " +
+			(done / 1000 / elapsed) + " MB/s");
+	}
+
+	private class InputFile
+	{
+		// Concept:
+		//	  IS: one input file and the outputs of its chunks
+		//	DOES: concatenates the chunk outputs in order once the last
+		//	      chunk is done
+
+		InputFile(String file, File outputDir, int chunkCount)
+		{
+			this.output = new File(outputDir,
+					       new File(file).getName() + ".out");
+			this.chunkOutputs = new File[chunkCount];
+			this.remaining = new AtomicInteger(chunkCount);
+		}
+
+		void chunkDone()
+			throws IOException
+		{
+			if (this.remaining.decrementAndGet() == 0)
+			{
+				finish();
+				filesDone.incrementAndGet();
+			}
+		}
+
+		void finish()
+			throws IOException
+		{
+			File temp = new File(this.output.getPath() + ".tmp");
+			FileChannel out = new FileOutputStream(temp).getChannel();
+			try
+			{
+				for (int i = 0; i < this.chunkOutputs.length; i++)
+				{
+					FileChannel in = new FileInputStream(
+						this.chunkOutputs[i]).getChannel();
+					try
+					{
+						long position = 0;
+						long size = in.size();
+						while (position < size)
+						{
+							position += in.transferTo(position,
+								size - position, out);
+						}
+					}
+					finally
+					{
+						in.close();
+					}
+					this.chunkOutputs[i].delete();
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+			Files.move(temp.toPath(), this.output.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		File output;
+		File[] chunkOutputs;
+		AtomicInteger remaining;
+	}
+
+	private class Chunk extends RecursiveAction implements Comparable<Chunk>
+	{
+		// Concept:
+		//	  IS: the task that handles the records of one chunk
+
+		Chunk(InputFile inputFile, int index, ShardManifest.Shard shard)
+		{
+			this.inputFile = inputFile;
+			this.index = index;
+			this.shard = shard;
+		}
+
+		protected void compute()
+		{
+			try
+			{
+				File chunkOutput = new File(
+					this.inputFile.output.getPath() + "." + this.index);
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(chunkOutput),
+					StandardCharsets.ISO_8859_1), 1 << 16);
+				long records;
+				try
+				{
+					records = ShardWorker.process(this.shard, handler, out);
+				}
+				finally
+				{
+					out.close();
+				}
+				this.inputFile.chunkOutputs[this.index] = chunkOutput;
+				recordCount.addAndGet(records);
+				bytesDone.addAndGet(this.shard.getLength());
+				this.inputFile.chunkDone();
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public int compareTo(Chunk other)
+		{
+			// largest first
+			return Long.compare(other.shard.getLength(),
+					    this.shard.getLength());
+		}
+
+		private InputFile inputFile;
+		private int index;
+		private ShardManifest.Shard shard;
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		// Purpose: ingests a directory or glob from the command line
+		// Notes: writes "accession<TAB>version<TAB>length" per record
+
+		if (args.length < 3 || args.length > 5)
+		{
+			System.err.println("usage: BatchIngest <format> <dir or glob> " +
+				"<output dir> [chunk size] [threads]");
+			System.exit(1);
+		}
+		long chunkSize = args.length > 3 ? Long.parseLong(args[3])
+						 : DEFAULTCHUNKSIZE;
+		int threads = args.length > 4 ? Integer.parseInt(args[4])
+			: Runtime.getRuntime().availableProcessors();
+		BatchIngest ingest = new BatchIngest(args[0], ShardWorker.SUMMARY,
+						     chunkSize, threads);
+		ingest.setProgress(System.err, 5000);
+		ingest.ingest(args[1], args[2]);
+	}
+
+	//
+	//instance vars
+	//
+
+	// format of the files
+	private String format;
+
+	// the work done on each record
+	private RecordHandler handler;
+
+	// bytes per chunk of a file
+	private long chunkSize;
+
+	// threads of the pool
+	private int threads;
+
+	// where and how often progress is reported
+	private PrintStream progress = null;
+	private long progressInterval = 5000;
+
+	// progress of the current ingest
+	private int fileCount = 0;
+	private AtomicLong totalBytes = new AtomicLong();
+	private AtomicLong bytesDone = new AtomicLong();
+	private AtomicLong recordCount = new AtomicLong();
+	private AtomicInteger filesDone = new AtomicInteger();
+
+	// default bytes per chunk
+	public static final long DEFAULTCHUNKSIZE = 64L << 20;
+}
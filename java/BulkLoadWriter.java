@@ -0,0 +1,840 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class BulkLoadWriter
+{
+	// Concept:
+	//	  IS: a writer of database bulk load files from sequence records
+	//	 HAS: a file format (PostgreSQL binary COPY or delimited bcp
+	//	      text) and tables, each a file and a list of columns
+	//	DOES: writes a row of each table for each record, or for each
+	//	      seqId of the record when the table has a "seqid" or
+	//	      "rank" column, straight from the record fields to bytes,
+	//	      the tables in parallel
+	// Implementation:
+	//	Columns are named from COLUMNS; each has a type that decides
+	//	how it is written: text (UTF-8), int4 or date. In COPY files
+	//	an int4 of -1 and a date that can't be read are NULL, in bcp
+	//	files they are empty fields. bcp has no escapes, so a text
+	//	value holding a terminator throws IllegalArgumentException.
+	//	Records are taken as SeqRecordSnapshots, which every table
+	//	thread can read at once; a SeqRecord is copied without its
+	//	text, which no column uses. write() collects them in batches of
+	//	BATCHSIZE, and each table has a thread which takes the batches
+	//	from its own bounded queue and encodes rows into one reused
+	//	byte buffer, written to the file when it passes FLUSHSIZE. No
+	//	String is made per field: characters, digits and the residues
+	//	of the sequence are encoded one at a time.
+	//	Command line use, writing sequence, accession and organism
+	//	tables (see main):
+	//	    BulkLoadWriter <copy|bcp> <format> <output dir> <file>...
+
+	//
+	// Constructors
+	//
+
+	public BulkLoadWriter(int fileFormat)
+	{
+		// Purpose: creates a writer of 'fileFormat' (COPY or BCP) files
+		// Throws: IllegalArgumentException if 'fileFormat' is neither
+
+		if (fileFormat != COPY && fileFormat != BCP)
+		{
+			throw new IllegalArgumentException(
+				"unknown bulk load format " + fileFormat);
+		}
+		this.fileFormat = fileFormat;
+	}
+
+	//
+	// Methods
+	//
+
+	public void setTerminators(char field, char row)
+	{
+		// Purpose: sets the field and row terminators of bcp files,
+		//          tab and newline by default
+		// Throws: IllegalStateException if a table was added
+
+		if (!this.tables.isEmpty())
+		{
+			throw new IllegalStateException(
+				"terminators must be set before tables are added");
+		}
+		this.fieldTerminator = field;
+		this.rowTerminator = row;
+	}
+
+	public void addTable(String name, String file, String[] columns)
+		throws IOException
+	{
+		// Purpose: adds a table written to 'file' with 'columns'
+		// Returns: nothing
+		// Effects: creates 'file', its thread starts with the first write
+		// Throws: IOException if 'file' can't be created,
+		//         IllegalArgumentException if a column is not one of
+		//         COLUMNS, IllegalStateException after the first write
+
+		if (this.started)
+		{
+			throw new IllegalStateException(
+				"tables must be added before the first write");
+		}
+		int[] ids = new int[columns.length];
+		for (int i = 0; i < columns.length; i++)
+		{
+			ids[i] = Arrays.asList(COLUMNS).indexOf(columns[i]);
+			if (ids[i] < 0)
+			{
+				throw new IllegalArgumentException("table " + name +
+					": unknown column " + columns[i] + ", use one of " +
+					Arrays.asList(COLUMNS));
+			}
+		}
+		this.tables.add(new Table(name, file, ids));
+	}
+
+	public void write(SeqRecordSnapshot record)
+		throws IOException
+	{
+		// Purpose: writes the rows of 'record' to every table
+		// Returns: nothing
+		// Throws: IOException if a table could not be written, the
+		//         first failure of any table thread
+
+		checkFailure();
+		if (!this.started)
+		{
+			this.started = true;
+			for (int i = 0; i < this.tables.size(); i++)
+			{
+				this.tables.get(i).start();
+			}
+		}
+		this.batch[this.batchSize++] = record;
+		if (this.batchSize == BATCHSIZE)
+		{
+			dispatch();
+		}
+	}
+
+	public void write(SeqRecord record)
+		throws IOException
+	{
+		// Purpose: writes the rows of a snapshot of 'record'
+		// Notes: the snapshot leaves out the record text, which no
+		//        column uses
+
+		write(new SeqRecordSnapshot(record, false));
+	}
+
+	public long writeAll(String format, String file)
+		throws IOException
+	{
+		// Purpose: writes every 'format' record of 'file'
+		// Returns: the number of records
+		// Throws: IOException if 'file' can't be read or a table
+		//         written, IllegalArgumentException if 'format' is
+		//         not known
+
+		SeqRecord record = SeqRecordFactory.create(format);
+		PositionedReader reader = new ReadAheadReader(file);
+		long count = 0;
+		try
+		{
+			while (true)
+			{
+				record.readText(reader);
+				if (record.getSeqIds().isEmpty())
+				{
+					break;
+				}
+				write(record);
+				count++;
+				if (record.getLine() == null)
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return count;
+	}
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: writes the rows not yet written, ends and closes
+		//          every table file
+		// Returns: nothing
+		// Throws: IOException if a table could not be written
+
+		if (!this.started)
+		{
+			this.started = true;
+			for (int i = 0; i < this.tables.size(); i++)
+			{
+				this.tables.get(i).start();
+			}
+		}
+		try
+		{
+			if (this.batchSize > 0 && this.failure == null)
+			{
+				dispatch();
+			}
+		}
+		finally
+		{
+			for (int i = 0; i < this.tables.size(); i++)
+			{
+				try
+				{
+					this.tables.get(i).finish();
+				}
+				catch (IOException e)
+				{
+					fail(e);
+				}
+			}
+		}
+		checkFailure();
+	}
+
+	public long getRowCount(String name)
+	{
+		// Purpose: accessor for the number of rows written to table
+		//          'name' so far
+		// Throws: IllegalArgumentException if there is no such table
+
+		for (int i = 0; i < this.tables.size(); i++)
+		{
+			if (this.tables.get(i).name.equals(name))
+			{
+				return this.tables.get(i).rows;
+			}
+		}
+		throw new IllegalArgumentException("no table " + name);
+	}
+
+	private void dispatch()
+		throws IOException
+	{
+		// Purpose: hands the batch to every table thread
+
+		SeqRecordSnapshot[] full = this.batch;
+		if (this.batchSize < full.length)
+		{
+			full = Arrays.copyOf(full, this.batchSize);
+		}
+		this.batch = new SeqRecordSnapshot[BATCHSIZE];
+		this.batchSize = 0;
+		for (int i = 0; i < this.tables.size(); i++)
+		{
+			this.tables.get(i).put(full);
+		}
+	}
+
+	private void checkFailure()
+		throws IOException
+	{
+		Throwable t = this.failure;
+		if (t instanceof IOException)
+		{
+			throw (IOException)t;
+		}
+		if (t instanceof RuntimeException)
+		{
+			throw (RuntimeException)t;
+		}
+		if (t != null)
+		{
+			throw new IOException(t.toString());
+		}
+	}
+
+	private synchronized void fail(Throwable t)
+	{
+		if (this.failure == null)
+		{
+			this.failure = t;
+		}
+	}
+
+	static int pgDate(int dateCode)
+	{
+		// Purpose: converts a yyyymmdd date to a PostgreSQL date, the
+		//          days since 2000-01-01
+		// Notes: days from civil date in the proleptic Gregorian
+		//        calendar, as java.time does it
+
+		int year = dateCode / 10000;
+		int month = dateCode / 100 % 100;
+		int day = dateCode % 100;
+		if (month <= 2)
+		{
+			year--;
+		}
+		int era = year / 400;
+		int yearOfEra = year - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 +
+			day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 +
+			dayOfYear;
+		// days since 1970-01-01, less those to 2000-01-01
+		return era * 146097 + dayOfEra - 719468 - 10957;
+	}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		// Purpose: writes the sequence, accession and organism tables
+		//          of the records of the files, see Concept
+
+		if (args.length < 4 || !(args[0].equals("copy") ||
+					 args[0].equals("bcp")))
+		{
+			System.err.println("usage: BulkLoadWriter <copy|bcp> " +
+				"<format> <output dir> <file>...");
+			System.exit(1);
+		}
+		boolean copy = args[0].equals("copy");
+		String suffix = copy ? ".copy" : ".bcp";
+		BulkLoadWriter writer = new BulkLoadWriter(copy ? COPY : BCP);
+		writer.addTable("sequence", new File(args[2],
+			"sequence" + suffix).getPath(), new String[] {
+			"accession", "version", "type", "division", "date",
+			"length", "taxon", "sequence" });
+		writer.addTable("accession", new File(args[2],
+			"accession" + suffix).getPath(), new String[] {
+			"accession", "seqid", "rank" });
+		writer.addTable("organism", new File(args[2],
+			"organism" + suffix).getPath(), new String[] {
+			"accession", "taxon", "organism", "classification" });
+		long records = 0;
+		for (int i = 3; i < args.length; i++)
+		{
+			records += writer.writeAll(args[1], args[i]);
+		}
+		writer.close();
+		System.out.println(records + " records, " +
+			writer.getRowCount("sequence") + " sequence rows, " +
+			writer.getRowCount("accession") + " accession rows, " +
+			writer.getRowCount("organism") + " organism rows");
+	}
+
+	//
+	// Inner classes
+	//
+
+	private class Table
+		implements Runnable
+	{
+		// Concept:
+		//	  IS: one table being written
+		//	 HAS: a name, a file, its columns, a queue of batches and
+		//	      the thread that takes them
+		//	DOES: encodes the rows of each record of each batch into
+		//	      its buffer and writes the buffer to the file
+
+		Table(String name, String file, int[] columns)
+			throws IOException
+		{
+			this.name = name;
+			this.columns = columns;
+			this.out = new FileOutputStream(file);
+			this.thread = new Thread(this, "bulk load " + name);
+			this.thread.setDaemon(true);
+			boolean perSeqId = false;
+			for (int i = 0; i < columns.length; i++)
+			{
+				perSeqId |= columns[i] == SEQID || columns[i] == RANK;
+			}
+			this.perSeqId = perSeqId;
+			if (fileFormat == COPY)
+			{
+				putBytes(COPYSIGNATURE);
+				// flags, header extension length
+				putInt(0);
+				putInt(0);
+			}
+		}
+
+		void start()
+		{
+			this.thread.start();
+		}
+
+		void put(SeqRecordSnapshot[] batch)
+			throws IOException
+		{
+			// Purpose: queues 'batch', waiting while the queue is full
+
+			try
+			{
+				while (!this.queue.offer(batch, 100,
+							 TimeUnit.MILLISECONDS))
+				{
+					// a dead table thread never empties its queue
+					checkFailure();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("writing table " +
+					this.name);
+			}
+		}
+
+		void finish()
+			throws IOException
+		{
+			// Purpose: queues the end and waits for the thread
+			// Notes: after a failure the thread is interrupted instead,
+			//        it may never take another batch
+
+			if (failure != null)
+			{
+				this.thread.interrupt();
+			}
+			else
+			{
+				put(END);
+			}
+			try
+			{
+				this.thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("writing table " +
+					this.name);
+			}
+		}
+
+		public void run()
+		{
+			try
+			{
+				while (true)
+				{
+					SeqRecordSnapshot[] batch = this.queue.take();
+					if (batch == END)
+					{
+						break;
+					}
+					for (int i = 0; i < batch.length; i++)
+					{
+						writeRows(batch[i]);
+					}
+				}
+				if (fileFormat == COPY)
+				{
+					putShort(-1);
+				}
+				flush();
+			}
+			catch (Throwable t)
+			{
+				fail(t);
+			}
+			finally
+			{
+				try
+				{
+					this.out.close();
+				}
+				catch (IOException e)
+				{
+					fail(e);
+				}
+			}
+		}
+
+		private void writeRows(SeqRecordSnapshot record)
+			throws IOException
+		{
+			// Purpose: writes the row of 'record', or one per seqId
+
+			int rows = this.perSeqId ? record.getSeqIds().size() : 1;
+			for (int rank = 0; rank < rows; rank++)
+			{
+				if (fileFormat == COPY)
+				{
+					putShort(this.columns.length);
+				}
+				for (int c = 0; c < this.columns.length; c++)
+				{
+					if (fileFormat == BCP && c > 0)
+					{
+						ensure(1);
+						this.buffer[this.size++] = (byte)fieldTerminator;
+					}
+					writeField(record, this.columns[c], rank);
+				}
+				if (fileFormat == BCP)
+				{
+					ensure(1);
+					this.buffer[this.size++] = (byte)rowTerminator;
+				}
+				this.rows++;
+				if (this.size >= FLUSHSIZE)
+				{
+					flush();
+				}
+			}
+		}
+
+		private void writeField(SeqRecordSnapshot record, int column,
+					int rank)
+		{
+			// Purpose: encodes one field of a row
+
+			switch (column)
+			{
+			case ACCESSION:
+				putText(record.getPrimaryId(), column);
+				break;
+			case SEQID:
+				putText(record.getSeqIds().get(rank), column);
+				break;
+			case RANK:
+				putInt4(rank);
+				break;
+			case VERSION:
+				putText(record.getVersion(), column);
+				break;
+			case TYPE:
+				putText(record.getType(), column);
+				break;
+			case DIVISION:
+				putText(record.getDivision(), column);
+				break;
+			case DATE:
+				putDate(record.getDateCode());
+				break;
+			case LENGTH:
+				putInt4(record.getSeqLength());
+				break;
+			case TAXON:
+				putInt4(record.getTaxonId());
+				break;
+			case ORGANISM:
+				putText(record.getOrganism(), column);
+				break;
+			case CLASSIFICATION:
+				putText(record.getOrganismClassif(), column);
+				break;
+			case COMMENT:
+				putText(record.getComment(), column);
+				break;
+			case GENINFOID:
+				putText(record.getGenInfoId(), column);
+				break;
+			case DESCRIPTION:
+				putText(record.getDescription(), column);
+				break;
+			default:
+				putSequence(record.getSequence());
+			}
+		}
+
+		private void putText(String value, int column)
+		{
+			// Purpose: encodes 'value' as UTF-8, length first in COPY
+			//          files
+
+			int length = value.length();
+			ensure(4 + 3 * length);
+			int lengthAt = this.size;
+			if (fileFormat == COPY)
+			{
+				this.size += 4;
+			}
+			byte[] bytes = this.buffer;
+			int at = this.size;
+			for (int i = 0; i < length; i++)
+			{
+				char c = value.charAt(i);
+				if (c < 0x80)
+				{
+					if (fileFormat == BCP && (c == fieldTerminator ||
+								  c == rowTerminator))
+					{
+						throw new IllegalArgumentException("table " +
+							this.name + ": " + COLUMNS[column] +
+							" value holds a terminator: " + value);
+					}
+					bytes[at++] = (byte)c;
+				}
+				else if (c < 0x800)
+				{
+					bytes[at++] = (byte)(0xc0 | (c >> 6));
+					bytes[at++] = (byte)(0x80 | (c & 0x3f));
+				}
+				else
+				{
+					// surrogates are not expected in record text
+					bytes[at++] = (byte)(0xe0 | (c >> 12));
+					bytes[at++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+					bytes[at++] = (byte)(0x80 | (c & 0x3f));
+				}
+			}
+			if (fileFormat == COPY)
+			{
+				setInt(lengthAt, at - this.size);
+			}
+			this.size = at;
+		}
+
+		private void putSequence(String sequence)
+		{
+			// Purpose: encodes the residues of 'sequence' as
+			//          SequenceUtil.normalize would give them
+
+			ensure(4 + sequence.length());
+			int lengthAt = this.size;
+			if (fileFormat == COPY)
+			{
+				this.size += 4;
+			}
+			byte[] bytes = this.buffer;
+			int at = this.size;
+			for (int i = 0; i < sequence.length(); i++)
+			{
+				char r = SequenceUtil.residue(sequence.charAt(i));
+				bytes[at] = (byte)r;
+				at += r != 0 ? 1 : 0;
+			}
+			if (fileFormat == COPY)
+			{
+				setInt(lengthAt, at - this.size);
+			}
+			this.size = at;
+		}
+
+		private void putInt4(int value)
+		{
+			// Purpose: encodes 'value', -1 as NULL
+
+			if (fileFormat == COPY)
+			{
+				if (value == -1)
+				{
+					putInt(-1);
+				}
+				else
+				{
+					putInt(4);
+					putInt(value);
+				}
+				return;
+			}
+			if (value == -1)
+			{
+				return;
+			}
+			ensure(11);
+			if (value < 0)
+			{
+				this.buffer[this.size++] = '-';
+				value = -value;
+			}
+			putDigits(value, 1);
+		}
+
+		private void putDate(int dateCode)
+		{
+			// Purpose: encodes a yyyymmdd date, -1 as NULL
+
+			if (fileFormat == COPY)
+			{
+				if (dateCode < 0)
+				{
+					putInt(-1);
+				}
+				else
+				{
+					putInt(4);
+					putInt(pgDate(dateCode));
+				}
+				return;
+			}
+			if (dateCode < 0)
+			{
+				return;
+			}
+			ensure(10);
+			putDigits(dateCode / 10000, 4);
+			this.buffer[this.size++] = '-';
+			putDigits(dateCode / 100 % 100, 2);
+			this.buffer[this.size++] = '-';
+			putDigits(dateCode % 100, 2);
+		}
+
+		private void putDigits(int value, int width)
+		{
+			// Purpose: encodes the decimal digits of 'value', at least
+			//          'width' of them
+
+			int digits = 1;
+			for (int v = value / 10; v > 0; v /= 10)
+			{
+				digits++;
+			}
+			digits = Math.max(digits, width);
+			for (int i = digits - 1; i >= 0; i--)
+			{
+				this.buffer[this.size + i] = (byte)('0' + value % 10);
+				value /= 10;
+			}
+			this.size += digits;
+		}
+
+		private void putShort(int value)
+		{
+			ensure(2);
+			this.buffer[this.size++] = (byte)(value >>> 8);
+			this.buffer[this.size++] = (byte)value;
+		}
+
+		private void putInt(int value)
+		{
+			ensure(4);
+			setInt(this.size, value);
+			this.size += 4;
+		}
+
+		private void setInt(int at, int value)
+		{
+			this.buffer[at] = (byte)(value >>> 24);
+			this.buffer[at + 1] = (byte)(value >>> 16);
+			this.buffer[at + 2] = (byte)(value >>> 8);
+			this.buffer[at + 3] = (byte)value;
+		}
+
+		private void putBytes(byte[] bytes)
+		{
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, this.buffer, this.size, bytes.length);
+			this.size += bytes.length;
+		}
+
+		private void ensure(int room)
+		{
+			// Purpose: grows the buffer to hold 'room' more bytes, for
+			//          fields larger than FLUSHSIZE such as long
+			//          sequences
+
+			if (this.size + room + 1 > this.buffer.length)
+			{
+				this.buffer = Arrays.copyOf(this.buffer,
+					Math.max(this.buffer.length * 2,
+						 this.size + room + 1));
+			}
+		}
+
+		private void flush()
+			throws IOException
+		{
+			this.out.write(this.buffer, 0, this.size);
+			this.size = 0;
+			if (this.buffer.length > FLUSHSIZE * 4)
+			{
+				// don't keep the room made for one huge row
+				this.buffer = new byte[FLUSHSIZE * 2];
+			}
+		}
+
+		//instance vars
+
+		private final String name;
+		private final int[] columns;
+		private final boolean perSeqId;
+		private final OutputStream out;
+		private final Thread thread;
+		private final BlockingQueue<SeqRecordSnapshot[]> queue =
+			new ArrayBlockingQueue<SeqRecordSnapshot[]>(QUEUESIZE);
+
+		// the rows not yet written, reused for the whole file
+		private byte[] buffer = new byte[FLUSHSIZE * 2];
+		private int size = 0;
+
+		// rows encoded, read by getRowCount
+		private volatile long rows = 0;
+	}
+
+	//
+	//instance vars
+	//
+
+	private final int fileFormat;
+	private char fieldTerminator = '\t';
+	private char rowTerminator = '\n';
+	private final Vector<Table> tables = new Vector<Table>();
+	private boolean started = false;
+
+	// records not yet handed to the tables
+	private SeqRecordSnapshot[] batch = new SeqRecordSnapshot[BATCHSIZE];
+	private int batchSize = 0;
+
+	// the first failure of a table thread
+	private volatile Throwable failure = null;
+
+	//
+	// class vars
+	//
+
+	// file formats
+	public static final int COPY = 1;
+	public static final int BCP = 2;
+
+	// column names, by column id
+	public static final String[] COLUMNS = {
+		"accession", "seqid", "rank", "version", "type", "division",
+		"date", "length", "taxon", "organism", "classification",
+		"comment", "gi", "description", "sequence" };
+
+	// column ids, indexes of COLUMNS
+	private static final int ACCESSION = 0;
+	private static final int SEQID = 1;
+	private static final int RANK = 2;
+	private static final int VERSION = 3;
+	private static final int TYPE = 4;
+	private static final int DIVISION = 5;
+	private static final int DATE = 6;
+	private static final int LENGTH = 7;
+	private static final int TAXON = 8;
+	private static final int ORGANISM = 9;
+	private static final int CLASSIFICATION = 10;
+	private static final int COMMENT = 11;
+	private static final int GENINFOID = 12;
+	private static final int DESCRIPTION = 13;
+	private static final int SEQUENCE = 14;
+
+	// "PGCOPY\n\377\r\n\0", the start of a binary COPY file
+	private static final byte[] COPYSIGNATURE = {
+		'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xff, '\r', '\n', 0 };
+
+	// records handed to the table threads at a time
+	private static final int BATCHSIZE = 256;
+
+	// batches each table may have waiting
+	private static final int QUEUESIZE = 16;
+
+	// bytes encoded before they are written
+	private static final int FLUSHSIZE = 1 << 20;
+
+	// marks the end of the records in a table queue
+	private static final SeqRecordSnapshot[] END = new SeqRecordSnapshot[0];
+}
@@ -0,0 +1,251 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class Checkpointer
+{
+	// Concept:
+	//	  IS: an object that records how far a long running load has
+	//	      got through a flat file of sequence records
+	//	 HAS: a checkpoint file, the byte offset just past the last
+	//	      completed record, the number of records completed and an
+	//	      optional consumer state string
+	//	DOES: opens a PositionedReader at the last checkpoint of a file
+	//	      and periodically saves a new checkpoint as records are
+	//	      completed so a failed load restarts where it stopped
+	// Implementation:
+	//	Checkpoints are saved every "recordInterval" records or every
+	//	"timeInterval" milliseconds, whichever comes first. A checkpoint
+	//	is written to a temporary file, synced to disk and renamed over
+	//	the checkpoint file so a crash never leaves a partial one.
+	//	Typical use:
+	//	    Checkpointer checkpointer =
+	//	        new Checkpointer("gbpri1.ckpt", 10000, 60000);
+	//	    PositionedReader reader = checkpointer.open("gbpri1.seq");
+	//	    GBSeqRecord record = new GBSeqRecord();
+	//	    while (true) {
+	//	        record.readText(reader);
+	//	        if (record.getLine() == null) break;
+	//	        ... load the record ...
+	//	        checkpointer.recordDone(reader, state);
+	//	    }
+	//	    checkpointer.save(reader, state);
+
+	//
+	// Constructors
+	//
+
+	public Checkpointer(
+		String checkpointFile,  // where checkpoints are saved
+		int recordInterval,     // records between checkpoints
+		long timeInterval)      // milliseconds between checkpoints
+	{
+		// Purpose: creates a Checkpointer saving to 'checkpointFile'
+		// Throws: nothing
+
+		this.checkpointFile = checkpointFile;
+		this.recordInterval = recordInterval;
+		this.timeInterval = timeInterval;
+	}
+
+	//
+	// Methods
+	//
+
+	public PositionedReader open(String dataFile)
+		throws IOException
+	{
+		// Purpose: opens 'dataFile' at its last checkpoint
+		// Returns: a reader at the offset of the last checkpoint or at
+		//          the start of the file when there is no checkpoint
+		// Effects: restores the record count and consumer state
+		// Throws: IOException if the files can't be read or the
+		//         checkpoint is for another file
+
+		if (load())
+		{
+			if (!dataFile.equals(this.dataFile))
+			{
+				throw new IOException(this.checkpointFile +
+					" is a checkpoint for " + this.dataFile +
+					" not " + dataFile);
+			}
+		}
+		else
+		{
+			this.dataFile = dataFile;
+			this.offset = 0L;
+			this.recordCount = 0L;
+			this.state = null;
+		}
+		this.lastSaveTime = System.currentTimeMillis();
+		this.sinceSave = 0;
+		return new PositionedReader(dataFile, this.offset);
+	}
+
+	public void recordDone(PositionedReader reader, String state)
+		throws IOException
+	{
+		// Purpose: notes that the record just read from 'reader' has
+		//          been completely processed
+		// Returns: nothing
+		// Effects: saves a checkpoint when one is due
+		// Throws: IOException if the checkpoint can't be written
+		// Notes: 'state' may be null, it is only read when a
+		//        checkpoint is saved
+
+		this.recordCount++;
+		this.sinceSave++;
+		if (this.sinceSave >= this.recordInterval ||
+		    System.currentTimeMillis() - this.lastSaveTime >=
+		    this.timeInterval)
+		{
+			save(reader, state);
+		}
+	}
+
+	public void save(PositionedReader reader, String state)
+		throws IOException
+	{
+		// Purpose: saves a checkpoint at the current offset of 'reader'
+		// Returns: nothing
+		// Effects: replaces the checkpoint file
+		// Throws: IOException if the checkpoint can't be written
+
+		this.offset = reader.getPosition();
+		this.state = state;
+
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty(FILE, this.dataFile);
+		checkpoint.setProperty(OFFSET, String.valueOf(this.offset));
+		checkpoint.setProperty(RECORDS, String.valueOf(this.recordCount));
+		if (state != null)
+		{
+			checkpoint.setProperty(STATE, state);
+		}
+
+		Path target = Paths.get(this.checkpointFile);
+		Path temp = Paths.get(this.checkpointFile + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp.toFile());
+		try
+		{
+			checkpoint.store(out, "seqrecord load checkpoint");
+			out.flush();
+			out.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+
+		this.lastSaveTime = System.currentTimeMillis();
+		this.sinceSave = 0;
+	}
+
+	public boolean load()
+		throws IOException
+	{
+		// Purpose: reads the checkpoint file
+		// Returns: false if there is no checkpoint file
+		// Effects: sets the data file, offset, record count and state
+		// Throws: IOException if the checkpoint file can't be read or
+		//         is damaged
+
+		File source = new File(this.checkpointFile);
+		if (!source.exists())
+		{
+			return false;
+		}
+		Properties checkpoint = new Properties();
+		FileInputStream in = new FileInputStream(source);
+		try
+		{
+			checkpoint.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		try
+		{
+			this.dataFile = checkpoint.getProperty(FILE);
+			this.offset = Long.parseLong(checkpoint.getProperty(OFFSET));
+			this.recordCount =
+				Long.parseLong(checkpoint.getProperty(RECORDS));
+			this.state = checkpoint.getProperty(STATE);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException(this.checkpointFile +
+				" is not a checkpoint file: " + e);
+		}
+		if (this.dataFile == null)
+		{
+			throw new IOException(this.checkpointFile +
+				" is not a checkpoint file");
+		}
+		return true;
+	}
+
+	public void delete()
+	{
+		// Purpose: removes the checkpoint file once a load is complete
+
+		new File(this.checkpointFile).delete();
+	}
+
+	public long getOffset()
+		// Purpose: accessor for the byte offset of the last checkpoint
+	{
+		return this.offset;
+	}
+
+	public long getRecordCount()
+		// Purpose: accessor for the number of records completed,
+		//          including those before the last restart
+	{
+		return this.recordCount;
+	}
+
+	public String getState()
+		// Purpose: accessor for the consumer state of the last
+		//          checkpoint, null if none was saved
+	{
+		return this.state;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the checkpoint file and the data file it is for
+	private String checkpointFile;
+	private String dataFile = null;
+
+	// byte offset just past the last completed record
+	private long offset = 0L;
+
+	// records completed in all runs
+	private long recordCount = 0L;
+
+	// consumer state saved with the checkpoint
+	private String state = null;
+
+	// how often to save checkpoints
+	private int recordInterval;
+	private long timeInterval;
+
+	// when the last checkpoint was saved and records completed since
+	private long lastSaveTime = 0L;
+	private int sinceSave = 0;
+
+	// checkpoint file property names
+	private static final String FILE = "file";
+	private static final String OFFSET = "offset";
+	private static final String RECORDS = "records";
+	private static final String STATE = "state";
+}
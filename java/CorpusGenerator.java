@@ -0,0 +1,572 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.*;
+
+public class CorpusGenerator
+{
+	// Concept:
+	//	  IS: a generator of synthetic flat files of sequence records in
+	//	      the formats read by GBSeqRecord, EMBLSeqRecord and
+	//	      FASTASeqRecord, for load testing without release files
+	//	 HAS: a format, a seed, and the shape of the corpus: record count
+	//	      or target size, sequence length distribution, ACCESSION
+	//	      continuation lines, COMMENT blocks, organism mix and the
+	//	      share of malformed records
+	//	DOES: writes the corpus. The same settings and seed always give
+	//	      the same bytes
+	// Implementation:
+	//	Sequence lengths are log-normal around a median, clamped to
+	//	[1, maxLength]. Accessions are two letters and six digits
+	//	numbered from the record index, so they are unique and sorted
+	//	in record order. EMBL records are Swiss-Prot protein entries,
+	//	GenBank and FASTA records are nucleotides with a few N.
+	//	Malformed records make the parser throw (a LOCUS or ID line
+	//	with a bad length, a LOCUS line cut short) and are meant for
+	//	LenientRecordReader. FASTA has no field a parser rejects, so
+	//	its malformed records have residues that are not IUPAC codes.
+	//	Command line use:
+	//	    CorpusGenerator <format> <seed> <records> <file>
+	//	        [median length] [max length] [malformed rate]
+	//	A record count of 0 with a target size (setTargetBytes) writes
+	//	records until the size is reached.
+
+	//
+	// Constructors
+	//
+
+	public CorpusGenerator(String format, long seed)
+	{
+		// Purpose: creates a generator of 'format' records with the
+		//          default shape
+		// Throws: IllegalArgumentException if 'format' is not genbank,
+		//         embl or fasta
+
+		if (!format.equalsIgnoreCase(SeqRecordFactory.GENBANK) &&
+		    !format.equalsIgnoreCase(SeqRecordFactory.EMBL) &&
+		    !format.equalsIgnoreCase(SeqRecordFactory.FASTA))
+		{
+			throw new IllegalArgumentException("can't generate " + format);
+		}
+		this.format = format.toLowerCase();
+		this.seed = seed;
+	}
+
+	//
+	// Methods
+	//
+
+	public void setRecordCount(long recordCount)
+		// Purpose: sets the number of records, 0 for no limit
+	{
+		this.recordCount = recordCount;
+	}
+
+	public void setTargetBytes(long targetBytes)
+		// Purpose: stops after the record that reaches 'targetBytes',
+		//          0 for no limit
+	{
+		this.targetBytes = targetBytes;
+	}
+
+	public void setLengths(int medianLength, double sigma, int maxLength)
+		// Purpose: sets the sequence length distribution, log-normal
+		//          with median 'medianLength' and shape 'sigma'
+	{
+		this.medianLength = medianLength;
+		this.sigma = sigma;
+		this.maxLength = maxLength;
+	}
+
+	public void setAccessionLines(int maxContinuationLines)
+		// Purpose: sets the most ACCESSION (or AC) continuation lines of
+		//          secondary accessions per record, 0 to 'max' uniformly
+	{
+		this.maxContinuationLines = maxContinuationLines;
+	}
+
+	public void setCommentRate(double commentRate)
+		// Purpose: sets the share of GenBank records with a COMMENT
+		//          block holding Class: and Contact: fields
+	{
+		this.commentRate = commentRate;
+	}
+
+	public void setMalformedRate(double malformedRate)
+		// Purpose: sets the share of malformed records
+	{
+		this.malformedRate = malformedRate;
+	}
+
+	public void setOrganisms(String[] organisms, double[] weights)
+		// Purpose: sets the organism mix, a subset of ORGANISMS chosen
+		//          by name with relative weights
+		// Throws: IllegalArgumentException for an unknown organism
+	{
+		int[] chosen = new int[organisms.length];
+		for (int i = 0; i < organisms.length; i++)
+		{
+			chosen[i] = -1;
+			for (int j = 0; j < ORGANISMS.length; j++)
+			{
+				if (ORGANISMS[j][0].equals(organisms[i]))
+				{
+					chosen[i] = j;
+				}
+			}
+			if (chosen[i] < 0)
+			{
+				throw new IllegalArgumentException("unknown organism " +
+					organisms[i]);
+			}
+		}
+		this.organisms = chosen;
+		this.weights = weights.clone();
+	}
+
+	public long getRecordsWritten()
+		// Purpose: accessor for the records of the last write
+	{
+		return this.recordsWritten;
+	}
+
+	public long getMalformedWritten()
+		// Purpose: accessor for the malformed records of the last write
+	{
+		return this.malformedWritten;
+	}
+
+	public long getBytesWritten()
+		// Purpose: accessor for the bytes of the last write
+	{
+		return this.bytesWritten;
+	}
+
+	public void write(String file)
+		throws IOException
+	{
+		// Purpose: writes the corpus to 'file'
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(file), "ISO-8859-1"), 1 << 16);
+		try
+		{
+			write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public void write(Writer out)
+		throws IOException
+	{
+		// Purpose: writes the corpus to 'out'
+		// Throws: IOException if 'out' can't be written
+
+		Random random = new Random(this.seed);
+		StringBuffer record = new StringBuffer(1 << 16);
+		this.recordsWritten = 0;
+		this.malformedWritten = 0;
+		this.bytesWritten = 0;
+		double totalWeight = 0;
+		for (int i = 0; i < this.weights.length; i++)
+		{
+			totalWeight += this.weights[i];
+		}
+
+		if (this.recordCount == 0 && this.targetBytes == 0)
+		{
+			throw new IllegalStateException(
+				"set a record count or target size");
+		}
+		for (long index = 0;
+		     (this.recordCount == 0 || index < this.recordCount) &&
+		     (this.targetBytes == 0 || this.bytesWritten < this.targetBytes);
+		     index++)
+		{
+			String[] organism = ORGANISMS[pickOrganism(random, totalWeight)];
+			int length = (int)Math.round(this.medianLength *
+				Math.exp(this.sigma * random.nextGaussian()));
+			length = Math.max(1, Math.min(this.maxLength, length));
+			boolean malformed = random.nextDouble() < this.malformedRate;
+
+			record.setLength(0);
+			if (this.format.equals(SeqRecordFactory.GENBANK))
+			{
+				genbank(record, random, index, organism, length, malformed);
+			}
+			else if (this.format.equals(SeqRecordFactory.EMBL))
+			{
+				embl(record, random, index, organism, length, malformed);
+			}
+			else
+			{
+				fasta(record, random, index, organism, length, malformed);
+			}
+			out.write(record.toString());
+			this.bytesWritten += record.length();
+			this.recordsWritten++;
+			if (malformed)
+			{
+				this.malformedWritten++;
+			}
+		}
+		out.flush();
+	}
+
+	private void genbank(StringBuffer record, Random random, long index,
+			     String[] organism, int length, boolean malformed)
+	{
+		// Purpose: appends one GenBank record to 'record'
+
+		String accession = accession(index);
+		String lengthField = malformed && random.nextBoolean() ?
+			"1O" + length : Integer.toString(length);
+		String locus = pad("LOCUS       " + accession, 40 - lengthField.length())
+			+ lengthField + " bp    " + pad(organism[2], 8) +
+			"linear   " + organism[3] + " " + date(random);
+		if (malformed && !lengthField.startsWith("1O"))
+		{
+			// cut the line before the division and date
+			locus = locus.substring(0, 40);
+		}
+		record.append(locus).append('\n');
+		record.append("DEFINITION  ").append(organism[0])
+			.append(" synthetic sequence ").append(index).append(".\n");
+		accessionLines(record, random, index, "ACCESSION   ", "            ",
+			       false);
+		int version = 1 + random.nextInt(3);
+		record.append("VERSION     ").append(accession).append('.')
+			.append(version).append('\n');
+		record.append("SOURCE      ").append(organism[0]).append('\n');
+		record.append("  ORGANISM  ").append(organism[0]).append('\n');
+		wrap(record, organism[4], "            ");
+		record.append("REFERENCE   1  (bases 1 to ").append(length)
+			.append(")\n");
+		record.append("  AUTHORS   Synthetic,A.\n");
+		if (random.nextDouble() < this.commentRate)
+		{
+			record.append("COMMENT     Class: ")
+				.append(CLASSES[random.nextInt(CLASSES.length)])
+				.append(".\n");
+			record.append("            Contact: ")
+				.append(CONTACTS[random.nextInt(CONTACTS.length)])
+				.append('\n');
+			record.append("            Generated record ").append(index)
+				.append(".\n");
+		}
+		record.append("FEATURES             Location/Qualifiers\n");
+		record.append("     source          1..").append(length).append('\n');
+		record.append("                     /organism=\"")
+			.append(organism[0]).append("\"\n");
+		record.append("                     /mol_type=\"")
+			.append(organism[2].equals("mRNA") ? "mRNA" : "genomic DNA")
+			.append("\"\n");
+		record.append("                     /db_xref=\"taxon:")
+			.append(organism[1]).append("\"\n");
+		if (length > 30)
+		{
+			record.append("     gene            1..").append(length)
+				.append('\n');
+			record.append("                     /gene=\"syn")
+				.append(index).append("\"\n");
+		}
+		record.append("ORIGIN      \n");
+		String bases = residues(random, length, NUCLEOTIDES, false)
+			.toLowerCase();
+		for (int i = 0; i < length; i += 60)
+		{
+			String position = Integer.toString(i + 1);
+			record.append(pad("", 9 - position.length())).append(position);
+			for (int j = i; j < Math.min(length, i + 60); j += 10)
+			{
+				record.append(' ')
+					.append(bases, j, Math.min(length, j + 10));
+			}
+			record.append('\n');
+		}
+		record.append("//\n");
+	}
+
+	private void embl(StringBuffer record, Random random, long index,
+			  String[] organism, int length, boolean malformed)
+	{
+		// Purpose: appends one Swiss-Prot record to 'record'
+
+		String name = "SYN" + index + "_" + organism[5];
+		String lengthField = malformed ? "l" + length : Integer.toString(length);
+		record.append(pad("ID   " + name, 28)).append(" Reviewed;")
+			.append(pad("", Math.max(1, 10 - lengthField.length())))
+			.append(lengthField).append(" AA.\n");
+		accessionLines(record, random, index, "AC   ", "AC   ", true);
+		String date = date(random);
+		record.append("DT   ").append(date)
+			.append(", integrated into UniProtKB/Swiss-Prot.\n");
+		record.append("DT   ").append(date).append(", entry version ")
+			.append(1 + random.nextInt(90)).append(".\n");
+		record.append("OS   ").append(organism[0]).append(".\n");
+		wrap(record, organism[4], "OC   ");
+		record.append("OX   NCBI_TaxID=").append(organism[1]).append(";\n");
+		record.append("SQ   SEQUENCE ").append(pad("", 3))
+			.append(length).append(" AA;\n");
+		String residues = residues(random, length, AMINOACIDS, false);
+		for (int i = 0; i < length; i += 60)
+		{
+			record.append("    ");
+			for (int j = i; j < Math.min(length, i + 60); j += 10)
+			{
+				record.append(' ')
+					.append(residues, j, Math.min(length, j + 10));
+			}
+			record.append('\n');
+		}
+		record.append("//\n");
+	}
+
+	private void fasta(StringBuffer record, Random random, long index,
+			   String[] organism, int length, boolean malformed)
+	{
+		// Purpose: appends one FASTA record to 'record'
+
+		String accession = accession(index);
+		record.append(">gi|").append(1000000 + index).append("|gb|")
+			.append(accession).append('.').append(1 + random.nextInt(3))
+			.append('|').append(accession).append(' ')
+			.append(organism[0]).append(" synthetic sequence ")
+			.append(index).append('\n');
+		String bases = residues(random, length, NUCLEOTIDES, malformed);
+		for (int i = 0; i < length; i += 70)
+		{
+			record.append(bases, i, Math.min(length, i + 70)).append('\n');
+		}
+	}
+
+	private void accessionLines(StringBuffer record, Random random,
+				    long index, String tag, String continuation,
+				    boolean embl)
+	{
+		// Purpose: appends the accession lines, the primary accession
+		//          then 0 to maxContinuationLines lines of secondaries,
+		//          each followed by ';' if 'embl'
+
+		record.append(tag).append(accession(index));
+		if (embl)
+		{
+			record.append(';');
+		}
+		record.append('\n');
+		int lines = this.maxContinuationLines == 0 ? 0 :
+			random.nextInt(this.maxContinuationLines + 1);
+		for (int i = 0; i < lines; i++)
+		{
+			record.append(continuation);
+			for (int j = 0; j < 6; j++)
+			{
+				if (j > 0)
+				{
+					record.append(' ');
+				}
+				record.append(secondary(random));
+				if (embl)
+				{
+					record.append(';');
+				}
+			}
+			record.append('\n');
+		}
+	}
+
+	private int pickOrganism(Random random, double totalWeight)
+	{
+		double pick = random.nextDouble() * totalWeight;
+		for (int i = 0; i < this.weights.length; i++)
+		{
+			pick -= this.weights[i];
+			if (pick < 0)
+			{
+				return this.organisms[i];
+			}
+		}
+		return this.organisms[this.organisms.length - 1];
+	}
+
+	private static String residues(Random random, int length,
+				       String alphabet, boolean malformed)
+	{
+		// Purpose: makes 'length' random residues from 'alphabet',
+		//          a few of them replaced by invalid characters if
+		//          'malformed'
+
+		char[] residues = new char[length];
+		for (int i = 0; i < length; i++)
+		{
+			residues[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		if (malformed)
+		{
+			for (int i = 0; i < 1 + length / 100; i++)
+			{
+				residues[random.nextInt(length)] = '?';
+			}
+		}
+		return new String(residues);
+	}
+
+	private static void wrap(StringBuffer record, String text, String indent)
+	{
+		// Purpose: appends 'text' in lines of up to 80 characters
+		//          starting with 'indent', breaking after a blank
+
+		int start = 0;
+		int width = 80 - indent.length();
+		while (start < text.length())
+		{
+			int end = Math.min(text.length(), start + width);
+			if (end < text.length())
+			{
+				end = text.lastIndexOf(' ', end) + 1;
+			}
+			record.append(indent).append(text.substring(start, end).trim())
+				.append('\n');
+			start = end;
+		}
+	}
+
+	private static String accession(long index)
+	{
+		// Purpose: makes the primary accession of record 'index'
+
+		long prefix = index / 1000000;
+		String digits = Long.toString(1000000 + index % 1000000).substring(1);
+		return "" + (char)('A' + prefix / 26 % 26) + (char)('A' + prefix % 26)
+			+ digits;
+	}
+
+	private static String secondary(Random random)
+	{
+		return "" + (char)('A' + random.nextInt(26)) +
+			(char)('A' + random.nextInt(26)) +
+			Integer.toString(1000000 + random.nextInt(1000000)).substring(1);
+	}
+
+	private static String date(Random random)
+	{
+		return Integer.toString(101 + random.nextInt(28)).substring(1) + "-" +
+			MONTHS[random.nextInt(12)] + "-" + (1990 + random.nextInt(35));
+	}
+
+	private static String pad(String text, int width)
+	{
+		// Purpose: pads 'text' with blanks to 'width' characters
+
+		StringBuffer padded = new StringBuffer(text);
+		while (padded.length() < width)
+		{
+			padded.append(' ');
+		}
+		return padded.toString();
+	}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		// Purpose: writes a corpus from the command line, see Concept
+
+		if (args.length < 4 || args.length > 7)
+		{
+			System.err.println("usage: CorpusGenerator <format> <seed> " +
+				"<records> <file> [median length] [max length] " +
+				"[malformed rate]");
+			System.exit(1);
+		}
+		CorpusGenerator generator = new CorpusGenerator(args[0],
+			Long.parseLong(args[1]));
+		generator.setRecordCount(Long.parseLong(args[2]));
+		if (args.length > 4)
+		{
+			generator.setLengths(Integer.parseInt(args[4]), 1.0,
+				args.length > 5 ? Integer.parseInt(args[5]) : 1 << 20);
+		}
+		if (args.length > 6)
+		{
+			generator.setMalformedRate(Double.parseDouble(args[6]));
+		}
+		generator.write(args[3]);
+		System.err.println(generator.getRecordsWritten() + " records (" +
+			generator.getMalformedWritten() + " malformed), " +
+			generator.getBytesWritten() + " bytes");
+	}
+
+	//
+	//instance vars
+	//
+
+	private String format;
+	private long seed;
+
+	// size of the corpus, 0 for no limit
+	private long recordCount = 1000;
+	private long targetBytes = 0;
+
+	// log-normal sequence lengths
+	private int medianLength = 1000;
+	private double sigma = 1.0;
+	private int maxLength = 1 << 20;
+
+	private int maxContinuationLines = 2;
+	private double commentRate = 0.3;
+	private double malformedRate = 0.0;
+
+	// indexes into ORGANISMS and their weights
+	private int[] organisms = { 0, 1, 2, 3, 4 };
+	private double[] weights = { 4, 2, 3, 1, 1 };
+
+	// counts of the last write
+	private long recordsWritten = 0;
+	private long malformedWritten = 0;
+	private long bytesWritten = 0;
+
+	//
+	// class vars
+	//
+
+	// name, taxon id, GenBank molecule type, division, classification,
+	// Swiss-Prot species code
+	public static final String[][] ORGANISMS = {
+		{ "Mus musculus", "10090", "mRNA", "ROD",
+		  "Eukaryota; Metazoa; Chordata; Craniata; Vertebrata; " +
+		  "Euteleostomi; Mammalia; Eutheria; Euarchontoglires; Glires; " +
+		  "Rodentia; Myomorpha; Muroidea; Muridae; Murinae; Mus; Mus.",
+		  "MOUSE" },
+		{ "Rattus norvegicus", "10116", "mRNA", "ROD",
+		  "Eukaryota; Metazoa; Chordata; Craniata; Vertebrata; " +
+		  "Euteleostomi; Mammalia; Eutheria; Euarchontoglires; Glires; " +
+		  "Rodentia; Myomorpha; Muroidea; Muridae; Murinae; Rattus.",
+		  "RAT" },
+		{ "Homo sapiens", "9606", "DNA", "PRI",
+		  "Eukaryota; Metazoa; Chordata; Craniata; Vertebrata; " +
+		  "Euteleostomi; Mammalia; Eutheria; Euarchontoglires; " +
+		  "Primates; Haplorrhini; Catarrhini; Hominidae; Homo.",
+		  "HUMAN" },
+		{ "Danio rerio", "7955", "mRNA", "VRT",
+		  "Eukaryota; Metazoa; Chordata; Craniata; Vertebrata; " +
+		  "Euteleostomi; Actinopterygii; Neopterygii; Teleostei; " +
+		  "Ostariophysi; Cypriniformes; Danionidae; Danio.",
+		  "DANRE" },
+		{ "Escherichia coli", "562", "DNA", "BCT",
+		  "Bacteria; Proteobacteria; Gammaproteobacteria; " +
+		  "Enterobacterales; Enterobacteriaceae; Escherichia.",
+		  "ECOLI" },
+	};
+
+	private static final String NUCLEOTIDES = "ACGTACGTACGTACGTACGTACGTN";
+	private static final String AMINOACIDS = "ACDEFGHIKLMNPQRSTVWY";
+	private static final String[] CLASSES = {
+		"gene trap", "EST", "full insert sequence", "cDNA clone" };
+	private static final String[] CONTACTS = {
+		"Jane Doe", "John Smith", "Sequencing Center" };
+	private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR",
+		"MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC" };
+}
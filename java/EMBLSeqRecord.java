@@ -2,19 +2,27 @@ package org.jax.mgi.bio.seqrecord;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.regex.PatternSyntaxException;
 
 public class EMBLSeqRecord extends SeqRecord
 {
 	// Concept:
-	//	  IS: an object that represents a EMBL-format sequence record
-	//	 HAS: an organism classification - also see superclass
+	//	  IS: an object that represents a EMBL-format sequence record,
+	//	      either a UniProt (SwissProt/TrEMBL) protein record or an
+	//	      ENA nucleotide record
+	//	 HAS: an organism classification and, for nucleotide records,
+	//	      the base counts - also see superclass
 	//	DOES: Implements the super class readText method to read itself
 	//	 	from an input stream. Provides accessor for organism
 	//	        classification. Also see super class.
 	// Implementation:
+	//	Lines are scanned by index, the only Strings made are the
+	//	values kept. The ID line layout tells the two kinds apart, see
+	//	parseIDLine: protein records have type "PRT" and no division,
+	//	nucleotide records take the molecule type and taxonomic
+	//	division from the ID line and the version from the ID line
+	//	(current ENA) or the SV line (before 2006). The taxon id is
+	//	on the OX line of protein records and in the /db_xref of the
+	//	source feature (FT lines) of nucleotide records.
 
 	//
 	// Constructors
@@ -31,34 +39,29 @@ public class EMBLSeqRecord extends SeqRecord
 		// Returns: nothing
 		// Assumes: "reader" is a stream of EMBL-format sequence records
 		// Effects: "reader" has advanced to next record in the stream
-		// Throws: IO,  and regular expression syntax exceptions
-		// Notes:
-
-                // the ID line broken into tokens for easy access to
-		// sequence type and length
-                StringTokenizer tokenizedID;
-
-		// the AC line broken into tokens for easy access to seqId's
-		StringTokenizer tokenizedAccession;
-
-		// the DT line broken into tokens for easy access to date
-		StringTokenizer tokenizedDate;
-
-		// for discarded tokens
-		String dummy;
+		// Throws: IO exceptions, NumberFormatException if the ID line
+		//         has no length
+		// Notes: when the query (see setQuery) rejects the record,
+		//        parsing stops and the rest of the record is read but
+		//        not kept, see isRejected
 
 		// true when SQ (sequence) line is reached. When true
                 // all subsequent lines are sequence lines until EOREC '//'
 		boolean flagSQ = false;
 
-		// carriage return
-		String CRT = "\n";
+		// true while the FT lines are those of the source feature,
+		// which has the taxon of nucleotide records
+		boolean flagSource = false;
 
-		// for stripping ';' off the end of seqIds on the AC line
-		String tempId = "";
+		// carriage return
+		char CRT = '\n';
 
 		// reset all instance vars for a new record
 		reset();
+		startRecord();
+
+		// times the record for JFR when the event is enabled
+		SeqRecordParseEvent event = SeqRecordParseEvent.start(reader);
 
 		// read current line in the reader stream
                 this.line = reader.readLine();
@@ -74,108 +77,120 @@ public class EMBLSeqRecord extends SeqRecord
 		// a null line indicates EOF. If EOF or end of record we're done
 		while((this.line != null) && !(this.line.startsWith(this.EOREC)))
         {
+            // skip the rest of a record the query rejected
+            if (this.rejected) {
+                this.line = reader.readLine();
+                continue;
+            }
+
             // append line to text
-            this.text.append(this.line + CRT);
+            this.text.append(this.line).append(CRT);
+
+            // If the SQ flag is set this is a sequence line
+            if (flagSQ == true) {
+                // save the sequence line
+                this.sequence.append(this.line).append(CRT);
+            }
 
-            sourceMatcher = ORGANISMSOURCE.matcher(this.line);
-            classifMatcher = ORGANISMCLASSIF.matcher(this.line);
             // If "line" starts with SQ:
             // set the SQ flag which indicates the next line(s)
             // will be sequence lines
-            if (this.line.startsWith(this.SEQUENCE)) {
+            else if (this.line.startsWith(this.SEQUENCE)) {
                 flagSQ = true;
-            }
+                parseSQLine(this.line);
 
-            // If the SQ flag is set this is a sequence line
-            else if (flagSQ == true) {
-                // save the sequence line
-                this.sequence.append(this.line + CRT);
+                // all fields but the sequence are known
+                parsed(RecordQuery.ALL);
             }
 
-            else if (this.line.startsWith(this.ID))
-            // Parse the ID line
-            // There is only one ID line per record. There are
-            // always 6 tokens in an EMBL-format PROTEIN sequence
-            // token 0 = "ID", the tag for this line
-            // token 1 = Entry Name
-            // token 2 = Data Class
-            // token 3 = Molecule type (PRT for protein records)
-            // token 4 = sequence length
-            // token 5 = sequence type (AA (amino acid) for protein)
-            {
-                // break the ID line into tokens
-                tokenizedID = new StringTokenizer(this.line);
-
-                // discard  "ID" tag
-                dummy = tokenizedID.nextToken();
-                // discard Entry Name
-                dummy = tokenizedID.nextToken();
-                //discard Data Class
-                dummy = tokenizedID.nextToken();
-                // get the molecule type
-		this.type = "PRT";
-                //this.type = tokenizedID.nextToken();
-                // strip off the trailing ';'
-               // this.type = this.type.substring(
-                 //   0, this.type.length() - 1);
-                // get the sequence length as an int
-                this.seqLength =
-                    Integer.parseInt(
-                    tokenizedID.nextToken());
-
-                //discard the sequence type
-                dummy = tokenizedID.nextToken();
+            else if (this.line.startsWith(this.ID)) {
+                // There is only one ID line per record
+                parseIDLine(this.line);
+
+                parsed(RecordQuery.LENGTH | RecordQuery.TYPE |
+                    RecordQuery.DIVISION);
             }
 
             // If "line" starts with "AC":
             // Can be multiple ACCESSION lines per record
             else if (this.line.startsWith(this.ACCESSION)) {
-                // break AC line into tokens
-                tokenizedAccession = new StringTokenizer(
-                    this.line);
-                // discard the AC tag field
-                dummy = tokenizedAccession.nextToken();
-
-                // get all the seqId's on this line
-                while (tokenizedAccession.hasMoreElements()) {
-                    tempId = tokenizedAccession.nextToken();
-
-                    // strip off trailing ';'
-                    tempId = tempId.substring(
-                        0, tempId.length() - 1);
-
-                    // load the id into the seqId array
-                    this.seqIds.add(tempId);
+                parseACLine(this.line);
+            }
+
+            // If "line" starts with "SV":
+            // The accession.version of nucleotide records before ENA
+            // moved it to the ID line, e.g. "SV   AB000263.1"
+            else if (this.line.startsWith(SEQVERSION)) {
+                int start = skipBlanks(this.line, 2);
+                int end = nextBlank(this.line, start);
+                if (end > start) {
+                    this.seqIdVersion = this.line.substring(start, end);
                 }
             }
+
             // If "line" starts with DT:
             // There can be multiple DT (date) lines, the last
             // one is what we want: the *last* annotation update
+            // e.g. "DT   27-JAN-2002, entry version 49." or
+            // "DT   28-APR-1992 (Rel. 31, Created)"
             else if (this.line.startsWith(this.DATE)) {
-                // break the DT line into tokens
-                tokenizedDate = new StringTokenizer(this.line);
+                int start = skipBlanks(this.line, 2);
+                int end = nextBlank(this.line, start);
+                if (end > start && this.line.charAt(end - 1) == ',') {
+                    end--;
+                }
+                this.date = FieldDictionary.DATES.intern(
+                    this.line, start, end);
 
-                // discard the DT tag field
-                dummy = tokenizedDate.nextToken();
+                // the AC and SV lines come before the DT lines
+                parsed(RecordQuery.ACCESSION | RecordQuery.VERSION);
+            }
+            // If "line" starts with OX:
+            // This line has the NCBI taxonomy id of the organism
+            // e.g. "OX   NCBI_TaxID=10090;"
+            else if (this.line.startsWith(TAXONOMY)) {
+                int idStart = this.line.indexOf(TAXID);
+                if (idStart > -1) {
+                    this.taxonId = parseTaxonId(
+                        this.line, idStart + TAXID.length());
+                }
 
-                // get the Date
-                this.date = tokenizedDate.nextToken();
+                // the OS and OC lines come before the OX line
+                parsed(RecordQuery.ORGANISM | RecordQuery.CLASSIFICATION |
+                    RecordQuery.TAXON);
+            }
+            // If "line" starts with FT:
+            // Nucleotide records have no OX line, the taxon is the
+            // /db_xref="taxon:" qualifier of the source feature, e.g.
+            // "FT   source          1..1859"
+            // "FT                   /db_xref="taxon:3899""
+            else if (this.line.startsWith(FEATURE)) {
+                if (this.line.length() > 5 && this.line.charAt(5) != ' ') {
+                    // a feature key starts a new feature
+                    flagSource = this.line.startsWith(SOURCEKEY, 5);
+                }
+                else if (flagSource && this.taxonId < 0) {
+                    int idStart = this.line.indexOf(TAXONXREF);
+                    if (idStart > -1) {
+                        this.taxonId = parseTaxonId(
+                            this.line, idStart + TAXONXREF.length());
+                        parsed(RecordQuery.TAXON);
+                    }
+                }
             }
             // If "line" starts with OS:
             // This line lists all the  organisms in which this
             // sequence has been found
-            else if (sourceMatcher.find()) {
+            else if (this.line.startsWith(SOURCE)) {
                 // save the organisms
-                this.organism.append(
-                    sourceMatcher.group(1));
+                appendValue(this.organism, this.line);
             }
             // If "line" starts with OC:
             // This line lists the organism classification for the
             // first organism on the OS line
-            else if (classifMatcher.find()) {
+            else if (this.line.startsWith(CLASSIFICATION)) {
                 //save the organism classification
-                this.organismClassif.append(
-                    classifMatcher.group(1));
+                appendValue(this.organismClassif, this.line);
             }
 
             // read the next line in the record
@@ -190,8 +205,21 @@ public class EMBLSeqRecord extends SeqRecord
 		// we are at EOREC so append it to text
         else
         {
-            this.text.append(this.line + CRT);
+            this.text.append(this.line).append(CRT);
         }
+
+		// a record without an SQ line is decided here
+		if (!this.seqIds.isEmpty())
+		{
+			parsed(RecordQuery.ALL);
+		}
+		event.finish(this);
+	}
+
+	public String getStartTag()
+		// Purpose: accessor for the tag that starts each record
+	{
+		return ID;
 	}
 
 	public String getOrganismClassif()
@@ -201,6 +229,195 @@ public class EMBLSeqRecord extends SeqRecord
 		return (this.organismClassif.toString()).toLowerCase();
 	}
 
+	public int[] getBaseCounts()
+		// Purpose: accessor for the base counts of the SQ line of a
+		//          nucleotide record
+		// Returns: the counts of A, C, G, T and other bases, all -1 for
+		//          protein records
+		// Notes: the array is this record's, copy it to keep it
+	{
+		return this.baseCounts;
+	}
+
+	private void parseIDLine(String line)
+	{
+		// Purpose: parses the type, division, length and, for current
+		//          ENA records, the version from an ID line
+		// Returns: nothing
+		// Throws: NumberFormatException if the line ends with no
+		//         length in BP or AA
+		// Notes: the fields after the tag are separated by ';'
+		//	UniProt:       ID   CYC_HUMAN      Reviewed;      105 AA.
+		//	ENA:           ID   X56734; SV 1; linear; mRNA; STD; PLN;
+		//	               1859 BP.
+		//	ENA pre 2006:  ID   AB000263 standard; RNA; PRI; 368 BP.
+
+		int count = 0;
+		int start = 2;
+		while (start < line.length() && count < MAXIDFIELDS)
+		{
+			int end = line.indexOf(';', start);
+			if (end < 0)
+			{
+				end = line.length();
+			}
+			start = skipBlanks(line, start);
+			int last = end;
+			while (last > start && line.charAt(last - 1) <= ' ')
+			{
+				last--;
+			}
+			this.fieldStarts[count] = start;
+			this.fieldEnds[count] = last;
+			count++;
+			start = end + 1;
+		}
+
+		// the last field is the length, e.g. "1859 BP."
+		int end = count == 0 ? 0 : this.fieldEnds[count - 1];
+		if (end > 0 && line.charAt(end - 1) == '.')
+		{
+			end--;
+		}
+		boolean bases = line.startsWith(BP, end - BP.length());
+		if (!bases && !line.startsWith(AA, end - AA.length()))
+		{
+			throw new NumberFormatException(
+				"no length in BP or AA on ID line: " + line);
+		}
+		end = end - BP.length();
+		while (end > 0 && line.charAt(end - 1) == ' ')
+		{
+			end--;
+		}
+		int digits = end;
+		while (digits > 0 && Character.isDigit(line.charAt(digits - 1)))
+		{
+			digits--;
+		}
+		this.seqLength = Integer.parseInt(line.substring(digits, end));
+
+		if (!bases)
+		{
+			this.type = PROTEIN;
+			return;
+		}
+		int typeField;
+		int divisionField;
+		if (count >= 7 && line.startsWith(SV, this.fieldStarts[1]))
+		{
+			// the version is the accession.version
+			this.seqIdVersion = line.substring(this.fieldStarts[0],
+				this.fieldEnds[0]) + "." + line.substring(
+				skipBlanks(line, this.fieldStarts[1] + SV.length()),
+				this.fieldEnds[1]);
+			typeField = 3;
+			divisionField = 5;
+		}
+		else
+		{
+			typeField = 1;
+			divisionField = 2;
+		}
+		if (count > divisionField + 1)
+		{
+			this.type = FieldDictionary.TYPES.intern(line,
+				this.fieldStarts[typeField], this.fieldEnds[typeField]);
+			this.division = FieldDictionary.DIVISIONS.intern(line,
+				this.fieldStarts[divisionField],
+				this.fieldEnds[divisionField]);
+		}
+	}
+
+	private void parseACLine(String line)
+	{
+		// Purpose: adds the seqIds of an AC line, e.g.
+		//          "AC   X56734; S46826;"
+		// Returns: nothing
+
+		int start = skipBlanks(line, 2);
+		while (start < line.length())
+		{
+			int end = nextBlank(line, start);
+			// strip off trailing ';'
+			int idEnd = line.charAt(end - 1) == ';' ? end - 1 : end;
+			if (idEnd > start)
+			{
+				this.seqIds.add(line.substring(start, idEnd));
+			}
+			start = skipBlanks(line, end);
+		}
+	}
+
+	private void parseSQLine(String line)
+	{
+		// Purpose: reads the base counts of a nucleotide SQ line, e.g.
+		//          "SQ   Sequence 1859 BP; 609 A; 314 C; 355 G; 581 T;
+		//          0 other;"
+		// Returns: nothing
+		// Notes: protein SQ lines have no base counts and are ignored
+
+		int start = line.indexOf(BPCOUNT);
+		if (start < 0)
+		{
+			return;
+		}
+		start = line.indexOf(';', start) + 1;
+		while (start > 0 && start < line.length())
+		{
+			start = skipBlanks(line, start);
+			int digits = start;
+			int count = 0;
+			while (start < line.length() &&
+			       Character.isDigit(line.charAt(start)))
+			{
+				count = count * 10 + (line.charAt(start) - '0');
+				start++;
+			}
+			start = skipBlanks(line, start);
+			if (start == digits || start >= line.length())
+			{
+				break;
+			}
+			int base = BASES.indexOf(line.charAt(start));
+			this.baseCounts[base < 0 ? BASES.length() : base] = count;
+			start = line.indexOf(';', start) + 1;
+		}
+	}
+
+	private static void appendValue(StringBuffer buffer, String line)
+	{
+		// Purpose: appends the value of 'line', what follows its tag
+		//          and the blanks after it, to 'buffer'
+
+		int start = skipBlanks(line, 2);
+		if (start > 2 && start < line.length())
+		{
+			buffer.append(line, start, line.length());
+		}
+	}
+
+	private static int skipBlanks(String line, int start)
+		// Returns: the index of the first non-blank at or after 'start'
+	{
+		while (start < line.length() && line.charAt(start) == ' ')
+		{
+			start++;
+		}
+		return start;
+	}
+
+	private static int nextBlank(String line, int start)
+		// Returns: the index of the first blank at or after 'start', or
+		//          the length of 'line'
+	{
+		while (start < line.length() && line.charAt(start) != ' ')
+		{
+			start++;
+		}
+		return start;
+	}
+
 	private void reset()
 		// Purpose: reinitializes instance variables
 	{
@@ -208,11 +425,16 @@ public class EMBLSeqRecord extends SeqRecord
 		this.text.setLength(0);
 		this.seqLength = -1;
 		this.type = "";
+		this.division = "";
 		this.date = "";
+		this.seqIdVersion = "";
+		Arrays.fill(this.baseCounts, -1);
                 this.organism.setLength(0);
                 this.sequence.setLength(0);
+		this.bases = null;
                 this.seqIds.clear();
 		this.organismClassif.setLength(0);
+		this.taxonId = -1;
 	}
 
 	//
@@ -223,54 +445,43 @@ public class EMBLSeqRecord extends SeqRecord
 	// the *first* OS line
 	protected StringBuffer organismClassif = new StringBuffer();
 
+	// the counts of A, C, G, T and other bases on the SQ line of a
+	// nucleotide record, -1 if there is none
+	private int[] baseCounts = new int[] { -1, -1, -1, -1, -1 };
+
+	// where the ';' separated fields of the ID line start and end
+	private int[] fieldStarts = new int[MAXIDFIELDS];
+	private int[] fieldEnds = new int[MAXIDFIELDS];
+
 	//
 	// class vars
 	//
 
-	//regular expression patterns and matchers for parsing EMBL-format records
-	private static Pattern ORGANISMSOURCE;
-	private static Pattern ORGANISMCLASSIF;
-    private Matcher sourceMatcher = null;
-    private Matcher classifMatcher = null;
-
 	//String expressions for parsing EMBL-format records
-	private static String ID = "ID";
-	private static String ACCESSION = "AC";
-
-	private static String DATE = "DT";
-	private static String SEQUENCE = "SQ";
-	private static String EOREC = "//";
-
-    // define the regular expression
-    static
-    {
-        try {
-            ORGANISMSOURCE = Pattern.compile("^OS +(.+)$");
-            ORGANISMCLASSIF = Pattern.compile("OC +(.+)$");
-        }
-        // this should only happen during development - so catch here
-        catch(PatternSyntaxException e ) {
-            System.err.println(e.getMessage());
-        }
-    }
-
-/*
-	// define the regular expressions
-        static
-        {
-            try
-            {
-                   ORGANISMSOURCE = new RE("^OS +(.+)$");
-                   ORGANISMCLASSIF = new RE("OC +(.+)$");
-            }
-
-	    // this should only happen during development - so catch here
-            catch(RESyntaxException e)
-            {
-                System.err.println(" RESyntaxException in EMBLSeqRecord: "
-			+ e.getMessage());
-            }
-        }
-        */
+	private static final String ID = "ID";
+	private static final String ACCESSION = "AC";
+	private static final String SEQVERSION = "SV";
+	private static final String DATE = "DT";
+	private static final String SOURCE = "OS";
+	private static final String CLASSIFICATION = "OC";
+	private static final String TAXONOMY = "OX";
+	private static final String TAXID = "NCBI_TaxID=";
+	private static final String FEATURE = "FT";
+	private static final String SOURCEKEY = "source ";
+	private static final String TAXONXREF = "/db_xref=\"taxon:";
+	private static final String SEQUENCE = "SQ";
+	private static final String EOREC = "//";
+
+	// ID line pieces
+	private static final String SV = "SV";
+	private static final String BP = "BP";
+	private static final String AA = "AA";
+	private static final String PROTEIN = "PRT";
+
+	// SQ line pieces, the base counts follow "BP;"
+	private static final String BPCOUNT = " BP;";
+	private static final String BASES = "ACGT";
+
+	// the most ';' separated fields of an ID line looked at
+	private static final int MAXIDFIELDS = 8;
 }
-
@@ -0,0 +1,352 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+public class FASTAIndex
+{
+	// Concept:
+	//	  IS: an index of the records of a FASTA-format file in the
+	//	      samtools faidx (.fai) layout
+	//	 HAS: for each record its name, sequence length, the byte offset
+	//	      of its first base, the bases per line and the bytes per
+	//	      line; and the FASTA file memory-mapped
+	//	DOES: builds the index from a FASTA file, writes and reads .fai
+	//	      files, and fetches a region of a record reading only the
+	//	      bytes of the region
+	// Implementation:
+	//	A .fai line is name<TAB>length<TAB>offset<TAB>linebases<TAB>
+	//	linewidth. Base i (from 0) of a record is at byte
+	//	    offset + (i / linebases) * linewidth + i % linebases
+	//	so a region is found without reading anything before it. The
+	//	file is mapped read only in 1GB windows, which are only paged
+	//	in where regions are fetched. Fetches may run concurrently.
+	//	As for samtools, every sequence line of a record but the last
+	//	must have the same length.
+
+	//
+	// Constructors
+	//
+
+	private FASTAIndex(String fastaFile)
+	{
+		// Purpose: creates an empty index for 'fastaFile'
+
+		this.fastaFile = fastaFile;
+	}
+
+	//
+	// Methods
+	//
+
+	public static FASTAIndex build(String fastaFile)
+		throws IOException
+	{
+		// Purpose: builds the index of 'fastaFile' by reading it
+		// Returns: the index
+		// Throws: IOException if the file can't be read or its lines
+		//         are not laid out as the index requires
+
+		FASTAIndex index = new FASTAIndex(fastaFile);
+		PositionedReader reader = new PositionedReader(fastaFile);
+		try
+		{
+			Entry entry = null;
+			// true when a sequence line shorter than the first was
+			// seen, it must be the last of the record
+			boolean shortLine = false;
+			while (true)
+			{
+				long lineStart = reader.getPosition();
+				String line = reader.readLine();
+				if (line == null)
+				{
+					break;
+				}
+				long lineWidth = reader.getPosition() - lineStart;
+				if (line.startsWith(DESCRIPTION))
+				{
+					entry = new Entry(nameOf(line), reader.getPosition());
+					index.add(entry, fastaFile, line);
+					shortLine = false;
+				}
+				else if (entry == null || line.length() == 0)
+				{
+					// text before the first record, or blank lines
+				}
+				else
+				{
+					if (shortLine)
+					{
+						throw new IOException(fastaFile +
+							": different line length in " +
+							entry.name);
+					}
+					if (entry.lineBases == 0)
+					{
+						entry.lineBases = line.length();
+						entry.lineWidth = lineWidth;
+					}
+					else if (line.length() > entry.lineBases)
+					{
+						throw new IOException(fastaFile +
+							": different line length in " +
+							entry.name);
+					}
+					shortLine = line.length() < entry.lineBases;
+					entry.length += line.length();
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return index;
+	}
+
+	public static FASTAIndex load(String fastaFile)
+		throws IOException
+	{
+		// Purpose: reads the index of 'fastaFile' from its .fai file,
+		//          building and writing the .fai file if there is none
+		// Returns: the index
+		// Throws: IOException if a file can't be read or written
+
+		File faiFile = new File(fastaFile + FAI);
+		if (!faiFile.exists())
+		{
+			FASTAIndex index = build(fastaFile);
+			index.write(faiFile.getPath());
+			return index;
+		}
+
+		FASTAIndex index = new FASTAIndex(fastaFile);
+		BufferedReader reader = new BufferedReader(new FileReader(faiFile));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				String[] fields = line.split("\t");
+				if (fields.length < 5)
+				{
+					throw new IOException(faiFile + ": bad line " + line);
+				}
+				try
+				{
+					Entry entry = new Entry(fields[0],
+						Long.parseLong(fields[2]));
+					entry.length = Long.parseLong(fields[1]);
+					entry.lineBases = Long.parseLong(fields[3]);
+					entry.lineWidth = Long.parseLong(fields[4]);
+					index.add(entry, faiFile.getPath(), line);
+				}
+				catch (NumberFormatException e)
+				{
+					throw new IOException(faiFile + ": bad line " + line);
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return index;
+	}
+
+	public void write(String faiFile)
+		throws IOException
+	{
+		// Purpose: writes the index to 'faiFile' in .fai layout
+
+		Writer out = new BufferedWriter(new FileWriter(faiFile));
+		try
+		{
+			for (Iterator<Entry> i = this.entries.values().iterator();
+			     i.hasNext();)
+			{
+				Entry entry = i.next();
+				out.write(entry.name + "\t" + entry.length + "\t" +
+					entry.offset + "\t" + entry.lineBases + "\t" +
+					entry.lineWidth + "\n");
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public String fetch(String name, long start, long end)
+		throws IOException
+	{
+		// Purpose: fetches bases 'start' to 'end' of record 'name'
+		// Returns: the bases as they are in the file, 'end' is cut to
+		//          the length of the record
+		// Assumes: 'start' and 'end' count from 1 and 'end' is included,
+		//          as samtools regions
+		// Effects: maps the FASTA file the first time it is called
+		// Throws: IOException if 'name' is not in the index, the region
+		//         is empty or the file can't be mapped
+
+		Entry entry = this.entries.get(name);
+		if (entry == null)
+		{
+			throw new IOException(name + " is not in " + this.fastaFile);
+		}
+		end = Math.min(end, entry.length);
+		if (start < 1 || start > end)
+		{
+			throw new IOException("bad region " + name + ":" + start +
+				"-" + end);
+		}
+
+		MappedByteBuffer[] mapped = ensureMapped();
+		char[] bases = new char[(int)(end - start + 1)];
+		long base = start - 1;
+		int count = 0;
+		while (count < bases.length)
+		{
+			// copy to the end of the region or of the line
+			long column = base % entry.lineBases;
+			long position = entry.offset +
+				(base / entry.lineBases) * entry.lineWidth + column;
+			int run = (int)Math.min(bases.length - count,
+						entry.lineBases - column);
+			for (int i = 0; i < run; i++)
+			{
+				long at = position + i;
+				bases[count + i] = (char)(mapped[(int)(at >>> WINDOWBITS)]
+					.get((int)(at & WINDOWMASK)) & 0xff);
+			}
+			count += run;
+			base += run;
+		}
+		return new String(bases);
+	}
+
+	public long getLength(String name)
+		// Purpose: accessor for the sequence length of record 'name'
+		// Returns: the length, or -1 if 'name' is not in the index
+	{
+		Entry entry = this.entries.get(name);
+		return entry == null ? -1 : entry.length;
+	}
+
+	public Set<String> getNames()
+		// Purpose: accessor for the names of the records in file order
+	{
+		return Collections.unmodifiableSet(this.entries.keySet());
+	}
+
+	public void close()
+	{
+		// Purpose: drops the mapping of the FASTA file
+
+		this.windows = null;
+	}
+
+	private synchronized MappedByteBuffer[] ensureMapped()
+		throws IOException
+	{
+		// Purpose: maps the FASTA file in windows of 2^WINDOWBITS bytes
+		// Returns: the windows
+		// Notes: the window of a byte is (position >>> WINDOWBITS), bytes
+		//        are read one at a time so a line may span windows
+
+		if (this.windows != null)
+		{
+			return this.windows;
+		}
+		RandomAccessFile raf = new RandomAccessFile(this.fastaFile, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			int count = (int)((size + WINDOWMASK) >>> WINDOWBITS);
+			MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++)
+			{
+				long start = (long)i << WINDOWBITS;
+				mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					start, Math.min(WINDOWMASK + 1, size - start));
+			}
+			this.windows = mapped;
+			return mapped;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private void add(Entry entry, String file, String line)
+		throws IOException
+	{
+		// Purpose: adds 'entry', read from 'line' of 'file'
+		// Throws: IOException if a record of the same name was added,
+		//         the .fai format can't hold both
+
+		if (this.entries.containsKey(entry.name))
+		{
+			throw new IOException(file + ": duplicate record name " +
+				entry.name + " in line " + line);
+		}
+		this.entries.put(entry.name, entry);
+	}
+
+	private static String nameOf(String line)
+		// Purpose: gets the record name from description line 'line'
+		// Returns: the text after '>' up to the first white space
+	{
+		int end = 1;
+		while (end < line.length() && line.charAt(end) != ' ' &&
+		       line.charAt(end) != '\t')
+		{
+			end++;
+		}
+		return line.substring(1, end);
+	}
+
+	private static class Entry
+	{
+		// Concept:
+		//	  IS: the .fai line of one record
+
+		Entry(String name, long offset)
+		{
+			this.name = name;
+			this.offset = offset;
+		}
+
+		String name;
+		long length = 0;
+		long offset;
+		long lineBases = 0;
+		long lineWidth = 0;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the FASTA file
+	private String fastaFile;
+
+	// record name to Entry, in file order
+	private LinkedHashMap<String, Entry> entries =
+		new LinkedHashMap<String, Entry>();
+
+	// the FASTA file mapped in windows, null until the first fetch
+	private volatile MappedByteBuffer[] windows = null;
+
+	// 1GB mapping windows
+	private static final int WINDOWBITS = 30;
+	private static final long WINDOWMASK = (1L << WINDOWBITS) - 1;
+
+	private static final String DESCRIPTION = ">";
+	private static final String FAI = ".fai";
+}
@@ -43,14 +43,8 @@ public class FASTASeqRecord extends SeqRecord
         // Assumes: "reader" is a stream of FASTA-format sequence records
         // Effects: "reader" has advanced to the next record in the stream
         // Throws: IO, EOF,  and regular expression syntax exceptions
-        // Notes:
-
-		// the FASTA description line broken into tokens
-		// for easy access to seqId and description
-		StringTokenizer tokenizedDescription;
-
-		// for discarded tokens
-		String dummy;
+        // Notes: once the query (see setQuery) rejects the record its
+        //        sequence lines are read but not kept, see isRejected
 
 		// true if current line is a description line.
 		boolean flagDescription = false;
@@ -58,11 +52,12 @@ public class FASTASeqRecord extends SeqRecord
 		// carriage return
                 String CRT = "\n";
 
-		// values for current seqID
-		String currentSeqID;
-
 		// reinit all instance vars for a new record
 		this.reset();
+		this.startRecord();
+
+		// times the record for JFR when the event is enabled
+		SeqRecordParseEvent event = SeqRecordParseEvent.start(reader);
 
 		// read current line in the reader stream.
                 this.line = reader.readLine();
@@ -81,38 +76,8 @@ public class FASTASeqRecord extends SeqRecord
 			 // follows the seqID and is the remainder of the line.
                         {
 
-			   // break this description line into tokens
-               // sc - this is splitting on " "
-			   tokenizedDescription = new StringTokenizer(
-				                    this.line);
-
-         		   // get the current seqID by stripping away '>'
-                    // sc - this is saving the part of the description line
-                    // up to the first " " and minus the leading ">"
-			   currentSeqID = tokenizedDescription.nextToken();
-			   currentSeqID = currentSeqID.substring(
-						1,currentSeqID.length());
-
-        		   // set the seqID
-			   this.seqIds.add(currentSeqID);
-
-			   // get and set the description if present
-         		   if (tokenizedDescription.hasMoreElements())
-			   {
-			      this.description = tokenizedDescription.nextToken();
-                  // sc don't know what this is doing -
-			      this.description = this.line.substring(this.line.indexOf(
-				        this.description),this.line.length());
-
-			    }
-			    // set the description if not present
-			    else
-			    {
-			      // set the description
-			      this.description = "";
-
-			    }
-
+			   // set the seqID and description
+			   parseDescriptionLine(this.line);
 
 			    // append line to text attribute
 			    this.text.append(this.line + CRT);
@@ -120,9 +85,12 @@ public class FASTASeqRecord extends SeqRecord
 		            // We have found a description line
 			    flagDescription = true;
 
+			    // everything but the length is known
+			    parsed(RecordQuery.ALL & ~RecordQuery.LENGTH);
+
                         }
 
-			else if (flagDescription == true)
+			else if (flagDescription == true && !this.rejected)
 			// Parse sequence lines
 			 // if the Description flag is true append this line to
                          // "sequence". When next DESCRIPTION is found, sequence is
@@ -160,8 +128,69 @@ public class FASTASeqRecord extends SeqRecord
 
 		//set sequence length
 		this.seqLength = sequence.length();
+
+		if (!this.seqIds.isEmpty())
+		{
+			parsed(RecordQuery.ALL);
+		}
+		event.finish(this);
+	}
+
+
+	protected void parseDescriptionLine(String line)
+	{
+	// Purpose: parses the seqID and description out of the FASTA
+	//          description line 'line'
+	// Returns: nothing
+	// Assumes: 'line' starts with '>'
+	// Effects: adds the seqID to seqIds and sets the description
+	// Throws: nothing
+	// Notes: the line is scanned in place, the only Strings made are
+	//        the seqID and the description. Subclasses override this
+	//        to parse database specific seqIDs
+
+	    int idEnd = idEnd(line);
+	    this.seqIds.add(line.substring(1, idEnd));
+	    this.description = descriptionOf(line, idEnd);
+	}
+
+	protected static int idEnd(String line)
+	// Purpose: finds the end of the seqID of description line 'line'
+	// Returns: the index of the first white space or the line length
+	{
+	    int idEnd = 1;
+	    while (idEnd < line.length() &&
+		   !isWhiteSpace(line.charAt(idEnd)))
+	    {
+		idEnd++;
+	    }
+	    return idEnd;
+	}
+
+	protected static String descriptionOf(String line, int idEnd)
+	// Purpose: gets the description from description line 'line'
+	// Returns: the line after the seqID ending at 'idEnd' and the
+	//          white space following it, "" if there is none
+	{
+	    int start = idEnd;
+	    while (start < line.length() && isWhiteSpace(line.charAt(start)))
+	    {
+		start++;
+	    }
+	    if (start == line.length())
+	    {
+		return "";
+	    }
+	    return line.substring(start);
 	}
 
+	private static boolean isWhiteSpace(char c)
+	// Purpose: determines whether 'c' separates the seqID and
+	//          description, as StringTokenizer would
+	{
+	    return c == ' ' || c == '\t' || c == '\f' ||
+		   c == '\r' || c == '\n';
+	}
 
         public void setThyself(
 		String seqID,
@@ -196,6 +225,7 @@ public class FASTASeqRecord extends SeqRecord
 
 	    // set the sequence
 	    this.sequence = new StringBuffer(sequence);
+	    this.bases = null;
 
 	    // set the sequence length
 	    this.seqLength = sequence.length();
@@ -265,6 +295,12 @@ public class FASTASeqRecord extends SeqRecord
 
 	}
 
+	public String getStartTag()
+	// Purpose: accessor for the tag that starts each record
+	{
+	    return DESCRIPTION;
+	}
+
 	// Accessor for description attribute
 	public String getDescription()
         {
@@ -283,6 +319,7 @@ public class FASTASeqRecord extends SeqRecord
 	    this.seqIdVersion = "";
 	    this.organism.setLength(0);
 	    this.sequence.setLength(0);
+	    this.bases = null;
 	    this.description = "";
 	}
 
@@ -0,0 +1,255 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FieldDictionary
+{
+	// Concept:
+	//	  IS: a dictionary of the values of a record field that has few
+	//	      distinct values (division, type, date, organism lineage)
+	//	 HAS: the values seen so far, each with an int code
+	//	DOES: gives parsers one shared String for each value, so records
+	//	      held in memory share them instead of each keeping a copy,
+	//	      and converts between values and codes
+	// Implementation:
+	//	Codes are given in the order values are first seen, starting
+	//	at 0 with any values the dictionary was made with. The table
+	//	from value to code is a ConcurrentHashMap, so lookups from
+	//	parsers on many threads don't wait; adding a value is locked.
+	//	While a dictionary has at most SCANSIZE values, intern of a
+	//	part of a line compares it with each value in place instead of
+	//	making a substring first, so parsing the LOCUS line of a record
+	//	makes no Strings for its division and type.
+	//	A dictionary stops adding values at its maximum size; values
+	//	after that are returned as they are and have code -1, so a
+	//	field with more distinct values than expected can't fill the
+	//	heap.
+
+	//
+	// Constructors
+	//
+
+	public FieldDictionary(
+		String[] known,   // values to give the first codes, may be null
+		int maxSize)      // the most values the dictionary will hold
+	{
+		// Purpose: creates a dictionary of 'known' values
+
+		this.maxSize = maxSize;
+		this.values = new String[Math.min(maxSize, 16)];
+		if (known != null)
+		{
+			for (int i = 0; i < known.length; i++)
+			{
+				code(known[i]);
+			}
+		}
+	}
+
+	//
+	// Methods
+	//
+
+	public String intern(String value)
+	{
+		// Purpose: finds the shared copy of 'value'
+		// Returns: the shared copy, or 'value' if the dictionary is
+		//          full, null if 'value' is null
+
+		if (value == null)
+		{
+			return null;
+		}
+		int code = code(value);
+		return code < 0 ? value : this.values[code];
+	}
+
+	public String intern(CharSequence text, int start, int end)
+	{
+		// Purpose: finds the shared copy of characters 'start' up to
+		//          but not including 'end' of 'text'
+		// Returns: the shared copy, or a new String if the dictionary
+		//          is full
+		// Throws: IndexOutOfBoundsException as for String.substring
+
+		if (start < 0 || end > text.length() || start > end)
+		{
+			throw new StringIndexOutOfBoundsException(
+				"range " + start + " to " + end + " of " + text.length());
+		}
+		String[] known = this.values;
+		int count = Math.min(this.count, known.length);
+		if (count <= SCANSIZE)
+		{
+			int length = end - start;
+			for (int i = 0; i < count; i++)
+			{
+				String value = known[i];
+				if (value.length() == length &&
+				    matches(value, text, start))
+				{
+					return value;
+				}
+			}
+		}
+		return intern(text.subSequence(start, end).toString());
+	}
+
+	public String internTrimmed(CharSequence text, int start, int end)
+	{
+		// Purpose: as intern, with blanks at either end of the part
+		//          left out as by String.trim
+
+		if (start < 0 || end > text.length() || start > end)
+		{
+			throw new StringIndexOutOfBoundsException(
+				"range " + start + " to " + end + " of " + text.length());
+		}
+		while (start < end && text.charAt(start) <= ' ')
+		{
+			start++;
+		}
+		while (end > start && text.charAt(end - 1) <= ' ')
+		{
+			end--;
+		}
+		return intern(text, start, end);
+	}
+
+	public int code(String value)
+	{
+		// Purpose: finds the code of 'value', adding it if it is new
+		// Returns: the code, or -1 if the dictionary is full
+
+		Integer code = this.codes.get(value);
+		if (code != null)
+		{
+			return code.intValue();
+		}
+		return add(value);
+	}
+
+	public int find(String value)
+	{
+		// Purpose: finds the code of 'value' without adding it
+		// Returns: the code, or -1 if 'value' is not in the dictionary
+
+		Integer code = value == null ? null : this.codes.get(value);
+		return code == null ? -1 : code.intValue();
+	}
+
+	public String value(int code)
+	{
+		// Purpose: finds the value of 'code'
+		// Returns: the value
+		// Throws: IllegalArgumentException if no value has 'code'
+
+		String[] known = this.values;
+		if (code < 0 || code >= Math.min(this.count, known.length))
+		{
+			throw new IllegalArgumentException("no value has code " + code);
+		}
+		return known[code];
+	}
+
+	public int size()
+		// Purpose: accessor for the number of values
+	{
+		return this.count;
+	}
+
+	public boolean isFull()
+		// Purpose: determines whether the dictionary has stopped
+		//          adding values
+	{
+		return this.count >= this.maxSize;
+	}
+
+	private synchronized int add(String value)
+	{
+		// Purpose: adds 'value' unless another thread just did
+		// Returns: its code, or -1 if the dictionary is full
+
+		Integer code = this.codes.get(value);
+		if (code != null)
+		{
+			return code.intValue();
+		}
+		if (this.count >= this.maxSize)
+		{
+			return -1;
+		}
+		// keep no part of a larger String the value was cut from
+		value = new String(value);
+		String[] known = this.values;
+		if (this.count == known.length)
+		{
+			known = Arrays.copyOf(known,
+				Math.min(this.maxSize, known.length * 2));
+		}
+		known[this.count] = value;
+		this.values = known;
+		// the value is in "values" before its code can be found
+		this.codes.put(value, Integer.valueOf(this.count));
+		this.count++;
+		return this.count - 1;
+	}
+
+	private static boolean matches(String value, CharSequence text,
+				       int start)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			if (value.charAt(i) != text.charAt(start + i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//
+	//instance vars
+	//
+
+	private final int maxSize;
+	private final ConcurrentHashMap<String, Integer> codes =
+		new ConcurrentHashMap<String, Integer>();
+
+	// values by code, replaced by a larger copy when full
+	private volatile String[] values;
+	private volatile int count = 0;
+
+	//
+	// class vars
+	//
+
+	// the most values intern(text, start, end) compares in place
+	private static final int SCANSIZE = 64;
+
+	// GenBank and ENA divisions
+	public static final FieldDictionary DIVISIONS = new FieldDictionary(
+		new String[] { "PRI", "ROD", "MAM", "VRT", "INV", "PLN", "BCT",
+			       "VRL", "PHG", "SYN", "UNA", "EST", "PAT", "STS",
+			       "GSS", "HTG", "HTC", "ENV", "CON", "TSA", "HUM",
+			       "MUS", "FUN", "PRO", "TGN", "UNC", "" },
+		1024);
+
+	// GenBank and ENA molecule types
+	public static final FieldDictionary TYPES = new FieldDictionary(
+		new String[] { "DNA", "RNA", "mRNA", "tRNA", "rRNA", "uRNA",
+			       "snRNA", "scRNA", "snoRNA", "PRT", "genomic DNA",
+			       "genomic RNA", "other DNA", "other RNA",
+			       "unassigned DNA", "unassigned RNA", "viral cRNA",
+			       "transcribed RNA", "" },
+		1024);
+
+	// dates, about 365 a year of records
+	public static final FieldDictionary DATES =
+		new FieldDictionary(new String[] { "" }, 1 << 16);
+
+	// lower cased organism lineages and names
+	public static final FieldDictionary LINEAGES =
+		new FieldDictionary(new String[] { "" }, 1 << 20);
+}
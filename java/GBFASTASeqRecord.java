@@ -7,11 +7,17 @@ public class GBFASTASeqRecord extends FASTASeqRecord
 {
 	// Concept:
 	//	  IS: an object that represents a GBFASTA-format sequence record
-	//	 HAS: see superclass
-	//	DOES: Extends the super class readText method to parse out the
-	//	      seqId from the description
-	//	      Also see superclass
+	//	 HAS: A GenInfo Identifier (GI) - also see superclass
+	//	DOES: Extends the super class description line parsing to parse
+	//	      out the seqId, seqIdVersion and GI from the FASTA Id.
+	//	      Provides accessor for GI Id - also see superclass
 	// Implementation:
+	//	The FASTA Id is scanned in place in the description line.
+	//	Both the legacy and the current NCBI layouts are understood:
+	//	    >gi|3287367|gb|AC002397.1|AC002397 description
+	//	    >gb|AC002397.1| description (or ref|NM_000001.3| etc.)
+	//	    >AC002397.1 description
+	//	Only the seqId, seqIdVersion and GI Strings are made.
 
 	//
 	// Constructors:
@@ -31,57 +37,105 @@ public class GBFASTASeqRecord extends FASTASeqRecord
         //
         //
 
-	public void readText(BufferedReader reader)
-		throws IOException, EOFException
-        {
-        // Purpose: reads a FASTA-format sequence record extending the super
-	//          class method by parsing the GenBank seqId out of the Genbank
-	//          FASTA 'unique identifier'
-        // Returns: nothing
-        // Assumes: "reader" is a stream of FASTA-format sequence records
-        // Effects: "reader" has advanced to the next record in the stream
-        // Throws: IO, EOF,  and regular expression syntax exceptions
-
-		// have the superclass method do its work
-		super.readText(reader);
-
-		// for discarded tokens
-		String dummy;
-
-		// carriage return
-                String CRT = "\n";
-		// the seqidversion token in the description line
-		int seqIdVersionToken = 4;
-
-		// tokenized FASTA Id - a FASTA Id is a unique identifier that
-		// contains a GenBank SeqId which we must parse out e.g.
-		// this.seqIds.get(0) has the following format
-		// gi|3287367|gb|AC002397.1|AC002397
-		// we must parse out the last token tokenized on '|'
-		// Jan 03 - note the last token is not always the seqid
-		// thi 4th token is seqIdVersion - get it than tokenize it on
-		// '.' to get the seqId
-		StringTokenizer tokenizedFASTAId = new StringTokenizer(
-                        (String)(this.seqIds.get(0)), "|");
-
-		// count of total tokens in tokenizedFASTAId
-		int count = seqIdVersionToken;
-
-		// the last token is the seqId
-		for(int i = 1; i < count ; i++)
+	protected void parseDescriptionLine(String line)
+	{
+	// Purpose: parses the GenBank seqId, seqIdVersion and GI out of
+	//          the FASTA Id of description line 'line'
+	// Returns: nothing
+	// Assumes: 'line' starts with '>'
+	// Effects: adds the seqId to seqIds, sets seqIdVersion, the GI
+	//          and the description
+	// Throws: nothing
+	// Notes: seqIdVersion is "" when the Id has no version. When a
+	//        legacy Id has no accession field the whole Id is the seqId
+
+		int idEnd = idEnd(line);
+
+		// start and end of the accession.version field
+		int accStart = 1;
+		int accEnd = idEnd;
+
+		int bar = fieldEnd(line, accStart, idEnd);
+		if (bar < idEnd)
+		{
+			if (line.regionMatches(accStart, GI, 0, GI.length()) &&
+			    bar == accStart + GI.length() - 1)
+			{
+				// gi|3287367|gb|AC002397.1|AC002397
+				int giEnd = fieldEnd(line, bar + 1, idEnd);
+				this.genInfoId = line.substring(bar + 1, giEnd);
+				int dbEnd = fieldEnd(line, giEnd + 1, idEnd);
+				if (dbEnd < idEnd)
+				{
+					accStart = dbEnd + 1;
+					accEnd = fieldEnd(line, accStart, idEnd);
+				}
+			}
+			else
+			{
+				// gb|AC002397.1|
+				accStart = bar + 1;
+				accEnd = fieldEnd(line, accStart, idEnd);
+			}
+		}
+		if (accStart >= accEnd)
 		{
-			dummy = tokenizedFASTAId.nextToken();
+			accStart = 1;
+			accEnd = idEnd;
 		}
 
-		String seqIdVersion = tokenizedFASTAId.nextToken();
+		// split accession.version on the '.'
+		int dot = line.lastIndexOf('.', accEnd - 1);
+		if (dot > accStart)
+		{
+			this.seqIdVersion = line.substring(accStart, accEnd);
+			this.seqIds.add(this.seqIdVersion.substring(
+				0, dot - accStart));
+		}
+		else
+		{
+			this.seqIds.add(line.substring(accStart, accEnd));
+		}
 
-		// to extract the seqId from seqIdVersion
-                StringTokenizer tokenizedSeqIdV = new StringTokenizer(
-			seqIdVersion, ".");
-		// seqId is the first token
-		this.seqIds.set(0, tokenizedSeqIdV.nextToken());
+		this.description = descriptionOf(line, idEnd);
+	}
 
+	private static int fieldEnd(String line, int start, int idEnd)
+	// Purpose: finds the end of the '|' separated field of the FASTA
+	//          Id starting at 'start'
+	// Returns: the index of the next '|' or 'idEnd'
+	{
+		for (int i = start; i < idEnd; i++)
+		{
+			if (line.charAt(i) == '|')
+			{
+				return i;
+			}
+		}
+		return idEnd;
 	}
 
-}
+	// Accessor for GI Id
+	public String getGenInfoId()
+        {
+                return this.genInfoId;
+        }
+
+	public void reset()
+	// Purpose: reinitialize instance variables
+	{
+		super.reset();
+		this.genInfoId = "";
+	}
+
+	//
+	//instance vars
+	//
+
+	// The NCBI GenInfo Identifier, "" for FASTA Ids without one
+	protected String genInfoId = "";
 
+	// the field that starts legacy FASTA Ids
+	private static final String GI = "gi|";
+
+}
@@ -0,0 +1,259 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.util.*;
+
+public class GBFeature
+{
+	// Concept:
+	//	  IS: one feature from the FEATURES table of a Genbank-format
+	//	      sequence record
+	//	 HAS: a feature key (e.g. source, gene, CDS), a location and
+	//	      qualifiers (e.g. /db_xref, /gene)
+	//	DOES: decodes its key, location and qualifiers from the text of
+	//	      the record only when they are asked for
+	// Implementation:
+	//	Holds the record text and the offsets of the feature's lines.
+	//	Nothing is parsed when the feature is created so iterating
+	//	features of millions of records only builds the Strings a
+	//	caller actually asks for. Layout of a feature (columns from 1):
+	//	   6 - 20 = feature key on the first line
+	//	  22 - 80 = location, continued on following lines until a
+	//	            line whose column 22 starts a qualifier with '/'
+
+	//
+	// Constructors
+	//
+
+	public GBFeature(
+		String text,    // the text of the whole record
+		int start,      // offset of the first line of the feature
+		int end)        // offset just past the last line of the feature
+	{
+		// Purpose: creates a feature over lines 'start' to 'end' of
+		//          'text'
+		// Throws: nothing
+
+		this.text = text;
+		this.start = start;
+		this.end = end;
+	}
+
+	//
+	// Methods
+	//
+
+	public String getKey()
+		// Purpose: accessor for the feature key (e.g. "CDS")
+	{
+		int keyStart = this.start + KEYCOLUMN;
+		int keyEnd = keyStart;
+		while (keyEnd < this.end && this.text.charAt(keyEnd) != ' ' &&
+		       this.text.charAt(keyEnd) != '\n')
+		{
+			keyEnd++;
+		}
+		return this.text.substring(keyStart, keyEnd);
+	}
+
+	public boolean isKey(String key)
+		// Purpose: determines whether this feature has key 'key'
+		//          without building the key String
+	{
+		int keyStart = this.start + KEYCOLUMN;
+		int keyEnd = keyStart + key.length();
+		return keyEnd < this.end &&
+			this.text.regionMatches(keyStart, key, 0, key.length()) &&
+			(this.text.charAt(keyEnd) == ' ' ||
+			 this.text.charAt(keyEnd) == '\n');
+	}
+
+	public String getLocation()
+		// Purpose: accessor for the feature location
+		//          (e.g. "join(12..78,134..202)")
+		// Notes: location continuation lines are joined without
+		//        blanks
+	{
+		StringBuffer location = new StringBuffer();
+		int lineStart = this.start;
+		while (lineStart < this.end)
+		{
+			int lineEnd = lineEnd(lineStart);
+			int valueStart = lineStart + VALUECOLUMN;
+			if (valueStart >= lineEnd)
+			{
+				// blank continuation line
+			}
+			else if (lineStart != this.start &&
+				 this.text.charAt(valueStart) == '/')
+			{
+				// first qualifier, location is done
+				break;
+			}
+			else
+			{
+				location.append(this.text.substring(
+					valueStart, lineEnd).trim());
+			}
+			lineStart = lineEnd + 1;
+		}
+		return location.toString();
+	}
+
+	public String getQualifier(String name)
+		// Purpose: accessor for the first value of qualifier 'name'
+		// Returns: the value with enclosing quotes removed, "" for
+		//          qualifiers without a value (e.g. /pseudo) or null
+		//          if the feature has no such qualifier
+		// Assumes: 'name' does not include the leading '/'
+	{
+		int lineStart = findQualifier(name, this.start);
+		if (lineStart < 0)
+		{
+			return null;
+		}
+		return qualifierValue(name, lineStart);
+	}
+
+	public Vector<String> getQualifiers(String name)
+		// Purpose: accessor for all values of qualifier 'name', e.g.
+		//          every /db_xref of the feature
+		// Returns: a Vector of Strings, empty if there are none
+	{
+		Vector<String> values = new Vector<String>();
+		int lineStart = findQualifier(name, this.start);
+		while (lineStart >= 0)
+		{
+			values.add(qualifierValue(name, lineStart));
+			lineStart = findQualifier(name, lineEnd(lineStart) + 1);
+		}
+		return values;
+	}
+
+	public boolean hasQualifier(String name)
+		// Purpose: determines whether this feature has qualifier 'name'
+	{
+		return findQualifier(name, this.start) >= 0;
+	}
+
+	public String getText()
+		// Purpose: accessor for the lines of this feature
+	{
+		return this.text.substring(this.start, this.end);
+	}
+
+	private int findQualifier(String name, int from)
+		// Purpose: finds the line of qualifier 'name' at or after
+		//          offset 'from'
+		// Returns: the offset of the start of the line or -1
+	{
+		int lineStart = from;
+		while (lineStart < this.end)
+		{
+			int lineEnd = lineEnd(lineStart);
+			int nameStart = lineStart + VALUECOLUMN + 1;
+			int nameEnd = nameStart + name.length();
+			if (nameEnd <= lineEnd &&
+			    this.text.charAt(nameStart - 1) == '/' &&
+			    this.text.regionMatches(nameStart, name, 0,
+						    name.length()) &&
+			    (nameEnd == lineEnd ||
+			     this.text.charAt(nameEnd) == '='))
+			{
+				return lineStart;
+			}
+			lineStart = lineEnd + 1;
+		}
+		return -1;
+	}
+
+	private String qualifierValue(String name, int lineStart)
+		// Purpose: decodes the value of qualifier 'name' whose first
+		//          line starts at 'lineStart'
+		// Notes: quoted values may continue over several lines,
+		//        continuation lines are joined with a blank except
+		//        for /translation where they are joined directly.
+		//        A doubled quote inside a value stands for one quote
+	{
+		int lineEnd = lineEnd(lineStart);
+		int valueStart = lineStart + VALUECOLUMN + 1 + name.length();
+		if (valueStart >= lineEnd)
+		{
+			// qualifier without a value
+			return "";
+		}
+		// skip the '='
+		valueStart++;
+		if (valueStart >= lineEnd || this.text.charAt(valueStart) != '"')
+		{
+			// unquoted values (e.g. /codon_start=1) are on one line
+			return this.text.substring(valueStart, lineEnd).trim();
+		}
+
+		String separator = TRANSLATION.equals(name) ? "" : " ";
+		StringBuffer value = new StringBuffer();
+		int i = valueStart + 1;
+		while (true)
+		{
+			if (i >= lineEnd)
+			{
+				// value continues on the next line
+				lineStart = lineEnd + 1;
+				if (lineStart >= this.end)
+				{
+					break;
+				}
+				lineEnd = lineEnd(lineStart);
+				i = Math.min(lineStart + VALUECOLUMN, lineEnd);
+				value.append(separator);
+				continue;
+			}
+			char c = this.text.charAt(i);
+			if (c == '"')
+			{
+				if (i + 1 < lineEnd && this.text.charAt(i + 1) == '"')
+				{
+					value.append('"');
+					i += 2;
+					continue;
+				}
+				// closing quote
+				break;
+			}
+			value.append(c);
+			i++;
+		}
+		return value.toString();
+	}
+
+	private int lineEnd(int lineStart)
+		// Purpose: finds the end of the line starting at 'lineStart'
+		// Returns: the offset of its '\n' or "end"
+	{
+		int lineEnd = this.text.indexOf('\n', lineStart);
+		if (lineEnd < 0 || lineEnd > this.end)
+		{
+			return this.end;
+		}
+		return lineEnd;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the text of the whole record
+	private String text;
+
+	// offset in "text" of the first line of this feature
+	private int start;
+
+	// offset in "text" just past the last line of this feature
+	private int end;
+
+	// 0-based columns of the feature key and of the location/qualifiers
+	private static final int KEYCOLUMN = 5;
+	private static final int VALUECOLUMN = 21;
+
+	// qualifier whose continuation lines are joined without blanks
+	private static final String TRANSLATION = "translation";
+}
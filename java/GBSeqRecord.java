@@ -34,7 +34,9 @@ public class GBSeqRecord extends SeqRecord
         // Assumes: "reader" is a stream of Genbank-format sequence records
         // Effects: "reader" has advanced to the next record in the stream
         // Throws: IO and regular expression syntax exceptions
-        // Notes:
+        // Notes: when the query (see setQuery) rejects the record,
+        //        parsing stops and the rest of the record is read but
+        //        not kept, see isRejected
 
 		// the Accession line broken into tokens for easy access
 		// seqId's
@@ -59,15 +61,30 @@ public class GBSeqRecord extends SeqRecord
 		// FEATURES line has been reached
 		boolean flagComment = false;
 
+		// true if the current line is in the FEATURES table, false
+		// when a line that starts with a keyword has been reached
+		boolean flagFeatures = false;
+
+		// true while the feature table lines are those of the source
+		// feature, which has the taxon of the record
+		boolean flagSource = false;
+
 		// true if current line is an ORIGIN line
 		// all subsequent lines are ORIGIN lines until EOREC
 		boolean flagOrigin = false;
 
+		// offset in "text" of the start of the current line
+		int lineStart = 0;
+
 		// carriage return
                 String CRT = "\n";
 
 		// reset all instance vars for a new record
                 reset();
+		startRecord();
+
+		// times the record for JFR when the event is enabled
+		SeqRecordParseEvent event = SeqRecordParseEvent.start(reader);
 
 		// read current line in the reader stream.
                 this.line = reader.readLine();
@@ -83,7 +100,15 @@ public class GBSeqRecord extends SeqRecord
 		// a null line indicates EOF. If EOF or end of record we're done
 		while(this.line != null && !(this.line.startsWith(EOREC)))
                 {
+			if (this.rejected)
+			// skip the rest of a record the query rejected
+			{
+				this.line = reader.readLine();
+				continue;
+			}
+
 			// append line to text
+			lineStart = this.text.length();
                         this.text.append(this.line + CRT);
 
 			organismMatcher = ORGANISM.matcher(this.line);
@@ -95,6 +120,9 @@ public class GBSeqRecord extends SeqRecord
                         // indicates the next line(s) will be sequence lines
                         {
                                 flagOrigin = true;
+
+				// all fields but the sequence are known
+				parsed(RecordQuery.ALL);
                         }
 
                         else if (flagOrigin == true)
@@ -122,14 +150,19 @@ public class GBSeqRecord extends SeqRecord
 					  (this.line.substring(29, 40)).trim());
 
 				// get the sequence type
-				this.type =
-					(this.line.substring(47, 53)).trim();
+				this.type = FieldDictionary.TYPES.internTrimmed(
+					this.line, 47, 53);
 
 				// get the Genbank division code
-				this.division = this.line.substring(64, 67);
+				this.division = FieldDictionary.DIVISIONS.intern(
+					this.line, 64, 67);
 
 				// get the date
-				this.date = this.line.substring(68, 79);
+				this.date = FieldDictionary.DATES.intern(
+					this.line, 68, 79);
+
+				parsed(RecordQuery.LENGTH | RecordQuery.TYPE |
+				       RecordQuery.DIVISION | RecordQuery.DATE);
                         }
 
 			else if ((this.line.startsWith(ACCESSION)))
@@ -177,13 +210,20 @@ public class GBSeqRecord extends SeqRecord
 				// get the version id
 				this.seqIdVersion = tokenizedVersion.nextToken();
 
-				// get the genbank info id
-				this.genInfoId = tokenizedVersion.nextToken();
+				// get the genbank info id, current records
+				// no longer have one
+				if (tokenizedVersion.hasMoreTokens())
+				{
+					this.genInfoId =
+						tokenizedVersion.nextToken();
+				}
 
 				// We have found the VERSION line indicating
 				// end of ACCESSION lines for this record
 				flagAccession = false;
 
+				parsed(RecordQuery.ACCESSION | RecordQuery.VERSION);
+
 			}
 
 			else if(flagAccession == true)
@@ -200,6 +240,56 @@ public class GBSeqRecord extends SeqRecord
                                 }
 
                         }
+			else if(this.line.startsWith(FEATURES))
+ 			// When we find the FEATURES line we are at the end
+			// of the COMMENT section and at the start of the
+			// feature table
+			{
+			    flagComment = false;
+			    flagOrganism = false;
+			    flagFeatures = true;
+
+			    parsed(RecordQuery.ORGANISM |
+				   RecordQuery.CLASSIFICATION |
+				   RecordQuery.COMMENT | RecordQuery.COMMENTCLASS |
+				   RecordQuery.COMMENTCONTACT);
+			}
+			else if (flagFeatures == true)
+			// If we are in the feature table only remember where
+			//    each feature starts, and the id of the
+			//    /db_xref="taxon:" qualifier of the source feature.
+			//    A feature key starts in column 6, qualifier and
+			//    location continuation lines are blank through
+			//    column 21. Keys, locations and qualifiers are
+			//    decoded by GBFeature on demand. A line starting
+			//    with a keyword (BASE COUNT, CONTIG) ends the table
+			{
+			    if (this.line.length() == 0 ||
+				this.line.charAt(0) != ' ')
+			    {
+				flagFeatures = false;
+			    }
+			    else
+			    {
+				if (this.line.length() > 5 &&
+				    this.line.charAt(5) != ' ')
+				{
+				    addFeatureOffset(lineStart);
+				    flagSource = this.line.startsWith(SOURCEKEY, 5);
+				}
+				else if (flagSource && this.taxonId < 0)
+				{
+				    int idStart = this.line.indexOf(TAXONXREF);
+				    if (idStart > -1)
+				    {
+					this.taxonId = parseTaxonId(this.line,
+					    idStart + TAXONXREF.length());
+					parsed(RecordQuery.TAXON);
+				    }
+				}
+				this.featureEnd = this.text.length();
+			    }
+			}
 			else if(organismMatcher.find())
 			// we have found the ORGANISM line save it
                         // ORGANISM is a sub-keyword of SOURCE and indented
@@ -217,6 +307,9 @@ public class GBSeqRecord extends SeqRecord
                         // of ORGANISM lines. Set the organism flag to false
                         {
 				flagOrganism = false;
+
+				parsed(RecordQuery.ORGANISM |
+				       RecordQuery.CLASSIFICATION);
                         }
 
                         else if (flagOrganism == true)
@@ -236,13 +329,6 @@ public class GBSeqRecord extends SeqRecord
 			    this.comment.append(this.line);
 			    processCOMMENTLine(this.line);
 			}
-			else if(flagComment == true && this.line.startsWith(FEATURES)) 
- 			// When we find the FEATURES line we are at the end 
-			// of the COMMENT section	
-			{
-			    //System.out.println("Found FEATURES");
-			    flagComment = false;
-			}
 			else if (flagComment == true)
                         // If we have found the COMMENT line, but we havent
                         //    found the FEATURES line, append the line to
@@ -269,6 +355,12 @@ public class GBSeqRecord extends SeqRecord
                         this.text.append(this.line + CRT);
                 }
 
+		// a record without an ORIGIN is decided here
+		if (!this.seqIds.isEmpty())
+		{
+			parsed(RecordQuery.ALL);
+		}
+		event.finish(this);
 	}
 
 	// Process this COMMENT field line
@@ -290,12 +382,96 @@ public class GBSeqRecord extends SeqRecord
 		//System.out.println("Contact: " + this.commentContact);	
 	    }
 	}
+	public String getStartTag()
+		// Purpose: accessor for the tag that starts each record
+	{
+		return LOCUS;
+	}
+
 	// Accessor for GI Id
 	public String getGenInfoId()
         {
                 return this.genInfoId;
         }
 
+	public int getFeatureCount()
+		// Purpose: accessor for the number of features in the
+		//          FEATURES table of this record
+	{
+		return this.featureCount;
+	}
+
+	public GBFeature getFeature(int index)
+		// Purpose: accessor for feature 'index' of the FEATURES table
+		// Returns: a GBFeature which decodes its key, location and
+		//          qualifiers from the record text when asked
+		// Assumes: 0 <= 'index' < getFeatureCount()
+		// Effects: nothing
+		// Throws: IndexOutOfBoundsException if 'index' is out of range
+		// Notes: the feature is only valid until the next readText
+	{
+		if (index < 0 || index >= this.featureCount)
+		{
+			throw new IndexOutOfBoundsException(
+				"feature " + index + " of " + this.featureCount);
+		}
+
+		// the record text is copied once per record, and only when
+		// a feature is actually asked for
+		if (this.featureText == null)
+		{
+			this.featureText = this.text.toString();
+		}
+		int end = (index + 1 < this.featureCount) ?
+			this.featureOffsets[index + 1] : this.featureEnd;
+		return new GBFeature(this.featureText,
+			this.featureOffsets[index], end);
+	}
+
+	public Iterator<GBFeature> getFeatures()
+		// Purpose: iterates the features of the FEATURES table in
+		//          record order, decoding each one as it is reached
+	{
+		return new Iterator<GBFeature>()
+		{
+			public boolean hasNext()
+			{
+				return next < featureCount;
+			}
+
+			public GBFeature next()
+			{
+				if (next >= featureCount)
+				{
+					throw new NoSuchElementException();
+				}
+				return getFeature(next++);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			// index of the next feature to return
+			private int next = 0;
+		};
+	}
+
+	private void addFeatureOffset(int offset)
+		// Purpose: remembers 'offset' in "text" as the start of a
+		//          feature, growing the offset array when full
+	{
+		if (this.featureCount == this.featureOffsets.length)
+		{
+			int[] grown = new int[this.featureOffsets.length * 2];
+			System.arraycopy(this.featureOffsets, 0, grown, 0,
+				this.featureCount);
+			this.featureOffsets = grown;
+		}
+		this.featureOffsets[this.featureCount++] = offset;
+	}
+
 	private void reset()
                 // Purpose: reinitializes instance variables
         {
@@ -309,10 +485,15 @@ public class GBSeqRecord extends SeqRecord
 		this.seqIdVersion = "";
                 this.organism.setLength(0);
                 this.sequence.setLength(0);
+		this.bases = null;
 		this.genInfoId = "";
 	        this.comment.setLength(0);
 		this.commentClass = "";
 		this.commentContact = "";
+		this.featureCount = 0;
+		this.featureEnd = 0;
+		this.featureText = null;
+		this.taxonId = -1;
 
         }
 
@@ -325,6 +506,17 @@ public class GBSeqRecord extends SeqRecord
 	// of sequence id's
 	protected String genInfoId = "";
 
+	// offsets in "text" of the first line of each feature in the
+	// FEATURES table, the first "featureCount" entries are in use
+	protected int[] featureOffsets = new int[64];
+	protected int featureCount = 0;
+
+	// offset in "text" just past the last line of the FEATURES table
+	protected int featureEnd = 0;
+
+	// "text" as a String, made the first time a feature is asked for
+	private String featureText = null;
+
 	// String expressions for parsing Genbank-format records
     private static String LOCUS = "LOCUS";
     private static String ACCESSION = "ACCESSION";
@@ -334,6 +526,8 @@ public class GBSeqRecord extends SeqRecord
     private static String COMMENT = "COMMENT";
     private static String FEATURES = "FEATURE";
     private static String EOREC = "//";
+    private static String SOURCEKEY = "source ";
+    private static String TAXONXREF = "/db_xref=\"taxon:";
     private Matcher organismMatcher = null;
     private Matcher classMatcher = null;
     private Matcher contactMatcher = null;
@@ -0,0 +1,159 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class KmerIndex
+{
+	// Concept:
+	//	  IS: a k-mer to record id index written by KmerIndexBuilder
+	//	 HAS: a memory-mapped index file
+	//	DOES: Given a k-mer, finds the ids of the records whose sequence
+	//	      contains it or its reverse complement
+	// Implementation:
+	//	Each shard of the file is mapped on its own, so the file may be
+	//	larger than 2GB as long as each shard is smaller. Lookups are a
+	//	binary search in the shard of the k-mer and read only the pages
+	//	they touch. See KmerIndexBuilder for the file layout.
+
+	//
+	// Constructors
+	//
+
+	public KmerIndex(String file)
+		throws IOException
+	{
+		// Purpose: opens and maps the index in 'file'
+		// Throws: IOException if the file can't be mapped or is not a
+		//         k-mer index
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer header = channel.map(
+				FileChannel.MapMode.READ_ONLY, 0,
+				KmerIndexBuilder.HEADERSIZE);
+			if (header.getLong(0) != KmerIndexBuilder.MAGIC)
+			{
+				throw new IOException(file + " is not a k-mer index");
+			}
+			this.k = header.getInt(8);
+			int shardCount = header.getInt(12);
+			this.shardBits = Integer.numberOfTrailingZeros(shardCount);
+
+			MappedByteBuffer table = channel.map(
+				FileChannel.MapMode.READ_ONLY,
+				KmerIndexBuilder.HEADERSIZE, 16L * shardCount);
+			this.kmers = new LongBuffer[shardCount];
+			this.ids = new IntBuffer[shardCount];
+			for (int i = 0; i < shardCount; i++)
+			{
+				long offset = table.getLong(16 * i);
+				long size = table.getLong(16 * i + 8);
+				if (12L * size > Integer.MAX_VALUE)
+				{
+					throw new IOException(file + " shard " + i +
+						" is too large to map, use more shards");
+				}
+				MappedByteBuffer shard = channel.map(
+					FileChannel.MapMode.READ_ONLY, offset, 12L * size);
+				shard.limit((int)(8 * size));
+				this.kmers[i] = shard.slice().asLongBuffer();
+				shard.limit((int)(12 * size));
+				shard.position((int)(8 * size));
+				this.ids[i] = shard.slice().asIntBuffer();
+			}
+		}
+		finally
+		{
+			// mappings stay valid after the file is closed
+			raf.close();
+		}
+	}
+
+	//
+	// Methods
+	//
+
+	public int[] lookup(CharSequence kmer)
+	{
+		// Purpose: finds the records containing 'kmer'
+		// Returns: the record ids in increasing order, none if 'kmer'
+		//          is not k bases of ACGT
+		// Throws: nothing
+
+		if (kmer.length() != this.k)
+		{
+			return new int[0];
+		}
+		long encoded = KmerIndexBuilder.encode(kmer);
+		if (encoded < 0)
+		{
+			return new int[0];
+		}
+		return lookup(encoded);
+	}
+
+	public int[] lookup(long kmer)
+	{
+		// Purpose: finds the records containing encoded k-mer 'kmer'
+		// Returns: the record ids in increasing order
+		// Assumes: 'kmer' is canonical, as KmerIndexBuilder.encode
+		// Throws: nothing
+
+		int shard = KmerIndexBuilder.shardOf(kmer, this.shardBits);
+		LongBuffer shardKmers = this.kmers[shard];
+
+		// find the first entry for 'kmer'
+		int low = 0;
+		int high = shardKmers.limit();
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (shardKmers.get(middle) < kmer)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		int end = low;
+		while (end < shardKmers.limit() && shardKmers.get(end) == kmer)
+		{
+			end++;
+		}
+
+		int[] found = new int[end - low];
+		for (int i = 0; i < found.length; i++)
+		{
+			found[i] = this.ids[shard].get(low + i);
+		}
+		return found;
+	}
+
+	public int getK()
+		// Purpose: accessor for the k-mer length of the index
+	{
+		return this.k;
+	}
+
+	//
+	//instance vars
+	//
+
+	// k-mer length
+	private int k;
+
+	// log2 of the number of shards
+	private int shardBits;
+
+	// sorted k-mers and their record ids, per shard
+	private LongBuffer[] kmers;
+	private IntBuffer[] ids;
+}
@@ -0,0 +1,477 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+public class KmerIndexBuilder
+{
+	// Concept:
+	//	  IS: an object that builds a k-mer index over the sequences of
+	//	      sequence records as they are read
+	//	 HAS: a k-mer length, a set of shards of (k-mer, record id)
+	//	      entries and a pool of threads
+	//	DOES: Given a sequence record and its record id, adds every
+	//	      canonical k-mer of its sequence to the index. Writes the
+	//	      index as a file that KmerIndex memory-maps
+	// Implementation:
+	//	k-mers are encoded 2 bits per base (A=0 C=1 G=2 T=3) into a
+	//	long with a rolling window, so k is at most 31. The canonical
+	//	k-mer is the smaller of the k-mer and its reverse complement.
+	//	Windows are restarted at any base that is not ACGT.
+	//	Each record is hashed on a pool thread which splits its k-mers
+	//	by hash into the shards, appending to each shard's primitive
+	//	long and int arrays under the shard's lock. write() sorts and
+	//	deduplicates the shards in parallel. The file holds:
+	//	    magic, k, shard count
+	//	    per shard: byte offset and entry count
+	//	    per shard: the sorted k-mers (longs), then their ids (ints)
+	//	so a lookup is a binary search within one shard.
+	//	Typical use:
+	//	    KmerIndexBuilder builder = new KmerIndexBuilder(21, 64, 8);
+	//	    while (...) {
+	//	        record.readText(reader);
+	//	        builder.add(record, recordId++);
+	//	    }
+	//	    builder.write("transcripts.kmer");
+
+	//
+	// Constructors
+	//
+
+	public KmerIndexBuilder(
+		int k,            // k-mer length, 1 to 31
+		int shardCount,   // number of shards, a power of two
+		int threads)      // number of hashing and sorting threads
+	{
+		// Purpose: creates an empty builder
+		// Throws: IllegalArgumentException if 'k' or 'shardCount' are
+		//         out of range
+
+		if (k < 1 || k > MAXK)
+		{
+			throw new IllegalArgumentException("k must be 1 to " + MAXK);
+		}
+		if (shardCount < 1 || Integer.bitCount(shardCount) != 1)
+		{
+			throw new IllegalArgumentException(
+				"shard count must be a power of two");
+		}
+		this.k = k;
+		this.shardBits = Integer.numberOfTrailingZeros(shardCount);
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++)
+		{
+			this.shards[i] = new Shard();
+		}
+		this.threads = threads;
+		this.pool = Executors.newFixedThreadPool(threads);
+		this.inFlight = new Semaphore(threads * 4);
+	}
+
+	//
+	// Methods
+	//
+
+	public void add(SeqRecord record, int recordId)
+		throws IOException
+	{
+		// Purpose: adds the k-mers of the sequence of 'record'
+		// Returns: nothing
+		// Effects: the k-mers are hashed on a pool thread, this waits
+		//          when the pool is too far behind the reader
+		// Throws: IOException if an earlier record failed
+
+		add(recordId, record.getBases());
+	}
+
+	public void add(final int recordId, final String bases)
+		throws IOException
+	{
+		// Purpose: adds the k-mers of normalized sequence 'bases'
+		// Returns: nothing
+		// Throws: IOException if an earlier record failed
+
+		checkFailure();
+		this.inFlight.acquireUninterruptibly();
+		this.pool.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					addKmers(recordId, bases);
+				}
+				catch (Throwable t)
+				{
+					failure = t;
+				}
+				finally
+				{
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	public void write(String file)
+		throws IOException
+	{
+		// Purpose: writes the index to 'file'
+		// Returns: nothing
+		// Effects: waits for all records to be added and shuts the
+		//          pool down, the builder can't be added to afterwards
+		// Throws: IOException if the file can't be written
+
+		this.pool.shutdown();
+		try
+		{
+			this.pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException(e.toString());
+		}
+		checkFailure();
+
+		// sort and deduplicate the shards in parallel
+		ExecutorService sorters = Executors.newFixedThreadPool(this.threads);
+		try
+		{
+			Future<?>[] sorted = new Future<?>[this.shards.length];
+			for (int i = 0; i < this.shards.length; i++)
+			{
+				final Shard shard = this.shards[i];
+				sorted[i] = sorters.submit(new Runnable()
+				{
+					public void run()
+					{
+						shard.sort();
+					}
+				});
+			}
+			for (int i = 0; i < sorted.length; i++)
+			{
+				sorted[i].get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException(e.toString());
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("sorting k-mers failed", e.getCause());
+		}
+		finally
+		{
+			sorters.shutdown();
+		}
+
+		DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try
+		{
+			out.writeLong(MAGIC);
+			out.writeInt(this.k);
+			out.writeInt(this.shards.length);
+			long offset = HEADERSIZE + 16L * this.shards.length;
+			for (int i = 0; i < this.shards.length; i++)
+			{
+				out.writeLong(offset);
+				out.writeLong(this.shards[i].size);
+				offset += 12L * this.shards[i].size;
+			}
+			for (int i = 0; i < this.shards.length; i++)
+			{
+				Shard shard = this.shards[i];
+				for (int j = 0; j < shard.size; j++)
+				{
+					out.writeLong(shard.kmers[j]);
+				}
+				for (int j = 0; j < shard.size; j++)
+				{
+					out.writeInt(shard.ids[j]);
+				}
+				// free the shard as soon as it is written
+				this.shards[i] = new Shard();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public int getK()
+		// Purpose: accessor for the k-mer length
+	{
+		return this.k;
+	}
+
+	public static long encode(CharSequence kmer)
+		// Purpose: encodes 'kmer' as its canonical 2 bit k-mer
+		// Returns: the encoded k-mer, or -1 if it has a base that is
+		//          not ACGT or is longer than 31 bases
+	{
+		int k = kmer.length();
+		if (k > MAXK)
+		{
+			return -1L;
+		}
+		long forward = 0L;
+		long reverse = 0L;
+		for (int i = 0; i < k; i++)
+		{
+			int code = code(kmer.charAt(i));
+			if (code < 0)
+			{
+				return -1L;
+			}
+			forward = (forward << 2) | code;
+			reverse |= (long)(3 - code) << (2 * i);
+		}
+		return Math.min(forward, reverse);
+	}
+
+	static int shardOf(long kmer, int shardBits)
+		// Purpose: finds the shard of canonical 'kmer'
+	{
+		if (shardBits == 0)
+		{
+			return 0;
+		}
+		long h = kmer;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int)(h >>> (64 - shardBits));
+	}
+
+	private void addKmers(int recordId, String bases)
+	{
+		// Purpose: adds the canonical k-mers of 'bases' to the shards
+		// Notes: runs on a pool thread
+
+		int shardCount = this.shards.length;
+		long[][] kmers = new long[shardCount][];
+		int[] counts = new int[shardCount];
+		long mask = (1L << (2 * this.k)) - 1;
+		int shift = 2 * (this.k - 1);
+
+		long forward = 0L;
+		long reverse = 0L;
+		int filled = 0;
+		for (int i = 0; i < bases.length(); i++)
+		{
+			int code = code(bases.charAt(i));
+			if (code < 0)
+			{
+				// restart the window after an ambiguous base
+				filled = 0;
+				forward = 0L;
+				reverse = 0L;
+				continue;
+			}
+			forward = ((forward << 2) | code) & mask;
+			reverse = (reverse >>> 2) | ((long)(3 - code) << shift);
+			if (++filled < this.k)
+			{
+				continue;
+			}
+			long kmer = Math.min(forward, reverse);
+			int shard = shardOf(kmer, this.shardBits);
+			if (kmers[shard] == null)
+			{
+				kmers[shard] = new long[16];
+			}
+			else if (counts[shard] == kmers[shard].length)
+			{
+				long[] grown = new long[counts[shard] * 2];
+				System.arraycopy(kmers[shard], 0, grown, 0,
+						 counts[shard]);
+				kmers[shard] = grown;
+			}
+			kmers[shard][counts[shard]++] = kmer;
+		}
+
+		for (int shard = 0; shard < shardCount; shard++)
+		{
+			if (counts[shard] > 0)
+			{
+				this.shards[shard].append(kmers[shard], counts[shard],
+							  recordId);
+			}
+		}
+	}
+
+	private void checkFailure()
+		throws IOException
+	{
+		if (this.failure != null)
+		{
+			throw new IOException("adding k-mers failed", this.failure);
+		}
+	}
+
+	private static int code(char base)
+		// Purpose: 2 bit code of 'base', -1 if it is not ACGT
+	{
+		switch (base)
+		{
+			case 'A': case 'a': return 0;
+			case 'C': case 'c': return 1;
+			case 'G': case 'g': return 2;
+			case 'T': case 't': return 3;
+			default: return -1;
+		}
+	}
+
+	private static class Shard
+	{
+		// Concept:
+		//	  IS: the (k-mer, record id) entries of one shard
+		//	 HAS: parallel primitive arrays of k-mers and ids
+		//	DOES: appends entries under its lock, sorts them by
+		//	      k-mer then id and removes duplicates
+
+		synchronized void append(long[] newKmers, int count, int id)
+		{
+			if (this.size + count > this.kmers.length)
+			{
+				int capacity = Math.max(this.size + count,
+					this.kmers.length + (this.kmers.length >> 1));
+				long[] grownKmers = new long[capacity];
+				int[] grownIds = new int[capacity];
+				System.arraycopy(this.kmers, 0, grownKmers, 0, this.size);
+				System.arraycopy(this.ids, 0, grownIds, 0, this.size);
+				this.kmers = grownKmers;
+				this.ids = grownIds;
+			}
+			System.arraycopy(newKmers, 0, this.kmers, this.size, count);
+			for (int i = 0; i < count; i++)
+			{
+				this.ids[this.size + i] = id;
+			}
+			this.size += count;
+		}
+
+		synchronized void sort()
+		{
+			quickSort(0, this.size - 1);
+
+			// remove repeated (k-mer, id) entries
+			int kept = 0;
+			for (int i = 0; i < this.size; i++)
+			{
+				if (kept == 0 || this.kmers[i] != this.kmers[kept - 1] ||
+				    this.ids[i] != this.ids[kept - 1])
+				{
+					this.kmers[kept] = this.kmers[i];
+					this.ids[kept] = this.ids[i];
+					kept++;
+				}
+			}
+			this.size = kept;
+		}
+
+		private void quickSort(int low, int high)
+		{
+			while (high - low > 16)
+			{
+				// median of three pivot
+				int middle = (low + high) >>> 1;
+				if (less(middle, low)) swap(middle, low);
+				if (less(high, low)) swap(high, low);
+				if (less(high, middle)) swap(high, middle);
+				long pivotKmer = this.kmers[middle];
+				int pivotId = this.ids[middle];
+
+				int i = low;
+				int j = high;
+				while (i <= j)
+				{
+					while (compare(i, pivotKmer, pivotId) < 0) i++;
+					while (compare(j, pivotKmer, pivotId) > 0) j--;
+					if (i <= j)
+					{
+						swap(i++, j--);
+					}
+				}
+				// recurse into the smaller part, loop on the larger
+				if (j - low < high - i)
+				{
+					quickSort(low, j);
+					low = i;
+				}
+				else
+				{
+					quickSort(i, high);
+					high = j;
+				}
+			}
+
+			// insertion sort small ranges
+			for (int i = low + 1; i <= high; i++)
+			{
+				for (int j = i; j > low && less(j, j - 1); j--)
+				{
+					swap(j, j - 1);
+				}
+			}
+		}
+
+		private int compare(int i, long kmer, int id)
+		{
+			if (this.kmers[i] != kmer)
+			{
+				return this.kmers[i] < kmer ? -1 : 1;
+			}
+			return this.ids[i] < id ? -1 : (this.ids[i] == id ? 0 : 1);
+		}
+
+		private boolean less(int i, int j)
+		{
+			return compare(i, this.kmers[j], this.ids[j]) < 0;
+		}
+
+		private void swap(int i, int j)
+		{
+			long kmer = this.kmers[i];
+			this.kmers[i] = this.kmers[j];
+			this.kmers[j] = kmer;
+			int id = this.ids[i];
+			this.ids[i] = this.ids[j];
+			this.ids[j] = id;
+		}
+
+		long[] kmers = new long[1024];
+		int[] ids = new int[1024];
+		int size = 0;
+	}
+
+	//
+	//instance vars
+	//
+
+	// k-mer length
+	private int k;
+
+	// the shards, log2 of their number
+	private Shard[] shards;
+	private int shardBits;
+
+	// hashing threads, and a bound on records waiting for them
+	private int threads;
+	private ExecutorService pool;
+	private Semaphore inFlight;
+
+	// the first exception thrown by a hashing thread
+	private volatile Throwable failure = null;
+
+	// file layout, shared with KmerIndex
+	static final long MAGIC = 0x4b4d455249445831L;  // KMERIDX1
+	static final int HEADERSIZE = 16;
+	static final int MAXK = 31;
+}
@@ -0,0 +1,164 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.*;
+
+public class LenientRecordReader
+{
+	// Concept:
+	//	  IS: an object that reads sequence records from a file and
+	//	      survives records the parser can't handle
+	//	 HAS: a PositionedReader, an optional quarantine stream, and
+	//	      the parse errors seen so far
+	//	DOES: reads the next record with the record's own readText. In
+	//	      lenient mode a record that makes readText throw is
+	//	      copied byte for byte to the quarantine stream, its error
+	//	      is kept with its byte range and reading starts again at
+	//	      the next record. In strict mode the error is thrown as a
+	//	      SeqRecordParseException giving the byte range
+	// Implementation:
+	//	The normal path is a plain call to readText inside a try block
+	//	so good records cost nothing extra. After an error the reader
+	//	skips lines until one starts with the record's start tag and
+	//	moves back to the start of that line. Only the first
+	//	MAXERRORS errors are kept, all are counted.
+	//	Typical use:
+	//	    LenientRecordReader reader = new LenientRecordReader(
+	//	        new PositionedReader("gbpri1.seq"), true, quarantine);
+	//	    GBSeqRecord record = new GBSeqRecord();
+	//	    while (true) {
+	//	        reader.readText(record);
+	//	        if (record.getLine() == null) break;
+	//	        ...
+	//	    }
+
+	//
+	// Constructors
+	//
+
+	public LenientRecordReader(
+		PositionedReader reader,   // the file to read
+		boolean lenient,           // false to throw on the first error
+		OutputStream quarantine)   // where damaged records are copied,
+					   // may be null
+	{
+		// Purpose: creates a LenientRecordReader over 'reader'
+		// Throws: nothing
+
+		this.reader = reader;
+		this.lenient = lenient;
+		this.quarantine = quarantine;
+	}
+
+	//
+	// Methods
+	//
+
+	public void readText(SeqRecord record)
+		throws IOException
+	{
+		// Purpose: reads the next record that can be parsed into
+		//          'record'
+		// Returns: nothing
+		// Assumes: the reader is at a record boundary
+		// Effects: the reader has advanced past the record and any
+		//          damaged records before it
+		// Throws: IOException, SeqRecordParseException in strict mode
+		// Notes: a record the query of 'record' rejects is returned
+		//        like any other, see SeqRecord.isRejected
+
+		while (true)
+		{
+			long start = this.reader.getPosition();
+			try
+			{
+				record.readText(this.reader);
+				return;
+			}
+			catch (RuntimeException e)
+			{
+				long end = this.reader.skipTo(record.getStartTag());
+				SeqRecordParseException error =
+					new SeqRecordParseException(
+						this.reader.getFile(), start, end, e);
+				if (!this.lenient)
+				{
+					throw error;
+				}
+				quarantine(error);
+			}
+		}
+	}
+
+	public boolean isLenient()
+		// Purpose: accessor for the lenient mode
+	{
+		return this.lenient;
+	}
+
+	public void setLenient(boolean lenient)
+		// Purpose: turns lenient mode on or off
+	{
+		this.lenient = lenient;
+	}
+
+	public long getErrorCount()
+		// Purpose: accessor for the number of damaged records skipped
+	{
+		return this.errorCount;
+	}
+
+	public Vector<SeqRecordParseException> getErrors()
+		// Purpose: accessor for the errors of the first MAXERRORS
+		//          damaged records skipped
+	{
+		return this.errors;
+	}
+
+	public PositionedReader getReader()
+		// Purpose: accessor for the underlying reader
+	{
+		return this.reader;
+	}
+
+	private void quarantine(SeqRecordParseException error)
+		throws IOException
+	{
+		// Purpose: keeps 'error' and copies its record to the
+		//          quarantine stream
+		// Returns: nothing
+		// Throws: IOException if the quarantine stream can't be
+		//         written
+
+		this.errorCount++;
+		if (this.errors.size() < MAXERRORS)
+		{
+			this.errors.add(error);
+		}
+		if (this.quarantine != null)
+		{
+			this.reader.transferTo(error.getStart(), error.getEnd(),
+				this.quarantine);
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	// the file being read
+	private PositionedReader reader;
+
+	// true to skip damaged records, false to throw
+	private boolean lenient;
+
+	// where damaged records are copied, null to discard them
+	private OutputStream quarantine;
+
+	// errors seen so far, only the first MAXERRORS are kept
+	private Vector<SeqRecordParseException> errors =
+		new Vector<SeqRecordParseException>();
+	private long errorCount = 0;
+
+	private static final int MAXERRORS = 1000;
+}
@@ -0,0 +1,229 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+public class LoadTest
+{
+	// Concept:
+	//	  IS: a load test driver for the record parsers
+	//	 HAS: a format, the files to parse and a number of passes
+	//	DOES: parses every record of the files with the record class of
+	//	      the format, through LenientRecordReader so malformed
+	//	      records are counted rather than fatal, and reports
+	//	      throughput, per record latency percentiles and garbage
+	//	      collection for each pass
+	// Implementation:
+	//	Latencies are kept in a log-linear histogram (LATENCYBITS
+	//	sub-buckets per power of two, so within about 3%) instead of
+	//	a list, so memory is fixed whether the corpus is a few MB or
+	//	hundreds of GB. GC counts and times are the differences of the
+	//	GarbageCollectorMXBeans over the pass. Use CorpusGenerator for
+	//	the input.
+	//	Command line use:
+	//	    LoadTest <format> <passes> <file>...
+
+	//
+	// Constructors
+	//
+
+	public LoadTest(String format)
+	{
+		// Purpose: creates a load test of 'format' records
+		// Throws: IllegalArgumentException if 'format' is not known
+
+		SeqRecordFactory.create(format);
+		this.format = format;
+	}
+
+	//
+	// Methods
+	//
+
+	public void run(Vector<String> files, PrintStream report)
+		throws IOException
+	{
+		// Purpose: parses 'files' once
+		// Returns: nothing
+		// Effects: prints the totals of all 'files' to 'report':
+		//          records, throughput, latency percentiles and GC
+		// Throws: IOException if a file can't be read
+
+		long[] histogram = new long[BUCKETS];
+		long records = 0;
+		long errors = 0;
+		long bytes = 0;
+		long[] gcBefore = gcTotals();
+		long started = System.nanoTime();
+
+		for (int i = 0; i < files.size(); i++)
+		{
+			SeqRecord record = SeqRecordFactory.create(this.format);
+			PositionedReader in = new ReadAheadReader(files.get(i));
+			LenientRecordReader reader = new LenientRecordReader(in, true,
+									     null);
+			try
+			{
+				while (true)
+				{
+					long start = System.nanoTime();
+					reader.readText(record);
+					if (record.getSeqIds().isEmpty())
+					{
+						break;
+					}
+					// count the sequence as parsed
+					record.getBases();
+					histogram[bucket(System.nanoTime() - start)]++;
+					records++;
+					if (record.getLine() == null)
+					{
+						break;
+					}
+				}
+				bytes += in.getPosition();
+				errors += reader.getErrorCount();
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		long elapsed = Math.max(1, System.nanoTime() - started);
+		long[] gcAfter = gcTotals();
+		Runtime runtime = Runtime.getRuntime();
+		report.println(this.format + ": " + records + " records, " +
+			errors + " malformed, " + bytes + " bytes in " +
+			(elapsed / 1000000) + " ms");
+		report.println("  throughput " +
+			format(bytes * 1000.0 / elapsed) + " MB/s, " +
+			format(records * 1e9 / elapsed) + " records/s");
+		report.println("  latency us  p50 " +
+			format(percentile(histogram, records, 0.50) / 1000.0) +
+			"  p90 " + format(percentile(histogram, records, 0.90) / 1000.0) +
+			"  p99 " + format(percentile(histogram, records, 0.99) / 1000.0) +
+			"  p99.9 " +
+			format(percentile(histogram, records, 0.999) / 1000.0) +
+			"  max " + format(percentile(histogram, records, 1.0) / 1000.0));
+		report.println("  gc " + (gcAfter[0] - gcBefore[0]) +
+			" collections, " + (gcAfter[1] - gcBefore[1]) + " ms (" +
+			format(100.0 * (gcAfter[1] - gcBefore[1]) * 1000000 / elapsed) +
+			"%), heap used " +
+			((runtime.totalMemory() - runtime.freeMemory()) >> 20) +
+			" MB of " + (runtime.maxMemory() >> 20) + " MB");
+	}
+
+	static int bucket(long nanos)
+	{
+		// Purpose: finds the histogram bucket of 'nanos'
+		// Returns: values below 2^LATENCYBITS have a bucket each, above
+		//          that each power of two has 2^LATENCYBITS buckets
+
+		if (nanos < (1L << LATENCYBITS))
+		{
+			return (int)Math.max(0, nanos);
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+		int shift = magnitude - LATENCYBITS;
+		int sub = (int)(nanos >>> shift) & ((1 << LATENCYBITS) - 1);
+		return Math.min(BUCKETS - 1,
+			((shift + 1) << LATENCYBITS) + sub);
+	}
+
+	static long bucketValue(int bucket)
+	{
+		// Purpose: finds the largest value in 'bucket'
+
+		if (bucket < (1 << LATENCYBITS))
+		{
+			return bucket;
+		}
+		int shift = (bucket >>> LATENCYBITS) - 1;
+		long sub = bucket & ((1 << LATENCYBITS) - 1);
+		return (((1L << LATENCYBITS) | sub) << shift) +
+			(1L << shift) - 1;
+	}
+
+	static long percentile(long[] histogram, long count, double fraction)
+	{
+		// Purpose: finds the value below which 'fraction' of the
+		//          'count' values in 'histogram' lie
+
+		long rank = Math.max(1, (long)Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < histogram.length; i++)
+		{
+			seen += histogram[i];
+			if (seen >= rank)
+			{
+				return bucketValue(i);
+			}
+		}
+		return 0;
+	}
+
+	private static long[] gcTotals()
+	{
+		// Purpose: sums the collection counts and times of all
+		//          collectors
+		// Returns: { count, milliseconds }
+
+		long[] totals = new long[2];
+		Iterator<GarbageCollectorMXBean> collectors =
+			ManagementFactory.getGarbageCollectorMXBeans().iterator();
+		while (collectors.hasNext())
+		{
+			GarbageCollectorMXBean collector = collectors.next();
+			totals[0] += Math.max(0, collector.getCollectionCount());
+			totals[1] += Math.max(0, collector.getCollectionTime());
+		}
+		return totals;
+	}
+
+	private static String format(double value)
+	{
+		return String.format("%.1f", value);
+	}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		// Purpose: runs the load test from the command line, see Concept
+
+		if (args.length < 3)
+		{
+			System.err.println("usage: LoadTest <format> <passes> <file>...");
+			System.exit(1);
+		}
+		LoadTest test = new LoadTest(args[0]);
+		Vector<String> files = new Vector<String>();
+		for (int i = 2; i < args.length; i++)
+		{
+			files.add(args[i]);
+		}
+		int passes = Integer.parseInt(args[1]);
+		for (int pass = 1; pass <= passes; pass++)
+		{
+			System.out.println("pass " + pass);
+			test.run(files, System.out);
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	private String format;
+
+	//
+	// class vars
+	//
+
+	// sub-buckets per power of two in the latency histogram
+	private static final int LATENCYBITS = 5;
+
+	// enough buckets for latencies up to about 2^40 ns (18 minutes)
+	private static final int BUCKETS = (40 - LATENCYBITS + 1) << LATENCYBITS;
+}
@@ -0,0 +1,422 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class PositionedReader extends BufferedReader
+{
+	// Concept:
+	//	  IS: a BufferedReader over a flat file which knows the byte
+	//	      offset in the file of the next character it will return
+	//	 HAS: an open file, a byte buffer and the file offset of the
+	//	      start of the buffer
+	//	DOES: reads lines and characters like BufferedReader so it can
+	//	      be handed to any SeqRecord readText method. Provides the
+	//	      current byte offset and seeks to any offset so a reader
+	//	      can be started at a record boundary
+	// Implementation:
+	//	Bytes are decoded as ISO-8859-1, one char per byte, so char
+	//	counts and byte offsets agree. Flat file formats are ASCII.
+	//	Lines end at '\n', '\r' or "\r\n" as for BufferedReader.
+	//	mark/reset work whatever the read ahead limit because the file
+	//	can always be re-read from the marked offset.
+
+	//
+	// Constructors
+	//
+
+	public PositionedReader(String file)
+		throws IOException
+	{
+		// Purpose: creates a reader at the start of 'file'
+		// Throws: IOException if 'file' can't be opened
+
+		this(file, 0L);
+	}
+
+	public PositionedReader(String file, long position)
+		throws IOException
+	{
+		// Purpose: creates a reader at byte offset 'position' of 'file'
+		// Throws: IOException if 'file' can't be opened
+
+		this(file, position, DEFAULTBUFFERSIZE);
+	}
+
+	public PositionedReader(String file, long position, int bufferSize)
+		throws IOException
+	{
+		// Purpose: creates a reader at byte offset 'position' of 'file'
+		//          reading 'bufferSize' bytes at a time
+		// Throws: IOException if 'file' can't be opened
+
+		// BufferedReader insists on a Reader, all reading is done here
+		super(new StringReader(""), 1);
+		this.file = file;
+		this.channel = new RandomAccessFile(file, "r").getChannel();
+		this.buffer = new byte[bufferSize];
+		this.bufferStart = position;
+	}
+
+	//
+	// Methods
+	//
+
+	public String getFile()
+		// Purpose: accessor for the path of the file being read
+	{
+		return this.file;
+	}
+
+	public long getPosition()
+		// Purpose: accessor for the byte offset of the next character
+		//          that will be read
+	{
+		return this.bufferStart + this.bufferPos;
+	}
+
+	public long length()
+		throws IOException
+	{
+		// Purpose: accessor for the length of the file in bytes
+
+		ensureOpen();
+		return this.channel.size();
+	}
+
+	public void seek(long position)
+		throws IOException
+	{
+		// Purpose: moves the reader to byte offset 'position'
+		// Returns: nothing
+		// Effects: the next read starts at 'position'
+		// Throws: IOException if the reader is closed
+
+		ensureOpen();
+		if (position >= this.bufferStart &&
+		    position <= this.bufferStart + this.bufferLimit)
+		{
+			this.bufferPos = (int)(position - this.bufferStart);
+		}
+		else
+		{
+			this.bufferStart = position;
+			this.bufferPos = 0;
+			this.bufferLimit = 0;
+		}
+		this.skipLF = false;
+	}
+
+	public String readLine()
+		throws IOException
+	{
+		// Purpose: reads a line of text
+		// Returns: the line without its terminator or null at EOF
+		// Throws: IOException
+
+		ensureOpen();
+		if (this.skipLF)
+		{
+			this.skipLF = false;
+			if (this.bufferPos < this.bufferLimit || fill())
+			{
+				if (this.buffer[this.bufferPos] == '\n')
+				{
+					this.bufferPos++;
+				}
+			}
+		}
+
+		StringBuffer longLine = null;
+		while (true)
+		{
+			if (this.bufferPos >= this.bufferLimit && !fill())
+			{
+				// EOF, return what we have of the last line
+				if (longLine == null || longLine.length() == 0)
+				{
+					return null;
+				}
+				return longLine.toString();
+			}
+
+			int start = this.bufferPos;
+			int i = start;
+			while (i < this.bufferLimit &&
+			       this.buffer[i] != '\n' && this.buffer[i] != '\r')
+			{
+				i++;
+			}
+
+			if (i < this.bufferLimit)
+			{
+				// found the end of the line
+				this.bufferPos = i + 1;
+				if (this.buffer[i] == '\r')
+				{
+					if (this.bufferPos < this.bufferLimit)
+					{
+						if (this.buffer[this.bufferPos] == '\n')
+						{
+							this.bufferPos++;
+						}
+					}
+					else
+					{
+						// the '\n' may be in the next block
+						this.skipLF = true;
+					}
+				}
+				if (longLine == null)
+				{
+					return new String(this.buffer, start,
+						i - start, StandardCharsets.ISO_8859_1);
+				}
+				appendBytes(longLine, start, i);
+				return longLine.toString();
+			}
+
+			// the line continues past the buffer
+			if (longLine == null)
+			{
+				longLine = new StringBuffer(2 * (i - start));
+			}
+			appendBytes(longLine, start, i);
+			this.bufferPos = i;
+		}
+	}
+
+	public int read()
+		throws IOException
+	{
+		// Purpose: reads a single character
+		// Returns: the character or -1 at EOF
+		// Throws: IOException
+
+		ensureOpen();
+		this.skipLF = false;
+		if (this.bufferPos >= this.bufferLimit && !fill())
+		{
+			return -1;
+		}
+		return this.buffer[this.bufferPos++] & 0xff;
+	}
+
+	public int read(char[] chars, int offset, int length)
+		throws IOException
+	{
+		// Purpose: reads up to 'length' characters into 'chars'
+		// Returns: the number of characters read or -1 at EOF
+		// Throws: IOException
+
+		ensureOpen();
+		this.skipLF = false;
+		if (length == 0)
+		{
+			return 0;
+		}
+		if (this.bufferPos >= this.bufferLimit && !fill())
+		{
+			return -1;
+		}
+		int count = Math.min(length, this.bufferLimit - this.bufferPos);
+		for (int i = 0; i < count; i++)
+		{
+			chars[offset + i] = (char)(this.buffer[this.bufferPos++] & 0xff);
+		}
+		return count;
+	}
+
+	public long skip(long count)
+		throws IOException
+	{
+		// Purpose: skips 'count' characters
+		// Returns: the number skipped, less than 'count' only at EOF
+
+		ensureOpen();
+		long position = getPosition();
+		long skipped = Math.max(0L, Math.min(count,
+			this.channel.size() - position));
+		seek(position + skipped);
+		return skipped;
+	}
+
+	public boolean ready()
+		throws IOException
+	{
+		// Purpose: determines whether a read will not block
+		// Returns: true unless at EOF
+
+		ensureOpen();
+		return this.bufferPos < this.bufferLimit ||
+			getPosition() < this.channel.size();
+	}
+
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	public void mark(int readAheadLimit)
+		throws IOException
+	{
+		// Purpose: marks the current position, 'readAheadLimit' is
+		//          ignored as any position can be returned to
+
+		ensureOpen();
+		this.markPosition = getPosition();
+		this.markSkipLF = this.skipLF;
+	}
+
+	public void reset()
+		throws IOException
+	{
+		// Purpose: returns to the marked position
+		// Throws: IOException if the reader was never marked
+
+		if (this.markPosition < 0)
+		{
+			throw new IOException("Stream not marked");
+		}
+		seek(this.markPosition);
+		this.skipLF = this.markSkipLF;
+	}
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: closes the file
+		// Effects: further reads throw IOException
+
+		if (this.channel != null)
+		{
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+	public long skipTo(String startTag)
+		throws IOException
+	{
+		// Purpose: moves the reader to the start of the next line that
+		//          starts with 'startTag'
+		// Returns: the offset of that line, or of EOF if there is none
+		// Effects: the next readLine returns that line
+		// Throws: IOException
+		// Notes: used to find the start of the next record
+
+		while (true)
+		{
+			long lineStart = getPosition();
+			boolean lineSkipLF = this.skipLF;
+			String line = readLine();
+			if (line == null)
+			{
+				return getPosition();
+			}
+			if (line.startsWith(startTag))
+			{
+				seek(lineStart);
+				this.skipLF = lineSkipLF;
+				return lineStart;
+			}
+		}
+	}
+
+	public void transferTo(long start, long end, OutputStream out)
+		throws IOException
+	{
+		// Purpose: copies bytes 'start' to 'end' of the file to 'out'
+		// Returns: nothing
+		// Effects: the position of the reader is unchanged
+		// Throws: IOException
+
+		ensureOpen();
+		WritableByteChannel target = Channels.newChannel(out);
+		long position = start;
+		while (position < end)
+		{
+			long count = this.channel.transferTo(position,
+				end - position, target);
+			if (count <= 0)
+			{
+				break;
+			}
+			position += count;
+		}
+	}
+
+	protected boolean fill()
+		throws IOException
+	{
+		// Purpose: reads the next block of the file into the buffer
+		// Returns: false at EOF
+		// Effects: the buffer starts at the current position
+
+		this.bufferStart += this.bufferPos;
+		this.bufferPos = 0;
+		this.bufferLimit = 0;
+		ByteBuffer block = ByteBuffer.wrap(this.buffer);
+		while (block.hasRemaining())
+		{
+			int count = this.channel.read(block,
+				this.bufferStart + block.position());
+			if (count < 0)
+			{
+				break;
+			}
+		}
+		this.bufferLimit = block.position();
+		return this.bufferLimit > 0;
+	}
+
+	private void appendBytes(StringBuffer sb, int start, int end)
+		// Purpose: appends buffer bytes 'start' to 'end' to 'sb'
+	{
+		for (int i = start; i < end; i++)
+		{
+			sb.append((char)(this.buffer[i] & 0xff));
+		}
+	}
+
+	private void ensureOpen()
+		throws IOException
+	{
+		if (this.channel == null)
+		{
+			throw new IOException("Stream closed");
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	// the path of the file being read
+	private String file;
+
+	// the open file, null once closed
+	protected FileChannel channel;
+
+	// bytes of the file starting at offset "bufferStart"; bytes
+	// "bufferPos" to "bufferLimit" have not been read yet
+	protected byte[] buffer;
+	protected long bufferStart = 0;
+	protected int bufferPos = 0;
+	protected int bufferLimit = 0;
+
+	// true when the last line ended with '\r' at the end of the buffer
+	// so a following '\n' must be skipped
+	private boolean skipLF = false;
+
+	// the position saved by mark, -1 when not marked
+	private long markPosition = -1;
+	private boolean markSkipLF = false;
+
+	// default number of bytes read at a time
+	public static final int DEFAULTBUFFERSIZE = 1 << 16;
+}
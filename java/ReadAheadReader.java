@@ -0,0 +1,340 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+public class ReadAheadReader extends PositionedReader
+{
+	// Concept:
+	//	  IS: a PositionedReader that reads the file ahead of the parser
+	//	      on its own thread
+	//	 HAS: a ring of "depth" direct buffers of "bufferSize" bytes and
+	//	      a read-ahead thread that fills them in file order
+	//	DOES: the same as PositionedReader, so it can be handed to the
+	//	      readText method of any SeqRecord, but while the parser works
+	//	      on one block the next blocks are already being read, so
+	//	      the parser rarely waits on the disk
+	// Implementation:
+	//	The read-ahead thread reads blocks that end on multiples of
+	//	"bufferSize" (the first block may be short to get there) into
+	//	the free buffers of the ring. fill() copies the rest of the
+	//	block holding the current position into the parser's buffer
+	//	and hands the ring buffer back. A seek outside the current
+	//	buffer restarts the read-ahead at the new position; blocks read
+	//	for the old position are dropped. An I/O error on the read-ahead
+	//	thread is thrown by the next fill().
+	//	The thread is started by the first fill() and stopped by close().
+
+	//
+	// Constructors
+	//
+
+	public ReadAheadReader(String file)
+		throws IOException
+	{
+		// Purpose: creates a reader at the start of 'file'
+		// Throws: IOException if 'file' can't be opened
+
+		this(file, 0L, DEFAULTBLOCKSIZE, DEFAULTDEPTH);
+	}
+
+	public ReadAheadReader(String file, long position)
+		throws IOException
+	{
+		// Purpose: creates a reader at byte offset 'position' of 'file'
+		// Throws: IOException if 'file' can't be opened
+
+		this(file, position, DEFAULTBLOCKSIZE, DEFAULTDEPTH);
+	}
+
+	public ReadAheadReader(
+		String file,       // the file to read
+		long position,     // where to start
+		int bufferSize,    // bytes per block read ahead
+		int depth)         // blocks read ahead, at least 2
+		throws IOException
+	{
+		// Purpose: creates a reader at byte offset 'position' of 'file'
+		// Throws: IOException if 'file' can't be opened,
+		//         IllegalArgumentException if 'depth' is less than 2
+
+		super(file, position, bufferSize);
+		if (depth < 2)
+		{
+			throw new IllegalArgumentException("depth must be at least 2");
+		}
+		this.ring = new ByteBuffer[depth];
+		this.starts = new long[depth];
+		for (int i = 0; i < depth; i++)
+		{
+			this.ring[i] = ByteBuffer.allocateDirect(bufferSize);
+		}
+		this.nextRead = position;
+	}
+
+	//
+	// Methods
+	//
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: stops the read-ahead thread and closes the file
+
+		Thread thread;
+		synchronized (this.lock)
+		{
+			this.closed = true;
+			thread = this.reader;
+			this.lock.notifyAll();
+		}
+		if (thread != null)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		super.close();
+	}
+
+	protected boolean fill()
+		throws IOException
+	{
+		// Purpose: takes the next block from the read-ahead ring
+		// Returns: false at EOF
+		// Effects: the buffer starts at the current position
+
+		this.bufferStart += this.bufferPos;
+		this.bufferPos = 0;
+		this.bufferLimit = 0;
+
+		ByteBuffer block;
+		int offset;
+		synchronized (this.lock)
+		{
+			if (this.closed || this.channel == null)
+			{
+				throw new IOException("Stream closed");
+			}
+			if (this.reader == null)
+			{
+				start();
+			}
+			while (true)
+			{
+				if (this.failure != null)
+				{
+					IOException failure = this.failure;
+					this.failure = null;
+					restart();
+					throw failure;
+				}
+				if (this.count > 0)
+				{
+					long blockStart = this.starts[this.head];
+					block = this.ring[this.head];
+					if (this.bufferStart >= blockStart &&
+					    this.bufferStart < blockStart + block.limit())
+					{
+						offset = (int)(this.bufferStart - blockStart);
+						break;
+					}
+					restart();
+				}
+				else if (this.bufferStart != this.nextRead)
+				{
+					restart();
+				}
+				else if (this.eof)
+				{
+					return false;
+				}
+				else
+				{
+					try
+					{
+						this.lock.wait();
+					}
+					catch (InterruptedException e)
+					{
+						throw new InterruptedIOException(e.toString());
+					}
+				}
+			}
+		}
+
+		// only this thread restarts the ring, so the head block can be
+		// copied without the lock
+		int length = block.limit() - offset;
+		ByteBuffer source = block.duplicate();
+		source.position(offset);
+		source.get(this.buffer, 0, length);
+		this.bufferLimit = length;
+
+		synchronized (this.lock)
+		{
+			this.head = (this.head + 1) % this.ring.length;
+			this.count--;
+			this.lock.notifyAll();
+		}
+		return true;
+	}
+
+	private void start()
+	{
+		// Purpose: starts the read-ahead thread
+		// Assumes: the lock is held
+
+		this.reader = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				readAhead();
+			}
+		}, "read-ahead " + getFile());
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void restart()
+	{
+		// Purpose: drops the blocks read ahead and reads ahead from the
+		//          current position instead
+		// Assumes: the lock is held
+
+		this.generation++;
+		this.head = 0;
+		this.tail = 0;
+		this.count = 0;
+		this.nextRead = this.bufferStart;
+		this.eof = false;
+		this.lock.notifyAll();
+	}
+
+	private void readAhead()
+	{
+		// Purpose: the body of the read-ahead thread, fills free ring
+		//          buffers in file order until closed
+
+		int blockSize = this.ring[0].capacity();
+		while (true)
+		{
+			ByteBuffer block;
+			long position;
+			int generation;
+			int slot;
+			synchronized (this.lock)
+			{
+				while (!this.closed && (this.eof || this.failure != null ||
+				       this.count == this.ring.length))
+				{
+					try
+					{
+						this.lock.wait();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+				if (this.closed)
+				{
+					return;
+				}
+				slot = this.tail;
+				block = this.ring[slot];
+				position = this.nextRead;
+				generation = this.generation;
+			}
+
+			// read up to the next multiple of the block size
+			IOException failure = null;
+			block.clear();
+			block.limit(blockSize - (int)(position % blockSize));
+			try
+			{
+				while (block.hasRemaining())
+				{
+					if (this.channel.read(block,
+						position + block.position()) < 0)
+					{
+						break;
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				failure = e;
+			}
+			block.flip();
+
+			synchronized (this.lock)
+			{
+				if (this.closed)
+				{
+					return;
+				}
+				if (generation != this.generation)
+				{
+					// the parser moved, drop this block
+					continue;
+				}
+				if (failure != null)
+				{
+					this.failure = failure;
+				}
+				else if (block.limit() == 0)
+				{
+					this.eof = true;
+				}
+				else
+				{
+					this.starts[slot] = position;
+					this.tail = (slot + 1) % this.ring.length;
+					this.count++;
+					this.nextRead = position + block.limit();
+				}
+				this.lock.notifyAll();
+			}
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	// guards the ring and the read-ahead state
+	private final Object lock = new Object();
+
+	// the read-ahead thread, null until the first fill
+	private Thread reader = null;
+
+	// the ring of blocks and the file offset of each; "count" blocks
+	// from "head" are ready, the thread fills the block at "tail"
+	private ByteBuffer[] ring;
+	private long[] starts;
+	private int head = 0;
+	private int tail = 0;
+	private int count = 0;
+
+	// where the thread reads next, and whether it has reached EOF
+	private long nextRead;
+	private boolean eof = false;
+
+	// incremented by each restart so blocks read before it are dropped
+	private int generation = 0;
+
+	// an error of the thread not yet thrown to the parser
+	private IOException failure = null;
+
+	private boolean closed = false;
+
+	// defaults: 1MB blocks, four of them
+	public static final int DEFAULTBLOCKSIZE = 1 << 20;
+	public static final int DEFAULTDEPTH = 4;
+}
@@ -0,0 +1,648 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class RecordCache
+{
+	// Concept:
+	//	  IS: a bounded in-memory cache of parsed sequence records
+	//	 HAS: a limit in bytes, the cached records kept compactly, and
+	//	      hit, miss, load and eviction counts
+	//	DOES: Given an accession or accession.version, returns the
+	//	      record as a SeqRecordSnapshot without reading or parsing
+	//	      it again, or loads it with a Loader on a miss. Evicts the
+	//	      least recently used records to stay within the limit
+	// Implementation:
+	//	A record is kept as the snapshot without its text and sequence,
+	//	and the text deflated. The sequence is not kept again: it is
+	//	found in the text when the text is inflated (see Entry), so a
+	//	hit costs one inflate and a copy, not a parse. The bases are
+	//	normalized again only if they are asked for.
+	//	Records are kept under "accession.version" (or the accession
+	//	when the record has no version) and the plain accession is an
+	//	alias of the last version put, as in SequenceStore.
+	//	The cache is split into SEGMENTS segments by the hash of the
+	//	key, each an access ordered LinkedHashMap with its own lock and
+	//	an equal share of the limit, so threads looking up different
+	//	records rarely wait for each other. Sizes are estimates of the
+	//	heap used, not exact. Loads are not locked: two threads missing
+	//	the same record may both load it, and the second put wins.
+
+	//
+	// Constructors
+	//
+
+	public RecordCache(long maxBytes)
+	{
+		// Purpose: creates an empty cache of at most 'maxBytes'
+		// Throws: IllegalArgumentException if 'maxBytes' is not
+		//         positive
+
+		if (maxBytes <= 0)
+		{
+			throw new IllegalArgumentException(
+				"cache size must be positive: " + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++)
+		{
+			this.segments[i] = new Segment(
+				Math.max(1, maxBytes / SEGMENTS));
+		}
+	}
+
+	//
+	// Methods
+	//
+
+	public SeqRecordSnapshot get(String key)
+	{
+		// Purpose: looks up 'key', an accession or accession.version
+		// Returns: the record or null if it is not cached
+		// Effects: counts a hit or miss and makes the record the most
+		//          recently used
+
+		Entry entry = find(key);
+		if (entry == null)
+		{
+			this.misses.incrementAndGet();
+			return null;
+		}
+		this.hits.incrementAndGet();
+		return entry.expand();
+	}
+
+	public SeqRecordSnapshot get(String key, Loader loader)
+		throws IOException
+	{
+		// Purpose: looks up 'key', loading and caching the record with
+		//          'loader' if it is not cached
+		// Returns: the record or null if 'loader' has none
+		// Throws: IOException from 'loader'
+
+		SeqRecordSnapshot record = get(key);
+		if (record == null)
+		{
+			record = loader.load(key);
+			if (record != null)
+			{
+				this.loads.incrementAndGet();
+				put(record);
+			}
+		}
+		return record;
+	}
+
+	public void put(SeqRecordSnapshot record)
+	{
+		// Purpose: caches 'record', replacing any record of the same
+		//          accession.version
+		// Returns: nothing
+		// Effects: evicts the least recently used records of the
+		//          segment if it is over its share of the limit
+		// Throws: IllegalArgumentException if 'record' has no seqIds
+		// Notes: a record larger than the share of a segment is not
+		//        kept
+
+		String accession = record.getPrimaryId();
+		if (accession == null)
+		{
+			throw new IllegalArgumentException("record has no seqIds");
+		}
+		String key = keyOf(record);
+		Entry entry = new Entry(record);
+		segmentOf(key).put(key, entry, entry.size);
+		if (!key.equals(accession))
+		{
+			segmentOf(accession).put(accession, key,
+				ALIASSIZE + 2 * (accession.length() + key.length()));
+		}
+	}
+
+	public void put(SeqRecord record)
+	{
+		// Purpose: caches a snapshot of 'record', see put(snapshot)
+
+		put(record.snapshot());
+	}
+
+	public boolean contains(String key)
+		// Purpose: determines whether 'key' is cached, without counting
+		//          a hit or miss
+	{
+		return find(key) != null;
+	}
+
+	public void remove(String key)
+	{
+		// Purpose: removes 'key' and, for an accession, the record its
+		//          alias names
+		// Returns: nothing
+
+		Object value = segmentOf(key).remove(key);
+		if (value instanceof String)
+		{
+			segmentOf((String)value).remove((String)value);
+		}
+	}
+
+	public void clear()
+	{
+		// Purpose: removes every record
+		// Returns: nothing
+		// Notes: the counts are kept
+
+		for (int i = 0; i < SEGMENTS; i++)
+		{
+			this.segments[i].clearAll();
+		}
+	}
+
+	public long getMaxBytes()
+	{
+		return this.maxBytes;
+	}
+
+	public long getBytes()
+		// Purpose: accessor for the estimated size of what is cached
+	{
+		long bytes = 0;
+		for (int i = 0; i < SEGMENTS; i++)
+		{
+			bytes += this.segments[i].getBytes();
+		}
+		return bytes;
+	}
+
+	public int size()
+		// Purpose: accessor for the number of records cached, not
+		//          counting accession aliases
+	{
+		int count = 0;
+		for (int i = 0; i < SEGMENTS; i++)
+		{
+			count += this.segments[i].getEntryCount();
+		}
+		return count;
+	}
+
+	public long getHitCount()
+	{
+		return this.hits.get();
+	}
+
+	public long getMissCount()
+	{
+		return this.misses.get();
+	}
+
+	public long getLoadCount()
+		// Purpose: accessor for the number of records a Loader loaded
+	{
+		return this.loads.get();
+	}
+
+	public long getEvictionCount()
+		// Purpose: accessor for the number of records evicted to stay
+		//          within the limit, not counting aliases
+	{
+		return this.evictions.get();
+	}
+
+	public double getHitRate()
+		// Purpose: accessor for the fraction of lookups that were hits
+		// Returns: 0 when there have been no lookups
+	{
+		long hit = this.hits.get();
+		long total = hit + this.misses.get();
+		return total == 0 ? 0 : (double)hit / total;
+	}
+
+	public String toString()
+	{
+		return "RecordCache[" + size() + " records, " + getBytes() +
+			" of " + this.maxBytes + " bytes, " + this.hits.get() +
+			" hits, " + this.misses.get() + " misses, " +
+			this.loads.get() + " loads, " + this.evictions.get() +
+			" evictions]";
+	}
+
+	public static String keyOf(SeqRecordSnapshot record)
+	{
+		// Purpose: finds the key 'record' is cached under
+		// Returns: its accession.version, or its accession if it has
+		//          no version
+
+		String version = record.getVersion();
+		return version.length() > 0 ? version : record.getPrimaryId();
+	}
+
+	private Entry find(String key)
+	{
+		// Purpose: looks up 'key', following an accession alias
+		// Returns: the entry or null
+
+		Segment segment = segmentOf(key);
+		Object value = segment.lookup(key);
+		if (value instanceof String)
+		{
+			String target = (String)value;
+			value = segmentOf(target).lookup(target);
+			if (value == null)
+			{
+				// the record was evicted before its alias
+				segment.removeAlias(key, target);
+			}
+		}
+		return (Entry)value;
+	}
+
+	private Segment segmentOf(String key)
+	{
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return this.segments[hash & (SEGMENTS - 1)];
+	}
+
+	private static byte[] bytesOf(String string)
+	{
+		try
+		{
+			return string.getBytes(CHARSET);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(CHARSET + ": " +
+				e.getMessage());
+		}
+	}
+
+	private static String stringOf(byte[] bytes)
+	{
+		try
+		{
+			return new String(bytes, CHARSET);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(CHARSET + ": " +
+				e.getMessage());
+		}
+	}
+
+	private static byte[] deflate(byte[] bytes)
+	{
+		// Purpose: deflates 'bytes'
+		// Returns: the deflated bytes, trimmed to size
+
+		Deflater deflater = new Deflater();
+		try
+		{
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream out =
+				new ByteArrayOutputStream(bytes.length / 4 + 64);
+			byte[] chunk = new byte[8192];
+			while (!deflater.finished())
+			{
+				int n = deflater.deflate(chunk);
+				out.write(chunk, 0, n);
+			}
+			return out.toByteArray();
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] deflated, int length)
+	{
+		// Purpose: inflates 'deflated' to its 'length' bytes
+		// Returns: the bytes
+		// Throws: IllegalStateException if 'deflated' is damaged,
+		//         which only a bug here can cause
+
+		byte[] bytes = new byte[length];
+		Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput(deflated);
+			int inflated = 0;
+			while (inflated < length)
+			{
+				int n = inflater.inflate(bytes, inflated,
+					length - inflated);
+				if (n == 0 && (inflater.finished() ||
+					       inflater.needsInput() ||
+					       inflater.needsDictionary()))
+				{
+					break;
+				}
+				inflated += n;
+			}
+			if (inflated != length)
+			{
+				throw new IllegalStateException("cached record inflated to "
+					+ inflated + " of " + length + " bytes");
+			}
+			return bytes;
+		}
+		catch (DataFormatException e)
+		{
+			throw new IllegalStateException("cached record damaged: " +
+				e.getMessage());
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	//
+	// Interfaces and inner classes
+	//
+
+	public interface Loader
+	{
+		// Concept:
+		//	  IS: a source of the records a RecordCache misses
+		//	DOES: reads and parses one record, e.g. by seeking a
+		//	      PositionedReader to it with an offset index
+
+		public SeqRecordSnapshot load(String key)
+			throws IOException;
+			// Purpose: reads the record of 'key', an accession or
+			//          accession.version
+			// Returns: the record or null if there is none
+	}
+
+	private static class Entry
+	{
+		// Concept:
+		//	  IS: a record as it is kept in the cache
+		//	 HAS: the snapshot without text and sequence, the deflated
+		//	      text, and where to find the sequence in the text
+		//	DOES: expands itself back into a full snapshot
+		// Implementation:
+		//	GenBank and EMBL sequences are a run of lines of the text,
+		//	kept as their offset. FASTA sequences are the trimmed lines
+		//	after the description line (FROMLINES). Any other sequence
+		//	is deflated on its own (DEFLATED).
+
+		Entry(SeqRecordSnapshot record)
+		{
+			String whole = record.getText();
+			String residues = record.getSequence();
+			int start = residues.length() == 0 ? 0 :
+				whole.lastIndexOf(residues);
+			byte[] sequenceBytes = EMPTY;
+			if (start < 0)
+			{
+				start = residues.equals(fromLines(whole)) ?
+					FROMLINES : DEFLATED;
+			}
+			if (start == DEFLATED)
+			{
+				sequenceBytes = deflate(bytesOf(residues));
+			}
+
+			this.shell = record.withContent("", "", null);
+			this.text = deflate(bytesOf(whole));
+			this.textLength = whole.length();
+			this.sequence = sequenceBytes;
+			this.sequenceStart = start;
+			this.sequenceLength = residues.length();
+			this.size = ENTRYSIZE + this.text.length +
+				this.sequence.length + 2 *
+				(record.getOrganism().length() +
+				 (record.getOrganismClassif() == record.getOrganism() ?
+				  0 : record.getOrganismClassif().length()) +
+				 record.getComment().length() +
+				 record.getDescription().length() +
+				 record.getVersion().length() +
+				 record.getSeqIds().size() * 16);
+		}
+
+		SeqRecordSnapshot expand()
+		{
+			// Purpose: rebuilds the full snapshot
+			// Returns: a new snapshot, which normalizes its bases
+			//          when they are asked for
+
+			String whole = stringOf(inflate(this.text, this.textLength));
+			String residues;
+			if (this.sequenceStart == DEFLATED)
+			{
+				residues = stringOf(inflate(this.sequence,
+					this.sequenceLength));
+			}
+			else if (this.sequenceStart == FROMLINES)
+			{
+				residues = fromLines(whole);
+			}
+			else
+			{
+				residues = whole.substring(this.sequenceStart,
+					this.sequenceStart + this.sequenceLength);
+			}
+			return this.shell.withContent(whole, residues, null);
+		}
+
+		private static String fromLines(String whole)
+		{
+			// Purpose: joins the trimmed lines after the first line of
+			//          'whole', as FASTASeqRecord reads its sequence
+
+			StringBuffer residues = new StringBuffer(whole.length());
+			int at = whole.indexOf('\n');
+			while (at >= 0 && at + 1 < whole.length())
+			{
+				int end = whole.indexOf('\n', at + 1);
+				if (end < 0)
+				{
+					end = whole.length();
+				}
+				residues.append(whole.substring(at + 1, end).trim());
+				at = end;
+			}
+			return residues.toString();
+		}
+
+		//instance vars
+
+		private final SeqRecordSnapshot shell;
+		private final byte[] text;
+		private final int textLength;
+		private final byte[] sequence;
+		private final int sequenceStart;
+		private final int sequenceLength;
+
+		// estimated heap size in bytes
+		final long size;
+
+		// class vars
+
+		// values of "sequenceStart" when it is not an offset
+		private static final int FROMLINES = -1;
+		private static final int DEFLATED = -2;
+	}
+
+	private class Segment
+		extends LinkedHashMap<String, Object>
+	{
+		// Concept:
+		//	  IS: one lock stripe of the cache
+		//	 HAS: entries and accession aliases (Strings naming a key)
+		//	      in access order, their total size and a limit
+		//	DOES: keeps its total within the limit by evicting the
+		//	      least recently used
+		// Implementation:
+		//	Every method is synchronized on the segment
+
+		Segment(long limit)
+		{
+			super(64, 0.75f, true);
+			this.limit = limit;
+		}
+
+		synchronized Object lookup(String key)
+		{
+			// Purpose: gets 'key', making it the most recently used
+			return get(key);
+		}
+
+		synchronized void put(String key, Object value, long size)
+		{
+			// Purpose: adds 'key', evicting as needed
+
+			if (size > this.limit)
+			{
+				// would evict everything and still not fit
+				remove(key);
+				return;
+			}
+			Object old = super.put(key, value);
+			if (old != null)
+			{
+				forget(old, key);
+			}
+			this.bytes += size;
+			if (value instanceof Entry)
+			{
+				this.entryCount++;
+			}
+			Iterator<Map.Entry<String, Object>> eldest =
+				entrySet().iterator();
+			while (this.bytes > this.limit && eldest.hasNext())
+			{
+				Map.Entry<String, Object> victim = eldest.next();
+				eldest.remove();
+				forget(victim.getValue(), victim.getKey());
+				if (victim.getValue() instanceof Entry)
+				{
+					evictions.incrementAndGet();
+				}
+			}
+		}
+
+		public synchronized Object remove(Object key)
+		{
+			Object old = super.remove(key);
+			if (old != null)
+			{
+				forget(old, (String)key);
+			}
+			return old;
+		}
+
+		synchronized void removeAlias(String key, String target)
+		{
+			// Purpose: removes alias 'key' if it still names 'target'
+
+			if (target.equals(super.get(key)))
+			{
+				remove(key);
+			}
+		}
+
+		synchronized void clearAll()
+		{
+			super.clear();
+			this.bytes = 0;
+			this.entryCount = 0;
+		}
+
+		synchronized long getBytes()
+		{
+			return this.bytes;
+		}
+
+		synchronized int getEntryCount()
+		{
+			return this.entryCount;
+		}
+
+		private void forget(Object value, String key)
+		{
+			// Purpose: takes removed 'value' out of the totals
+
+			if (value instanceof Entry)
+			{
+				this.bytes -= ((Entry)value).size;
+				this.entryCount--;
+			}
+			else
+			{
+				this.bytes -= ALIASSIZE +
+					2 * (key.length() + ((String)value).length());
+			}
+		}
+
+		//instance vars
+
+		private final long limit;
+		private long bytes = 0;
+		private int entryCount = 0;
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	//
+	//instance vars
+	//
+
+	private final long maxBytes;
+	private final Segment[] segments;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	//
+	// class vars
+	//
+
+	// number of lock stripes, a power of two
+	private static final int SEGMENTS = 16;
+
+	// estimated heap size of an entry and its snapshot, not counting
+	// the Strings and arrays they hold
+	private static final int ENTRYSIZE = 320;
+
+	// estimated heap size of an alias and its map entry, not counting
+	// the Strings
+	private static final int ALIASSIZE = 96;
+
+	// the record text is Latin-1, as read by PositionedReader
+	private static final String CHARSET = "ISO-8859-1";
+
+	private static final byte[] EMPTY = new byte[0];
+}
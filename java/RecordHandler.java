@@ -0,0 +1,23 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+
+public interface RecordHandler
+{
+	// Concept:
+	//	  IS: the work done on each sequence record by a batch job
+	//	      (e.g. ShardWorker, BatchIngest)
+	//	DOES: Given a record just read, writes whatever the job produces
+	//	      for it to the job's output for the record's part of the
+	//	      input
+	// Implementation:
+	//	The record object is reused for the next record, a handler
+	//	must copy anything it keeps.
+
+	public void handle(
+		SeqRecord record,  // the record just read
+		Writer out)        // output for the shard or chunk
+		throws IOException;
+	// Purpose: processes 'record'
+	// Throws: IOException if 'out' can't be written
+}
@@ -0,0 +1,751 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.util.*;
+
+public class RecordQuery
+{
+	// Concept:
+	//	  IS: a compiled filter over the fields of sequence records
+	//	 HAS: a tree of and, or, not and field comparison nodes
+	//	DOES: Given a query string, compiles it once. Tests a record
+	//	      while it is still being parsed: the answer is TRUE, FALSE
+	//	      or UNKNOWN when it depends on fields not parsed yet, so a
+	//	      parser can stop reading a record as soon as it is FALSE
+	// Implementation:
+	//	Query language, keywords and string comparisons ignore case:
+	//	    query   := or
+	//	    or      := and ("or" and)*
+	//	    and     := unary ("and" unary)*
+	//	    unary   := "not" unary | "(" or ")" | clause
+	//	    clause  := field op value | field "in" "(" value ("," value)* ")"
+	//	    op      := "=" | "!=" | "<" | "<=" | ">" | ">=" | "~" | "^="
+	//	"~" is contains, "^=" is starts with. Values are words or
+	//	"quoted strings". The fields are
+	//	    accession version type division comment commentclass
+	//	    commentcontact description organism classification
+	//	        (strings: = != ~ ^= in)
+	//	    length taxon (numbers) and date (yyyy-mm-dd or dd-MMM-yyyy)
+	//	        (= != < <= > >= in)
+	//	e.g.
+	//	    division in (ROD, PRI) and length >= 500 and
+	//	    date >= 2001-01-01 and not commentclass = "gene trap"
+	//	A parser calls SeqRecord.parsed() with the fields it has just
+	//	parsed (see the field constants). Each comparison is decided
+	//	once per record, when its field is known, and the result kept
+	//	in the record. The children of and/or nodes are ordered by an
+	//	estimated cost so cheap comparisons run first and expensive
+	//	substring searches of organism or comment text run last.
+	//	A query holds no per record state, one query can be used by
+	//	records in several threads.
+
+	//
+	// Constructors
+	//
+
+	private RecordQuery(String text, Node root, int clauseCount)
+	{
+		this.text = text;
+		this.root = root;
+		this.clauseCount = clauseCount;
+	}
+
+	//
+	// Methods
+	//
+
+	public static RecordQuery compile(String query)
+	{
+		// Purpose: compiles 'query'
+		// Returns: the compiled query
+		// Throws: IllegalArgumentException naming the position of a
+		//         syntax error
+
+		Compiler compiler = new Compiler(query);
+		Node root = compiler.or();
+		if (compiler.peek() != null)
+		{
+			compiler.fail("unexpected " + compiler.peek());
+		}
+		root = root.order();
+		return new RecordQuery(query, root, compiler.clauses);
+	}
+
+	public boolean matches(SeqRecord record)
+		// Purpose: tests a record that has been read completely
+		// Returns: true if 'record' matches the query
+	{
+		byte[] results = new byte[this.clauseCount];
+		return this.root.evaluate(record, ALL, results) == TRUE;
+	}
+
+	public String getText()
+		// Purpose: accessor for the query as written
+	{
+		return this.text;
+	}
+
+	public String toString()
+		// Purpose: shows the compiled tree in evaluation order
+	{
+		return this.root.toString();
+	}
+
+	int getClauseCount()
+	{
+		return this.clauseCount;
+	}
+
+	int evaluate(SeqRecord record, int known, byte[] results)
+	{
+		// Purpose: tests 'record' whose 'known' fields are parsed
+		// Returns: TRUE, FALSE or UNKNOWN
+		// Effects: keeps decided comparisons in 'results'
+
+		return this.root.evaluate(record, known, results);
+	}
+
+	static int dateCode(String date)
+	{
+		// Purpose: converts a dd-MMM-yyyy (GenBank, EMBL) or yyyy-mm-dd
+		//          date to yyyymmdd
+		// Returns: the code, or -1 if 'date' is neither or its month
+		//          or day is out of range
+
+		if (date == null)
+		{
+			return -1;
+		}
+		try
+		{
+			int year;
+			int month;
+			int day;
+			if (date.length() >= 11 && date.charAt(2) == '-' &&
+			    date.charAt(6) == '-')
+			{
+				month = MONTHS.indexOf(
+					date.substring(3, 6).toUpperCase());
+				if (month < 0 || month % 3 != 0)
+				{
+					return -1;
+				}
+				month = month / 3 + 1;
+				year = Integer.parseInt(date.substring(7, 11));
+				day = Integer.parseInt(date.substring(0, 2));
+			}
+			else if (date.length() == 10 && date.charAt(4) == '-' &&
+				 date.charAt(7) == '-')
+			{
+				year = Integer.parseInt(date.substring(0, 4));
+				month = Integer.parseInt(date.substring(5, 7));
+				day = Integer.parseInt(date.substring(8, 10));
+			}
+			else
+			{
+				return -1;
+			}
+			if (year < 0 || month < 1 || month > 12 || day < 1 ||
+			    day > 31)
+			{
+				return -1;
+			}
+			return year * 10000 + month * 100 + day;
+		}
+		catch (NumberFormatException e)
+		{
+		}
+		return -1;
+	}
+
+	private static abstract class Node
+	{
+		// Concept:
+		//	  IS: a node of the predicate tree
+
+		abstract int evaluate(SeqRecord record, int known,
+				      byte[] results);
+
+		abstract int cost();
+
+		Node order()
+		{
+			return this;
+		}
+	}
+
+	private static class Junction extends Node
+	{
+		// Concept:
+		//	  IS: an and or an or of two or more nodes
+		//	DOES: decides as soon as one child decides it (FALSE for
+		//	      and, TRUE for or), else UNKNOWN until all are known
+
+		Junction(boolean and, Vector<Node> children)
+		{
+			this.and = and;
+			this.children = children.toArray(new Node[children.size()]);
+		}
+
+		int evaluate(SeqRecord record, int known, byte[] results)
+		{
+			int decides = this.and ? FALSE : TRUE;
+			int result = this.and ? TRUE : FALSE;
+			for (int i = 0; i < this.children.length; i++)
+			{
+				int child = this.children[i].evaluate(record, known,
+								      results);
+				if (child == decides)
+				{
+					return decides;
+				}
+				if (child == UNKNOWN)
+				{
+					result = UNKNOWN;
+				}
+			}
+			return result;
+		}
+
+		int cost()
+		{
+			int cost = 0;
+			for (int i = 0; i < this.children.length; i++)
+			{
+				cost += this.children[i].cost();
+			}
+			return cost;
+		}
+
+		Node order()
+		{
+			for (int i = 0; i < this.children.length; i++)
+			{
+				this.children[i] = this.children[i].order();
+			}
+			Arrays.sort(this.children, new Comparator<Node>()
+			{
+				public int compare(Node a, Node b)
+				{
+					return a.cost() - b.cost();
+				}
+			});
+			return this;
+		}
+
+		public String toString()
+		{
+			StringBuffer text = new StringBuffer("(");
+			for (int i = 0; i < this.children.length; i++)
+			{
+				if (i > 0)
+				{
+					text.append(this.and ? " and " : " or ");
+				}
+				text.append(this.children[i]);
+			}
+			return text.append(')').toString();
+		}
+
+		private boolean and;
+		private Node[] children;
+	}
+
+	private static class Not extends Node
+	{
+		Not(Node child)
+		{
+			this.child = child;
+		}
+
+		int evaluate(SeqRecord record, int known, byte[] results)
+		{
+			int result = this.child.evaluate(record, known, results);
+			return result == UNKNOWN ? UNKNOWN :
+				(result == TRUE ? FALSE : TRUE);
+		}
+
+		int cost()
+		{
+			return this.child.cost();
+		}
+
+		Node order()
+		{
+			this.child = this.child.order();
+			return this;
+		}
+
+		public String toString()
+		{
+			return "not " + this.child;
+		}
+
+		private Node child;
+	}
+
+	private static class Clause extends Node
+	{
+		// Concept:
+		//	  IS: one comparison of a field with one or more values
+		// Implementation:
+		//	'results' holds the outcome of clause "index" once the
+		//	field is known, so it is computed once per record
+
+		Clause(int index, int field, String op, Vector<String> values,
+		       Compiler compiler)
+		{
+			this.index = index;
+			this.field = field;
+			this.op = op;
+			this.numeric = (field & NUMERIC) != 0;
+			int count = values.size();
+			this.strings = new String[count];
+			this.numbers = new long[count];
+			for (int i = 0; i < count; i++)
+			{
+				String value = values.get(i);
+				this.strings[i] = value.toLowerCase();
+				if (field == DATE)
+				{
+					this.numbers[i] = dateCode(value);
+					if (this.numbers[i] < 0)
+					{
+						compiler.fail("bad date " + value);
+					}
+				}
+				else if (this.numeric)
+				{
+					try
+					{
+						this.numbers[i] = Long.parseLong(value);
+					}
+					catch (NumberFormatException e)
+					{
+						compiler.fail("bad number " + value);
+					}
+				}
+			}
+			if (this.numeric ? (op.equals("~") || op.equals("^=")) :
+			    (op.startsWith("<") || op.startsWith(">")))
+			{
+				compiler.fail(op + " can't be used with " +
+					fieldName(field));
+			}
+		}
+
+		int evaluate(SeqRecord record, int known, byte[] results)
+		{
+			if (results[this.index] != UNKNOWN)
+			{
+				return results[this.index];
+			}
+			if ((known & this.field) == 0)
+			{
+				return UNKNOWN;
+			}
+			boolean match = this.numeric ?
+				compare(numberOf(record)) : compare(stringOf(record));
+			results[this.index] = (byte)(match ? TRUE : FALSE);
+			return results[this.index];
+		}
+
+		private boolean compare(long value)
+		{
+			for (int i = 0; i < this.numbers.length; i++)
+			{
+				long other = this.numbers[i];
+				boolean match =
+					this.op.equals("=") || this.op.equals("in") ?
+						value == other :
+					this.op.equals("!=") ? value != other :
+					this.op.equals("<") ? value < other :
+					this.op.equals("<=") ? value <= other :
+					this.op.equals(">") ? value > other :
+					value >= other;
+				if (match)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean compare(String value)
+		{
+			for (int i = 0; i < this.strings.length; i++)
+			{
+				String other = this.strings[i];
+				boolean match =
+					this.op.equals("=") || this.op.equals("in") ?
+						value.equals(other) :
+					this.op.equals("!=") ? !value.equals(other) :
+					this.op.equals("~") ? value.indexOf(other) >= 0 :
+					value.startsWith(other);
+				if (match)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private long numberOf(SeqRecord record)
+		{
+			switch (this.field)
+			{
+			case LENGTH:
+				return record.getSeqLength();
+			case TAXON:
+				return record.getTaxonId();
+			default:
+				return record.getDateCode();
+			}
+		}
+
+		private String stringOf(SeqRecord record)
+		{
+			String value;
+			switch (this.field)
+			{
+			case ACCESSION:
+				value = record.getSeqIds().isEmpty() ? "" :
+					(String)record.getSeqIds().get(0);
+				break;
+			case VERSION:
+				value = record.getVersion();
+				break;
+			case TYPE:
+				value = record.getType();
+				break;
+			case DIVISION:
+				value = record.getDivision();
+				break;
+			case ORGANISM:
+				return record.getOrganism();
+			case CLASSIFICATION:
+				if (record instanceof EMBLSeqRecord)
+				{
+					return ((EMBLSeqRecord)record).getOrganismClassif();
+				}
+				return record.getOrganism();
+			case COMMENT:
+				value = record.getComment();
+				break;
+			case COMMENTCLASS:
+				value = record.getCommentClass();
+				break;
+			case COMMENTCONTACT:
+				value = record.getCommentContact();
+				break;
+			default:
+				value = record instanceof FASTASeqRecord ?
+					((FASTASeqRecord)record).getDescription() : "";
+				break;
+			}
+			return value == null ? "" : value.toLowerCase();
+		}
+
+		int cost()
+		{
+			int cost = this.numeric ? 1 : 2;
+			if ((this.field & TEXT) != 0)
+			{
+				cost = 8;
+			}
+			if (this.op.equals("~"))
+			{
+				cost *= 2;
+			}
+			return cost * this.strings.length;
+		}
+
+		public String toString()
+		{
+			StringBuffer text = new StringBuffer(fieldName(this.field));
+			text.append(' ').append(this.op).append(' ');
+			if (this.op.equals("in"))
+			{
+				text.append('(');
+			}
+			for (int i = 0; i < this.strings.length; i++)
+			{
+				text.append(i > 0 ? ", " : "").append('"')
+					.append(this.strings[i]).append('"');
+			}
+			if (this.op.equals("in"))
+			{
+				text.append(')');
+			}
+			return text.toString();
+		}
+
+		private int index;
+		private int field;
+		private String op;
+		private boolean numeric;
+		private String[] strings;
+		private long[] numbers;
+	}
+
+	private static class Compiler
+	{
+		// Concept:
+		//	  IS: a recursive descent parser of the query language
+
+		Compiler(String query)
+		{
+			this.query = query;
+			int i = 0;
+			while (i < query.length())
+			{
+				char c = query.charAt(i);
+				if (Character.isWhitespace(c))
+				{
+					i++;
+					continue;
+				}
+				int start = i;
+				if (c == '"')
+				{
+					int end = query.indexOf('"', i + 1);
+					if (end < 0)
+					{
+						this.position = i;
+						fail("unterminated string");
+					}
+					i = end + 1;
+				}
+				else if ("(),~=".indexOf(c) >= 0)
+				{
+					i++;
+				}
+				else if ("!<>^".indexOf(c) >= 0)
+				{
+					i += (i + 1 < query.length() &&
+					      query.charAt(i + 1) == '=') ? 2 : 1;
+				}
+				else
+				{
+					while (i < query.length() &&
+					       !Character.isWhitespace(query.charAt(i)) &&
+					       "()\",~=!<>^".indexOf(query.charAt(i)) < 0)
+					{
+						i++;
+					}
+				}
+				this.tokens.add(query.substring(start, i));
+				this.starts.add(start);
+			}
+		}
+
+		Node or()
+		{
+			Vector<Node> children = new Vector<Node>();
+			children.add(and());
+			while (accept("or"))
+			{
+				children.add(and());
+			}
+			return children.size() == 1 ? children.get(0) :
+				new Junction(false, children);
+		}
+
+		Node and()
+		{
+			Vector<Node> children = new Vector<Node>();
+			children.add(unary());
+			while (accept("and"))
+			{
+				children.add(unary());
+			}
+			return children.size() == 1 ? children.get(0) :
+				new Junction(true, children);
+		}
+
+		Node unary()
+		{
+			if (accept("not"))
+			{
+				return new Not(unary());
+			}
+			if (accept("("))
+			{
+				Node node = or();
+				expect(")");
+				return node;
+			}
+			return clause();
+		}
+
+		Node clause()
+		{
+			String name = next("a field");
+			int field = fieldOf(name);
+			if (field == 0)
+			{
+				this.index--;
+				fail("unknown field " + name);
+			}
+			String op = next("an operator").toLowerCase();
+			Vector<String> values = new Vector<String>();
+			if (op.equals("in"))
+			{
+				expect("(");
+				values.add(value());
+				while (accept(","))
+				{
+					values.add(value());
+				}
+				expect(")");
+			}
+			else if (OPERATORS.contains(op))
+			{
+				values.add(value());
+			}
+			else
+			{
+				this.index--;
+				fail("unknown operator " + op);
+			}
+			return new Clause(this.clauses++, field, op, values, this);
+		}
+
+		private String value()
+		{
+			String value = next("a value");
+			if (value.startsWith("\""))
+			{
+				return value.substring(1, value.length() - 1);
+			}
+			if (value.length() == 1 && "(),".indexOf(value) >= 0)
+			{
+				this.index--;
+				fail("expected a value");
+			}
+			return value;
+		}
+
+		String peek()
+		{
+			return this.index < this.tokens.size() ?
+				this.tokens.get(this.index) : null;
+		}
+
+		private String next(String expected)
+		{
+			if (this.index >= this.tokens.size())
+			{
+				fail("expected " + expected);
+			}
+			return this.tokens.get(this.index++);
+		}
+
+		private boolean accept(String token)
+		{
+			if (token.equalsIgnoreCase(peek()))
+			{
+				this.index++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String token)
+		{
+			if (!accept(token))
+			{
+				fail("expected " + token);
+			}
+		}
+
+		void fail(String message)
+		{
+			int at = this.position >= 0 ? this.position :
+				(this.index < this.starts.size() ?
+				 this.starts.get(Math.max(0, this.index)) :
+				 this.query.length());
+			throw new IllegalArgumentException(message + " at " + at +
+				" in query: " + this.query);
+		}
+
+		private String query;
+		private Vector<String> tokens = new Vector<String>();
+		private Vector<Integer> starts = new Vector<Integer>();
+		private int index = 0;
+		private int position = -1;
+		int clauses = 0;
+	}
+
+	private static int fieldOf(String name)
+	{
+		for (int i = 0; i < FIELDNAMES.length; i++)
+		{
+			if (FIELDNAMES[i].equalsIgnoreCase(name))
+			{
+				return 1 << i;
+			}
+		}
+		return 0;
+	}
+
+	private static String fieldName(int field)
+	{
+		return FIELDNAMES[Integer.numberOfTrailingZeros(field)];
+	}
+
+	//
+	//instance vars
+	//
+
+	// the query as written
+	private String text;
+
+	// the predicate tree in evaluation order
+	private Node root;
+
+	// the number of comparisons, each has a result slot per record
+	private int clauseCount;
+
+	//
+	// class vars
+	//
+
+	// results of evaluate
+	public static final int UNKNOWN = 0;
+	public static final int TRUE = 1;
+	public static final int FALSE = 2;
+
+	// fields, passed to SeqRecord.parsed() as they become known
+	public static final int ACCESSION = 1 << 0;
+	public static final int VERSION = 1 << 1;
+	public static final int TYPE = 1 << 2;
+	public static final int DIVISION = 1 << 3;
+	public static final int DATE = 1 << 4;
+	public static final int LENGTH = 1 << 5;
+	public static final int TAXON = 1 << 6;
+	public static final int ORGANISM = 1 << 7;
+	public static final int CLASSIFICATION = 1 << 8;
+	public static final int COMMENT = 1 << 9;
+	public static final int COMMENTCLASS = 1 << 10;
+	public static final int COMMENTCONTACT = 1 << 11;
+	public static final int DESCRIPTION = 1 << 12;
+	public static final int ALL = (1 << 13) - 1;
+
+	// the names of the fields by bit
+	private static final String[] FIELDNAMES = { "accession", "version",
+		"type", "division", "date", "length", "taxon", "organism",
+		"classification", "comment", "commentclass", "commentcontact",
+		"description" };
+
+	// numeric fields, and fields that may be long text
+	private static final int NUMERIC = DATE | LENGTH | TAXON;
+	private static final int TEXT = ORGANISM | CLASSIFICATION | COMMENT |
+		DESCRIPTION;
+
+	private static final List<String> OPERATORS = Arrays.asList(
+		new String[] { "=", "!=", "<", "<=", ">", ">=", "~", "^=" });
+
+	// month abbreviations at multiples of 3
+	private static final String MONTHS =
+		"JANFEBMARAPRMAYJUNJULAUGSEPOCTNOVDEC";
+}
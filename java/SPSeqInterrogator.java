@@ -40,14 +40,15 @@ public class SPSeqInterrogator
         // Throws: nothing
         // Notes:
 
+		// times the test for JFR when the event is enabled
+		SeqRecordFilterEvent event = SeqRecordFilterEvent.start();
+
 		// get the string expression that is mapped to 'organism'
 		String matchString = (String)expressions.get(organism);
 
 		// return true if the string expression matches organism of  's'
-		if((s.getOrganism()).indexOf(matchString) >  -1)
-                        return true;
-                else
-                        return false;
+		return event.finish(s, "SPSeqInterrogator", organism,
+			(s.getOrganism()).indexOf(matchString) > -1);
 	}
 
 	public boolean isOrganismClassif(
@@ -63,14 +64,16 @@ public class SPSeqInterrogator
         // Throws: nothing
         // Notes:
 
+                // times the test for JFR when the event is enabled
+                SeqRecordFilterEvent event = SeqRecordFilterEvent.start();
+
                 // get the string expression that is mapped to 'organism'
                 String matchString = (String)expressions.get(organism);
 
                 // return true if the string expression matches organism of  's'
-                if((((EMBLSeqRecord)s).getOrganismClassif()).indexOf(matchString) >  -1)
-                        return true;
-                else
-                        return false;
+                return event.finish(s, "SPSeqInterrogator", organism,
+                        (((EMBLSeqRecord)s).getOrganismClassif()).indexOf(
+                            matchString) > -1);
         }
 
 
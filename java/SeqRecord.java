@@ -34,6 +34,15 @@ public abstract class SeqRecord
 		// Throws: IO, EOF,  and regular expression syntax exceptions
 		// Notes:
 
+	public abstract String getStartTag();
+		// Purpose: accessor for the tag at the start of the first
+		//          line of each record (e.g. "LOCUS")
+		// Returns: the tag
+		// Assumes: it will be implemented in all subclasses
+		// Effects: nothing
+		// Throws: nothing
+		// Notes: used to find the next record after a damaged one
+
 	public String getLine()
 		// Purpose: accessor for last line read of each record.
 		//          Value will be either end-of-record string for
@@ -97,6 +106,20 @@ public abstract class SeqRecord
 			seqIdVersion.length());
 	}
 
+	public String getBases()
+		// Purpose: accessor for the residues of the sequence
+		// Returns: the sequence upper cased, without position numbers,
+		//          blanks or newlines
+		// Notes: normalized with SequenceUtil the first time it is
+		//        asked for in each record
+	{
+		if (this.bases == null)
+		{
+			this.bases = SequenceUtil.normalize(this.sequence);
+		}
+		return this.bases;
+	}
+
 	public int getSeqLength()
 		// Purpose: accessor for the sequence length
 	{
@@ -109,12 +132,48 @@ public abstract class SeqRecord
 		return this.date;
 	}
 
+	public int getDateCode()
+		// Purpose: accessor for the date as yyyymmdd
+		// Returns: the code or -1 if the record has no date it can
+		//          read, see RecordQuery.dateCode
+	{
+		if (this.date != this.codedDate)
+		{
+			this.dateCode = RecordQuery.dateCode(this.date);
+			this.codedDate = this.date;
+		}
+		return this.dateCode;
+	}
+
+	public int getDivisionCode()
+		// Purpose: accessor for the division as its code in
+		//          FieldDictionary.DIVISIONS, -1 if it is not there
+		// Notes: never adds to the dictionary
+	{
+		return FieldDictionary.DIVISIONS.find(this.division);
+	}
+
+	public int getTypeCode()
+		// Purpose: accessor for the type as its code in
+		//          FieldDictionary.TYPES, -1 if it is not there
+		// Notes: never adds to the dictionary
+	{
+		return FieldDictionary.TYPES.find(this.type);
+	}
+
 	public String getComment()
             // Purpose: accessor for the full COMMENT field
         {
             return this.comment.toString();
 
         }
+	public int getTaxonId()
+	    // Purpose: accessor for the NCBI taxonomy id of the organism
+	    //          the sequence is from
+	    // Returns: the taxon id or -1 when the record does not name one
+	{
+	    return this.taxonId;
+	}
 	public String getCommentClass()
             // Purpose: accessor for the 'Class' field of the COMMENT" field
         {
@@ -125,6 +184,93 @@ public abstract class SeqRecord
 	{
 	    return this.commentContact;
 	}
+	public SeqRecordSnapshot snapshot()
+	    // Purpose: makes an immutable copy of the record just read
+	    // Returns: the copy, which can be kept or handed to another
+	    //          thread while this record reads the next one
+	{
+	    return new SeqRecordSnapshot(this);
+	}
+	public void setQuery(RecordQuery query)
+	    // Purpose: makes readText test each record against 'query', or
+	    //          no record if null
+	    // Notes: readText still reads one record per call, so the
+	    //        reader advances over exactly that record. A record
+	    //        that doesn't match is read to its end without being
+	    //        parsed any further, and isRejected is true; callers
+	    //        skip it and call readText again. Only the fields parsed
+	    //        before the query failed are set in a rejected record,
+	    //        its seqIds may be empty although it is not EOF
+	{
+	    this.query = query;
+	    this.queryResults = query == null ? null :
+		new byte[query.getClauseCount()];
+	    this.rejectedCount = 0;
+	}
+	public RecordQuery getQuery()
+	    // Purpose: accessor for the query, null if none
+	{
+	    return this.query;
+	}
+	public boolean isRejected()
+	    // Purpose: determines whether the query rejected the record
+	    //          just read, see setQuery
+	{
+	    return this.rejected;
+	}
+	public long getRejectedCount()
+	    // Purpose: accessor for the number of records skipped because
+	    //          they did not match the query
+	{
+	    return this.rejectedCount;
+	}
+	protected void startRecord()
+	    // Purpose: forgets the query results of the last record, called
+	    //          by readText at the start of each record
+	{
+	    this.known = 0;
+	    this.rejected = false;
+	    if (this.queryResults != null)
+	    {
+		Arrays.fill(this.queryResults, (byte)RecordQuery.UNKNOWN);
+	    }
+	}
+	protected boolean parsed(int fields)
+	    // Purpose: notes that 'fields' (RecordQuery field bits) of the
+	    //          current record are now parsed and tests the query
+	    // Returns: true if the record does not match, the parser should
+	    //          skip the rest of it
+	{
+	    if (this.query == null || this.rejected)
+	    {
+		return this.rejected;
+	    }
+	    this.known |= fields;
+	    if (this.query.evaluate(this, this.known, this.queryResults) ==
+		RecordQuery.FALSE)
+	    {
+		this.rejected = true;
+		this.rejectedCount++;
+	    }
+	    return this.rejected;
+	}
+	protected static int parseTaxonId(String line, int start)
+	    // Purpose: reads the digits of 'line' starting at 'start', the
+	    //          id of a taxon cross reference
+	    // Returns: the taxon id or -1 if there are no digits
+	{
+	    int id = -1;
+	    for (int i = start; i < line.length(); i++)
+	    {
+		char c = line.charAt(i);
+		if (c < '0' || c > '9')
+		{
+		    break;
+		}
+		id = (id < 0 ? 0 : id * 10) + (c - '0');
+	    }
+	    return id;
+	}
 
 	//
 	//instance vars
@@ -161,6 +307,10 @@ public abstract class SeqRecord
 
 	// The sequence
         protected StringBuffer sequence = new StringBuffer();
+	// The residues of "sequence", null until asked for. Subclasses must
+	// set it back to null whenever "sequence" changes
+	protected String bases = null;
+
 	// The full COMMENT field (for gene traps
 	protected StringBuffer comment = new StringBuffer();
  
@@ -169,5 +319,25 @@ public abstract class SeqRecord
 	
 	// the "Contact" field of the COMMENT field (for gene traps)
 	protected String commentContact = "";
+
+	// "date" as yyyymmdd, worked out again when "date" is not the
+	// String it was worked out from
+	private String codedDate = null;
+	private int dateCode = -1;
+
+	// the NCBI taxonomy id of the organism, -1 if not known
+	protected int taxonId = -1;
+
+	// the query records must match, null for all records
+	private RecordQuery query = null;
+
+	// the fields of the current record parsed so far, the results of
+	// the query's comparisons for it, and whether it was rejected
+	private int known = 0;
+	private byte[] queryResults = null;
+	protected boolean rejected = false;
+
+	// the number of records rejected since the query was set
+	private long rejectedCount = 0;
 }
 
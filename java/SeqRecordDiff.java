@@ -0,0 +1,256 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+
+public class SeqRecordDiff
+{
+	// Concept:
+	//	  IS: an object that finds what changed between two releases of
+	//	      a flat file of sequence records
+	//	 HAS: a sequence record for each release, a change log writer and
+	//	      counts of each kind of change
+	//	DOES: streams both releases side by side and classifies each
+	//	      accession as added, removed, version bumped or content
+	//	      changed, writing one change log line per change
+	// Implementation:
+	//	A merge join on the primary accession (getSeqIds().get(0)),
+	//	so both inputs must be sorted by it, e.g. by SeqRecordSorter.
+	//	Only the current record of each release is held so memory does
+	//	not grow with the input. For accessions in both releases:
+	//	    seqIdVersion differs                -> version bumped
+	//	    same version, sequence checksum or
+	//	    text checksum differs               -> content changed
+	//	The sequence checksum is over the normalized bases, the text
+	//	checksum over the whole record text, both 64 bit FNV-1a. A
+	//	changed text with an unchanged sequence is an annotation change.
+	//	Change log lines are tab separated:
+	//	    A  accession  version                  added
+	//	    R  accession  version                  removed
+	//	    V  accession  old version  new version  version bumped
+	//	    C  accession  version  S|A              sequence or annotation
+	//	Unchanged accessions are not logged.
+
+	//
+	// Constructors
+	//
+
+	public SeqRecordDiff(
+		SeqRecord oldRecord,  // reads the old release
+		SeqRecord newRecord,  // reads the new release
+		Writer changeLog)     // where changes are written
+	{
+		// Purpose: creates a diff of two releases
+		// Assumes: 'oldRecord' and 'newRecord' are different objects of
+		//          the class for the format of each release
+		// Throws: nothing
+
+		this.oldRecord = oldRecord;
+		this.newRecord = newRecord;
+		this.changeLog = changeLog;
+	}
+
+	//
+	// Methods
+	//
+
+	public void diff(BufferedReader oldReader, BufferedReader newReader)
+		throws IOException
+	{
+		// Purpose: compares the old release in 'oldReader' with the new
+		//          release in 'newReader'
+		// Returns: nothing
+		// Assumes: both releases are sorted by primary accession
+		// Effects: writes the change log, sets the counts, reads both
+		//          readers to EOF
+		// Throws: IOException if a release can't be read or is not
+		//         sorted
+
+		String oldId = next(this.oldRecord, oldReader, null);
+		String newId = next(this.newRecord, newReader, null);
+		while (oldId != null || newId != null)
+		{
+			int order;
+			if (oldId == null)
+			{
+				order = 1;
+			}
+			else if (newId == null)
+			{
+				order = -1;
+			}
+			else
+			{
+				order = oldId.compareTo(newId);
+			}
+
+			if (order < 0)
+			{
+				log(REMOVED, oldId, this.oldRecord.getVersion(), null);
+				this.removedCount++;
+				oldId = next(this.oldRecord, oldReader, oldId);
+			}
+			else if (order > 0)
+			{
+				log(ADDED, newId, this.newRecord.getVersion(), null);
+				this.addedCount++;
+				newId = next(this.newRecord, newReader, newId);
+			}
+			else
+			{
+				compare(oldId);
+				oldId = next(this.oldRecord, oldReader, oldId);
+				newId = next(this.newRecord, newReader, newId);
+			}
+		}
+		this.changeLog.flush();
+	}
+
+	public long getAddedCount()
+		// Purpose: accessor for the number of accessions added
+	{
+		return this.addedCount;
+	}
+
+	public long getRemovedCount()
+		// Purpose: accessor for the number of accessions removed
+	{
+		return this.removedCount;
+	}
+
+	public long getVersionCount()
+		// Purpose: accessor for the number of accessions whose version
+		//          changed
+	{
+		return this.versionCount;
+	}
+
+	public long getChangedCount()
+		// Purpose: accessor for the number of accessions whose content
+		//          changed without a new version
+	{
+		return this.changedCount;
+	}
+
+	public long getUnchangedCount()
+		// Purpose: accessor for the number of accessions that did not
+		//          change
+	{
+		return this.unchangedCount;
+	}
+
+	private void compare(String id)
+		throws IOException
+	{
+		// Purpose: compares the old and new records of accession 'id'
+
+		String oldVersion = this.oldRecord.getVersion();
+		String newVersion = this.newRecord.getVersion();
+		if (!oldVersion.equals(newVersion))
+		{
+			log(VERSION, id, oldVersion, newVersion);
+			this.versionCount++;
+		}
+		else if (checksum(this.oldRecord.getBases()) !=
+			 checksum(this.newRecord.getBases()))
+		{
+			log(CHANGED, id, newVersion, SEQUENCE);
+			this.changedCount++;
+		}
+		else if (checksum(this.oldRecord.getText()) !=
+			 checksum(this.newRecord.getText()))
+		{
+			log(CHANGED, id, newVersion, ANNOTATION);
+			this.changedCount++;
+		}
+		else
+		{
+			this.unchangedCount++;
+		}
+	}
+
+	private static String next(SeqRecord record, BufferedReader reader,
+				   String lastId)
+		throws IOException
+	{
+		// Purpose: reads the next record of a release into 'record'
+		// Returns: its primary accession, or null at EOF
+		// Throws: IOException if the accession sorts before 'lastId'
+
+		if (record.getLine() == null)
+		{
+			// the last record was at EOF
+			return null;
+		}
+		// skip the records the query of 'record' rejects
+		do
+		{
+			record.readText(reader);
+		}
+		while (record.isRejected() && record.getLine() != null);
+		if (record.isRejected() || record.getSeqIds().isEmpty())
+		{
+			return null;
+		}
+		String id = (String)record.getSeqIds().get(0);
+		if (lastId != null && id.compareTo(lastId) < 0)
+		{
+			throw new IOException("release is not sorted by accession: " +
+				id + " follows " + lastId);
+		}
+		return id;
+	}
+
+	private void log(String change, String id, String version,
+			 String detail)
+		throws IOException
+	{
+		this.changeLog.write(change);
+		this.changeLog.write('\t');
+		this.changeLog.write(id);
+		this.changeLog.write('\t');
+		this.changeLog.write(version);
+		if (detail != null)
+		{
+			this.changeLog.write('\t');
+			this.changeLog.write(detail);
+		}
+		this.changeLog.write('\n');
+	}
+
+	private static long checksum(String text)
+		// Purpose: 64 bit FNV-1a checksum of 'text'
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++)
+		{
+			hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the current record of each release
+	private SeqRecord oldRecord;
+	private SeqRecord newRecord;
+
+	// where changes are written
+	private Writer changeLog;
+
+	// number of each kind of change
+	private long addedCount = 0;
+	private long removedCount = 0;
+	private long versionCount = 0;
+	private long changedCount = 0;
+	private long unchangedCount = 0;
+
+	// change log codes
+	private static final String ADDED = "A";
+	private static final String REMOVED = "R";
+	private static final String VERSION = "V";
+	private static final String CHANGED = "C";
+	private static final String SEQUENCE = "S";
+	private static final String ANNOTATION = "A";
+}
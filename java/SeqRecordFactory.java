@@ -0,0 +1,79 @@
+package org.jax.mgi.bio.seqrecord;
+
+public class SeqRecordFactory
+{
+	// Concept:
+	//	  IS: an object that creates the sequence record for a flat
+	//	      file format named in a manifest or on a command line
+	//	 HAS: the names of the formats
+	//	DOES: Given a format name, creates an empty sequence record that
+	//	      reads that format
+	// Implementation:
+	//	Format names are matched ignoring case:
+	//	    genbank  GBSeqRecord
+	//	    embl     EMBLSeqRecord
+	//	    fasta    FASTASeqRecord
+	//	    gbfasta  GBFASTASeqRecord
+
+	//
+	// Methods
+	//
+
+	public static SeqRecord create(String format)
+	{
+		// Purpose: creates a sequence record for 'format'
+		// Returns: the new record
+		// Throws: IllegalArgumentException if 'format' is not known
+
+		if (GENBANK.equalsIgnoreCase(format))
+		{
+			return new GBSeqRecord();
+		}
+		else if (EMBL.equalsIgnoreCase(format))
+		{
+			return new EMBLSeqRecord();
+		}
+		else if (FASTA.equalsIgnoreCase(format))
+		{
+			return new FASTASeqRecord();
+		}
+		else if (GBFASTA.equalsIgnoreCase(format))
+		{
+			return new GBFASTASeqRecord();
+		}
+		throw new IllegalArgumentException("unknown format " + format);
+	}
+
+	public static String getFormat(SeqRecord record)
+	{
+		// Purpose: finds the format name of 'record'
+		// Returns: the name, or the class name for other records
+
+		if (record instanceof GBSeqRecord)
+		{
+			return GENBANK;
+		}
+		else if (record instanceof EMBLSeqRecord)
+		{
+			return EMBL;
+		}
+		else if (record instanceof GBFASTASeqRecord)
+		{
+			return GBFASTA;
+		}
+		else if (record instanceof FASTASeqRecord)
+		{
+			return FASTA;
+		}
+		return record.getClass().getName();
+	}
+
+	//
+	// class vars
+	//
+
+	public static final String GENBANK = "genbank";
+	public static final String EMBL = "embl";
+	public static final String FASTA = "fasta";
+	public static final String GBFASTA = "gbfasta";
+}
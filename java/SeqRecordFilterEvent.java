@@ -0,0 +1,88 @@
+package org.jax.mgi.bio.seqrecord;
+
+import jdk.jfr.*;
+
+@Name("org.jax.mgi.bio.seqrecord.Filter")
+@Label("Sequence Record Filter")
+@Category({ "MGI", "Sequence Records" })
+@Description("An interrogator test of a sequence record that took longer " +
+	"than the threshold")
+@Enabled(false)
+@Threshold("100 us")
+@StackTrace(false)
+public class SeqRecordFilterEvent extends Event
+{
+	// Concept:
+	//	  IS: a JDK Flight Recorder event for one interrogator test of
+	//	      a sequence record (e.g. isOrganism)
+	//	 HAS: the format and primary accession of the record, the
+	//	      interrogator, the controlled vocabulary term and the
+	//	      result; the event duration is the time of the test
+	//	DOES: is committed by GBSeqInterrogator, SPSeqInterrogator and
+	//	      TaxonomyInterrogator for tests slower than the threshold
+	// Implementation:
+	//	Disabled by default, see SeqRecordParseEvent.
+
+	//
+	// Methods
+	//
+
+	static SeqRecordFilterEvent start()
+	{
+		// Purpose: starts timing a test
+		// Returns: the event, to be passed the result when known
+
+		SeqRecordFilterEvent event = new SeqRecordFilterEvent();
+		if (event.isEnabled())
+		{
+			event.begin();
+		}
+		return event;
+	}
+
+	boolean finish(SeqRecord record, String interrogator, String term,
+		       boolean result)
+	{
+		// Purpose: stops timing and commits the event if the test took
+		//          longer than the threshold
+		// Returns: 'result', so a test can end with
+		//          "return event.finish(s, ..., result);"
+
+		if (!isEnabled())
+		{
+			return result;
+		}
+		end();
+		if (shouldCommit())
+		{
+			this.format = SeqRecordFactory.getFormat(record);
+			this.accession = record.getSeqIds().isEmpty() ? null :
+				(String)record.getSeqIds().get(0);
+			this.interrogator = interrogator;
+			this.term = term;
+			this.result = result;
+			commit();
+		}
+		return result;
+	}
+
+	//
+	//instance vars
+	//
+
+	@Label("Format")
+	String format;
+
+	@Label("Primary Accession")
+	String accession;
+
+	@Label("Interrogator")
+	String interrogator;
+
+	@Label("Term")
+	@Description("The controlled vocabulary term tested, e.g. mouse")
+	String term;
+
+	@Label("Result")
+	boolean result;
+}
@@ -0,0 +1,93 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import jdk.jfr.*;
+
+@Name("org.jax.mgi.bio.seqrecord.Parse")
+@Label("Sequence Record Parse")
+@Category({ "MGI", "Sequence Records" })
+@Description("A sequence record that took longer than the threshold " +
+	"to read with readText")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+public class SeqRecordParseEvent extends Event
+{
+	// Concept:
+	//	  IS: a JDK Flight Recorder event for one call of readText
+	//	 HAS: the format, primary accession, byte offset and length of
+	//	      the record and the length of its sequence; the event
+	//	      duration is the parse time
+	//	DOES: is committed by the readText methods of GBSeqRecord,
+	//	      EMBLSeqRecord and FASTASeqRecord for records slower than
+	//	      the threshold
+	// Implementation:
+	//	Disabled by default. When the event is disabled isEnabled() is
+	//	false and nothing is timed or copied, so the cost is one small
+	//	allocation the JIT removes. Enable it in a recording, e.g.
+	//	    jfr configure org.jax.mgi.bio.seqrecord.Parse#enabled=true
+	//	        org.jax.mgi.bio.seqrecord.Parse#threshold=5ms
+	//	or in the event settings of JMC. The byte offset is known only
+	//	when the reader is a PositionedReader, otherwise it is -1.
+
+	//
+	// Methods
+	//
+
+	static SeqRecordParseEvent start(BufferedReader reader)
+	{
+		// Purpose: starts timing a readText on 'reader'
+		// Returns: the event, to be passed the record when it is read
+
+		SeqRecordParseEvent event = new SeqRecordParseEvent();
+		if (event.isEnabled())
+		{
+			event.offset = reader instanceof PositionedReader ?
+				((PositionedReader)reader).getPosition() : -1;
+			event.begin();
+		}
+		return event;
+	}
+
+	void finish(SeqRecord record)
+	{
+		// Purpose: stops timing and commits the event for 'record' if
+		//          it took longer than the threshold
+
+		if (!isEnabled())
+		{
+			return;
+		}
+		end();
+		if (shouldCommit())
+		{
+			this.format = SeqRecordFactory.getFormat(record);
+			this.accession = record.getSeqIds().isEmpty() ? null :
+				(String)record.getSeqIds().get(0);
+			this.recordLength = record.text.length();
+			this.sequenceLength = record.getSeqLength();
+			commit();
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	@Label("Format")
+	String format;
+
+	@Label("Primary Accession")
+	String accession;
+
+	@Label("Byte Offset")
+	@Description("Offset in the file where readText started, or -1")
+	long offset;
+
+	@Label("Record Length")
+	@DataAmount(DataAmount.BYTES)
+	long recordLength;
+
+	@Label("Sequence Length")
+	long sequenceLength;
+}
@@ -0,0 +1,72 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+
+public class SeqRecordParseException extends IOException
+{
+	// Concept:
+	//	  IS: an exception for a sequence record that could not be
+	//	      parsed
+	//	 HAS: the file and the byte range of the record, and the
+	//	      exception thrown by the parser
+	//	DOES: reports where the damaged record is so it can be found
+	//	      and fixed in the input
+	// Implementation:
+
+	//
+	// Constructors
+	//
+
+	public SeqRecordParseException(
+		String file,        // the file being read
+		long start,         // offset of the start of the record
+		long end,           // offset just past the end of the record
+		Throwable cause)    // what the parser threw
+	{
+		// Purpose: creates an exception for bytes 'start' to 'end' of
+		//          'file'
+		// Throws: nothing
+
+		super(file + " bytes " + start + "-" + end + ": " + cause,
+		      cause);
+		this.file = file;
+		this.start = start;
+		this.end = end;
+	}
+
+	//
+	// Methods
+	//
+
+	public String getFile()
+		// Purpose: accessor for the file of the damaged record
+	{
+		return this.file;
+	}
+
+	public long getStart()
+		// Purpose: accessor for the byte offset of the record start
+	{
+		return this.start;
+	}
+
+	public long getEnd()
+		// Purpose: accessor for the byte offset just past the record
+	{
+		return this.end;
+	}
+
+	//
+	//instance vars
+	//
+
+	private String file;
+	private long start;
+	private long end;
+
+	//
+	// class vars
+	//
+
+	private static final long serialVersionUID = 1L;
+}
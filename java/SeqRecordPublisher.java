@@ -0,0 +1,405 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SeqRecordPublisher
+	implements Flow.Publisher<SeqRecord>
+{
+	// Concept:
+	//	  IS: a reactive streams publisher of the records of a file
+	//	 HAS: a format, a file, an optional query and an Executor
+	//	DOES: for each subscriber, reads and parses the records of the
+	//	      file one at a time as the subscriber requests them, and
+	//	      stops reading and closes the file when it cancels
+	// Implementation:
+	//	Cold: each subscription opens the file and reads it from the
+	//	start with a record of its own. Each record is a new SeqRecord,
+	//	so a subscriber may keep it. Nothing is read ahead of demand.
+	//	All signals to a subscriber are made by one drain task at a
+	//	time on the Executor: request, cancel and subscribe only count
+	//	a change in "work" and start the task if it is not running,
+	//	so onNext is never called from inside request and signals are
+	//	serial (Reactive Streams rules 1.3, 3.3). Demand is summed up
+	//	to Long.MAX_VALUE, which means unbounded (3.17), and a request
+	//	of 0 or less ends the subscription with IllegalArgumentException
+	//	(3.9). The task gives up its thread after BATCHSIZE records and
+	//	queues itself again, so many subscriptions can share a pool.
+	//	After cancel the file is closed once the record being read, if
+	//	any, is done and no more signals are made (3.7, 3.13).
+
+	//
+	// Constructors
+	//
+
+	public SeqRecordPublisher(String format, String file)
+	{
+		// Purpose: creates a publisher of the 'format' records of
+		//          'file' which reads on the common ForkJoinPool
+		// Throws: IllegalArgumentException if 'format' is not known
+
+		this(format, file, ForkJoinPool.commonPool());
+	}
+
+	public SeqRecordPublisher(String format, String file, Executor executor)
+	{
+		// Purpose: creates a publisher of the 'format' records of
+		//          'file' which reads on 'executor'
+		// Throws: IllegalArgumentException if 'format' is not known
+
+		SeqRecordFactory.create(format);
+		this.format = format;
+		this.file = file;
+		this.executor = executor;
+	}
+
+	//
+	// Methods
+	//
+
+	public void setQuery(RecordQuery query)
+		// Purpose: makes later subscriptions publish only the records
+		//          that match 'query', or every record if null
+	{
+		this.query = query;
+	}
+
+	public void subscribe(Flow.Subscriber<? super SeqRecord> subscriber)
+	{
+		// Purpose: starts a subscription of 'subscriber'
+		// Returns: nothing
+		// Effects: onSubscribe is called on the Executor
+		// Throws: NullPointerException if 'subscriber' is null (1.9)
+
+		if (subscriber == null)
+		{
+			throw new NullPointerException("subscriber is null");
+		}
+		new RecordSubscription(subscriber, this.query).start();
+	}
+
+	public String getFormat()
+	{
+		return this.format;
+	}
+
+	public String getFile()
+	{
+		return this.file;
+	}
+
+	//
+	// Inner classes
+	//
+
+	private class RecordSubscription
+		implements Flow.Subscription, Runnable
+	{
+		// Concept:
+		//	  IS: the subscription of one subscriber
+		//	 HAS: the subscriber, its outstanding demand, the reader
+		//	DOES: reads and publishes records in run, the drain task
+
+		RecordSubscription(Flow.Subscriber<? super SeqRecord> subscriber,
+				   RecordQuery query)
+		{
+			this.subscriber = subscriber;
+			this.query = query;
+		}
+
+		void start()
+		{
+			// Purpose: queues the first run, which calls onSubscribe
+
+			this.work.set(1);
+			schedule();
+		}
+
+		public void request(long n)
+		{
+			if (n <= 0)
+			{
+				this.badRequest = n;
+				this.failed = true;
+			}
+			else
+			{
+				long current;
+				long next;
+				do
+				{
+					current = this.requested.get();
+					if (current == Long.MAX_VALUE)
+					{
+						return;
+					}
+					next = current + n;
+					if (next < 0)
+					{
+						next = Long.MAX_VALUE;
+					}
+				}
+				while (!this.requested.compareAndSet(current, next));
+			}
+			signal();
+		}
+
+		public void cancel()
+		{
+			this.cancelled = true;
+			signal();
+		}
+
+		public void run()
+		{
+			// Purpose: the drain task, see Implementation above
+
+			int missed = 1;
+			if (!this.subscribed)
+			{
+				this.subscribed = true;
+				try
+				{
+					this.subscriber.onSubscribe(this);
+				}
+				catch (Throwable t)
+				{
+					// 2.13, the subscriber is broken
+					this.cancelled = true;
+				}
+			}
+			int batch = 0;
+			while (true)
+			{
+				if (this.done)
+				{
+					return;
+				}
+				if (this.cancelled)
+				{
+					finish(null, false);
+					return;
+				}
+				if (this.failed)
+				{
+					finish(new IllegalArgumentException(
+						"request of " + this.badRequest +
+						" records, must be positive (rule 3.9)"), true);
+					return;
+				}
+
+				long demand = this.requested.get();
+				long emitted = 0;
+				while (emitted != demand && !this.cancelled &&
+				       !this.failed)
+				{
+					if (batch == BATCHSIZE)
+					{
+						// let other tasks use the thread
+						consume(demand, emitted);
+						schedule();
+						return;
+					}
+					SeqRecord record;
+					try
+					{
+						record = next();
+					}
+					catch (Throwable t)
+					{
+						finish(t, true);
+						return;
+					}
+					if (record == null)
+					{
+						finish(null, true);
+						return;
+					}
+					try
+					{
+						this.subscriber.onNext(record);
+					}
+					catch (Throwable t)
+					{
+						// 2.13, the subscriber is broken
+						this.cancelled = true;
+					}
+					emitted++;
+					batch++;
+					if (this.atEnd && !this.cancelled)
+					{
+						// complete without waiting for more demand
+						finish(null, true);
+						return;
+					}
+				}
+				consume(demand, emitted);
+
+				missed = this.work.addAndGet(-missed);
+				if (missed == 0)
+				{
+					return;
+				}
+			}
+		}
+
+		private void consume(long demand, long emitted)
+		{
+			// Purpose: takes 'emitted' records off the demand, unless
+			//          it is unbounded
+
+			if (emitted != 0 && demand != Long.MAX_VALUE)
+			{
+				this.requested.addAndGet(-emitted);
+			}
+		}
+
+		private SeqRecord next()
+			throws IOException
+		{
+			// Purpose: reads the next record, opening the file first
+			// Returns: the record or null at EOF
+
+			if (this.reader == null)
+			{
+				this.reader = new PositionedReader(file);
+			}
+			if (this.atEnd)
+			{
+				return null;
+			}
+			SeqRecord record = SeqRecordFactory.create(format);
+			record.setQuery(this.query);
+			// skip the records the query rejects
+			do
+			{
+				record.readText(this.reader);
+			}
+			while (record.isRejected() && record.getLine() != null);
+			if (record.isRejected() || record.getSeqIds().isEmpty())
+			{
+				return null;
+			}
+			// the record that reaches EOF is the last one
+			this.atEnd = record.getLine() == null;
+			return record;
+		}
+
+		private void finish(Throwable error, boolean signal)
+		{
+			// Purpose: ends the subscription, closing the file and
+			//          calling onComplete or onError if 'signal'
+
+			this.done = true;
+			Flow.Subscriber<? super SeqRecord> to = this.subscriber;
+			// 3.13, drop the subscriber
+			this.subscriber = null;
+			if (this.reader != null)
+			{
+				try
+				{
+					this.reader.close();
+				}
+				catch (IOException e)
+				{
+					if (error == null)
+					{
+						error = e;
+					}
+				}
+				this.reader = null;
+			}
+			if (!signal || to == null)
+			{
+				return;
+			}
+			try
+			{
+				if (error == null)
+				{
+					to.onComplete();
+				}
+				else
+				{
+					to.onError(error);
+				}
+			}
+			catch (Throwable t)
+			{
+				// 2.13, nothing more can be signalled
+			}
+		}
+
+		private void signal()
+		{
+			// Purpose: runs the drain task unless it is running, in
+			//          which case it goes round once more
+
+			if (this.work.getAndIncrement() == 0)
+			{
+				schedule();
+			}
+		}
+
+		private void schedule()
+		{
+			try
+			{
+				executor.execute(this);
+			}
+			catch (RuntimeException e)
+			{
+				// the executor is shut down or full
+				Flow.Subscriber<? super SeqRecord> to = this.subscriber;
+				if (!this.subscribed && to != null)
+				{
+					this.subscribed = true;
+					to.onSubscribe(this);
+				}
+				finish(e, true);
+			}
+		}
+
+		//instance vars
+
+		private volatile Flow.Subscriber<? super SeqRecord> subscriber;
+		private final RecordQuery query;
+
+		// outstanding demand, Long.MAX_VALUE for unbounded
+		private final AtomicLong requested = new AtomicLong();
+
+		// signals not yet seen by the drain task, 0 when it is idle
+		private final AtomicInteger work = new AtomicInteger();
+
+		private volatile boolean cancelled = false;
+		// set by a request of 0 or less, "badRequest" is the amount
+		private volatile boolean failed = false;
+		private volatile long badRequest = 0;
+
+		// only used by the drain task
+		private boolean subscribed = false;
+		private boolean done = false;
+		private boolean atEnd = false;
+		private PositionedReader reader = null;
+	}
+
+	//
+	//instance vars
+	//
+
+	private final String format;
+	private final String file;
+	private final Executor executor;
+	private volatile RecordQuery query = null;
+
+	//
+	// class vars
+	//
+
+	// records published before the drain task queues itself again
+	private static final int BATCHSIZE = 256;
+}
@@ -0,0 +1,311 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.util.*;
+
+public final class SeqRecordSnapshot
+{
+	// Concept:
+	//	  IS: an immutable copy of a sequence record as it was read
+	//	 HAS: the fields of SeqRecord as Strings and ints, the lower
+	//	      cased organism and classification, and the fields of the
+	//	      subclass it was taken from (GI id, description)
+	//	DOES: provides the same accessors as SeqRecord without building
+	//	      a String on each call, and can be kept in a cache or
+	//	      handed to other threads without copying
+	// Implementation:
+	//	Made by SeqRecord.snapshot() after readText. Every field is
+	//	final and set in the constructor, so the object is safely
+	//	published to any thread. The normalized bases are made the
+	//	first time they are asked for; a race makes them twice but
+	//	never wrongly, as for String.hashCode.
+	//	Fields a record class does not have are "" (or -1 for numbers).
+	//	The division, type, date, organism and classification are the
+	//	shared copies in FieldDictionary, so many snapshots held at
+	//	once keep one copy of each value.
+
+	//
+	// Constructors
+	//
+
+	SeqRecordSnapshot(SeqRecord record)
+	{
+		// Purpose: copies 'record'
+		// Throws: nothing
+
+		this(record, true);
+	}
+
+	SeqRecordSnapshot(SeqRecord record, boolean withText)
+	{
+		// Purpose: copies 'record', with its text "" unless 'withText'
+		// Throws: nothing
+		// Notes: for readers that only use the fields, such as
+		//        BulkLoadWriter, the text is most of the copying.
+		//        No field read here copies the text either: the
+		//        taxon id is parsed by readText in every format
+
+		this.format = SeqRecordFactory.getFormat(record);
+		String[] ids = new String[record.seqIds.size()];
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = (String)record.seqIds.elementAt(i);
+		}
+		this.seqIds = Collections.unmodifiableList(Arrays.asList(ids));
+		this.version = record.seqIdVersion;
+		this.type = FieldDictionary.TYPES.intern(record.type);
+		this.division = FieldDictionary.DIVISIONS.intern(record.division);
+		this.date = FieldDictionary.DATES.intern(record.date);
+		this.dateCode = record.getDateCode();
+		this.seqLength = record.seqLength;
+		this.taxonId = record.getTaxonId();
+		this.text = withText ? record.text.toString() : "";
+		this.sequence = record.sequence.toString();
+		this.organism = FieldDictionary.LINEAGES.intern(
+			record.organism.toString().toLowerCase());
+		this.comment = record.comment.toString();
+		this.commentClass = record.commentClass;
+		this.commentContact = record.commentContact;
+		// normalized already if someone asked
+		this.bases = record.bases;
+
+		String classification = this.organism;
+		String genInfoId = "";
+		String description = "";
+		if (record instanceof EMBLSeqRecord)
+		{
+			classification = FieldDictionary.LINEAGES.intern(
+				((EMBLSeqRecord)record).getOrganismClassif());
+		}
+		else if (record instanceof GBSeqRecord)
+		{
+			genInfoId = ((GBSeqRecord)record).getGenInfoId();
+		}
+		else if (record instanceof FASTASeqRecord)
+		{
+			description = ((FASTASeqRecord)record).getDescription();
+			if (record instanceof GBFASTASeqRecord)
+			{
+				genInfoId = ((GBFASTASeqRecord)record).getGenInfoId();
+			}
+		}
+		this.classification = classification;
+		this.genInfoId = genInfoId == null ? "" : genInfoId;
+		this.description = description == null ? "" : description;
+	}
+
+	private SeqRecordSnapshot(SeqRecordSnapshot record, String text,
+				  String sequence, String bases)
+	{
+		// Purpose: copies 'record' with other text and sequence, see
+		//          withContent
+		// Throws: nothing
+
+		this.format = record.format;
+		this.seqIds = record.seqIds;
+		this.version = record.version;
+		this.type = record.type;
+		this.division = record.division;
+		this.date = record.date;
+		this.dateCode = record.dateCode;
+		this.seqLength = record.seqLength;
+		this.taxonId = record.taxonId;
+		this.text = text;
+		this.sequence = sequence;
+		this.organism = record.organism;
+		this.classification = record.classification;
+		this.comment = record.comment;
+		this.commentClass = record.commentClass;
+		this.commentContact = record.commentContact;
+		this.genInfoId = record.genInfoId;
+		this.description = record.description;
+		this.bases = bases;
+	}
+
+	//
+	// Methods
+	//
+
+	public String getFormat()
+		// Purpose: accessor for the format name, see SeqRecordFactory
+	{
+		return this.format;
+	}
+
+	public List<String> getSeqIds()
+		// Purpose: accessor for the seqIds, the primary one first
+		// Returns: an unmodifiable list
+	{
+		return this.seqIds;
+	}
+
+	public String getPrimaryId()
+		// Purpose: accessor for the primary seqId
+		// Returns: the seqId or null if the record had none
+	{
+		return this.seqIds.isEmpty() ? null : this.seqIds.get(0);
+	}
+
+	public String getVersion()
+		// Purpose: accessor for the seqId + '.' + version, or ""
+	{
+		return this.version;
+	}
+
+	public String getVersionNumber()
+		// Purpose: accessor for the version number after the '.'
+	{
+		return this.version.substring(this.version.indexOf('.') + 1);
+	}
+
+	public String getType()
+	{
+		return this.type;
+	}
+
+	public String getDivision()
+	{
+		return this.division;
+	}
+
+	public String getDate()
+	{
+		return this.date;
+	}
+
+	public int getDateCode()
+		// Purpose: accessor for the date as yyyymmdd, -1 if not known
+	{
+		return this.dateCode;
+	}
+
+	public int getDivisionCode()
+		// Purpose: accessor for the code of the division in
+		//          FieldDictionary.DIVISIONS, -1 if it is not there
+	{
+		return FieldDictionary.DIVISIONS.find(this.division);
+	}
+
+	public int getTypeCode()
+		// Purpose: accessor for the code of the type in
+		//          FieldDictionary.TYPES, -1 if it is not there
+	{
+		return FieldDictionary.TYPES.find(this.type);
+	}
+
+	public int getSeqLength()
+	{
+		return this.seqLength;
+	}
+
+	public int getTaxonId()
+		// Purpose: accessor for the NCBI taxon id, -1 if not known
+	{
+		return this.taxonId;
+	}
+
+	public String getText()
+		// Purpose: accessor for the text of the whole record
+	{
+		return this.text;
+	}
+
+	public String getSequence()
+		// Purpose: accessor for the sequence as it was in the record
+	{
+		return this.sequence;
+	}
+
+	public String getBases()
+		// Purpose: accessor for the residues of the sequence, upper
+		//          cased without position numbers, blanks or newlines
+	{
+		String residues = this.bases;
+		if (residues == null)
+		{
+			residues = SequenceUtil.normalize(this.sequence);
+			this.bases = residues;
+		}
+		return residues;
+	}
+
+	public String getOrganism()
+		// Purpose: accessor for the organism, lower cased as by
+		//          SeqRecord.getOrganism
+	{
+		return this.organism;
+	}
+
+	public String getOrganismClassif()
+		// Purpose: accessor for the organism classification, lower
+		//          cased. For GenBank records this is the organism,
+		//          which holds the classification lines
+	{
+		return this.classification;
+	}
+
+	public String getComment()
+	{
+		return this.comment;
+	}
+
+	public String getCommentClass()
+	{
+		return this.commentClass;
+	}
+
+	public String getCommentContact()
+	{
+		return this.commentContact;
+	}
+
+	public String getGenInfoId()
+		// Purpose: accessor for the GI id of GenBank and GenBank FASTA
+		//          records
+	{
+		return this.genInfoId;
+	}
+
+	public String getDescription()
+		// Purpose: accessor for the description of FASTA records
+	{
+		return this.description;
+	}
+
+	SeqRecordSnapshot withContent(String text, String sequence,
+				      String bases)
+	{
+		// Purpose: copies this snapshot with 'text', 'sequence' and its
+		//          normalized 'bases' in place of its own
+		// Returns: the copy
+		// Notes: used by RecordCache, which keeps the other fields and
+		//        the content apart
+
+		return new SeqRecordSnapshot(this, text, sequence, bases);
+	}
+
+	//
+	//instance vars
+	//
+
+	private final String format;
+	private final List<String> seqIds;
+	private final String version;
+	private final String type;
+	private final String division;
+	private final String date;
+	private final int dateCode;
+	private final int seqLength;
+	private final int taxonId;
+	private final String text;
+	private final String sequence;
+	private final String organism;
+	private final String classification;
+	private final String comment;
+	private final String commentClass;
+	private final String commentContact;
+	private final String genInfoId;
+	private final String description;
+
+	// normalized "sequence", null until asked for
+	private String bases;
+}
@@ -0,0 +1,549 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class SeqRecordSorter
+{
+	// Concept:
+	//	  IS: an object that sorts the records of a flat file by primary
+	//	      accession (getSeqIds().get(0)) within a memory budget
+	//	 HAS: a sequence record for the format of the file, a memory
+	//	      budget, a directory for temporary files and a pool of
+	//	      threads
+	//	DOES: writes either a sorted index of the records, one
+	//	      "accession<TAB>offset<TAB>length" line per record, or a copy
+	//	      of the file with its records in sorted order
+	// Implementation:
+	//	An external merge sort of (accession, byte range) keys, the
+	//	record text itself is never held. The file is read once through
+	//	the parser. Keys are collected into a run until the run reaches
+	//	its share of the budget, then the run is sorted and spilled to
+	//	a temporary file on a pool thread while the next run is read.
+	//	At most "threads" runs are spilling at once so memory stays
+	//	within the budget. The runs are then merged in one k-way pass
+	//	with a priority queue. A sorted copy is written by transferring
+	//	each record's bytes from the input in key order. Records with
+	//	the same accession keep their input order. When the record has
+	//	a query (see SeqRecord.setQuery) the records it rejects are
+	//	left out of the index and the copy.
+
+	//
+	// Constructors
+	//
+
+	public SeqRecordSorter(
+		SeqRecord record,    // reads the records of the input
+		long memoryBudget,   // bytes the sort may use for keys
+		String tempDir,      // where runs are spilled
+		int threads)         // threads sorting and spilling runs
+	{
+		// Purpose: creates a sorter
+		// Throws: nothing
+
+		this.record = record;
+		this.memoryBudget = memoryBudget;
+		this.tempDir = new File(tempDir);
+		this.threads = Math.max(1, threads);
+	}
+
+	//
+	// Methods
+	//
+
+	public void sortIndex(String inputFile, String indexFile)
+		throws IOException
+	{
+		// Purpose: writes the sorted index of 'inputFile' to 'indexFile'
+		// Returns: nothing
+		// Throws: IOException if a file can't be read or written
+
+		Vector<File> runs = spillRuns(inputFile);
+		try
+		{
+			Writer out = new BufferedWriter(new FileWriter(indexFile),
+							1 << 16);
+			try
+			{
+				Merger merger = new Merger(runs);
+				try
+				{
+					while (merger.next())
+					{
+						out.write(merger.accession);
+						out.write('\t');
+						out.write(Long.toString(merger.start));
+						out.write('\t');
+						out.write(Long.toString(merger.length));
+						out.write('\n');
+					}
+				}
+				finally
+				{
+					merger.close();
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		finally
+		{
+			delete(runs);
+		}
+	}
+
+	public void sortFile(String inputFile, String outputFile)
+		throws IOException
+	{
+		// Purpose: writes the records of 'inputFile' to 'outputFile' in
+		//          sorted order
+		// Returns: nothing
+		// Throws: IOException if a file can't be read or written
+		// Notes: text before the first record is not copied
+
+		Vector<File> runs = spillRuns(inputFile);
+		try
+		{
+			FileChannel in =
+				new RandomAccessFile(inputFile, "r").getChannel();
+			try
+			{
+				FileChannel out =
+					new FileOutputStream(outputFile).getChannel();
+				try
+				{
+					Merger merger = new Merger(runs);
+					try
+					{
+						copy(merger, in, out);
+					}
+					finally
+					{
+						merger.close();
+					}
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		finally
+		{
+			delete(runs);
+		}
+	}
+
+	private static void copy(Merger merger, FileChannel in,
+				 FileChannel out)
+		throws IOException
+	{
+		// Purpose: copies the byte range of each key of 'merger' from
+		//          'in' to 'out'
+
+		while (merger.next())
+		{
+			long position = merger.start;
+			long end = merger.start + merger.length;
+			while (position < end)
+			{
+				position += in.transferTo(position, end - position,
+							  out);
+			}
+		}
+	}
+
+	public long getRecordCount()
+		// Purpose: accessor for the number of records in the last sort
+	{
+		return this.recordCount;
+	}
+
+	public int getRunCount()
+		// Purpose: accessor for the number of runs of the last sort
+	{
+		return this.runCount;
+	}
+
+	private Vector<File> spillRuns(String inputFile)
+		throws IOException
+	{
+		// Purpose: reads the keys of 'inputFile' and spills them in
+		//          sorted runs
+		// Returns: the run files in spill order
+		// Effects: if it fails, waits for the runs being spilled and
+		//          deletes every run file
+
+		// each spilling run and the one being read share the budget
+		long runBudget = this.memoryBudget / (this.threads + 1);
+		final Semaphore spilling = new Semaphore(this.threads);
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		Vector<Future<File>> spilled = new Vector<Future<File>>();
+		Vector<File> runs = new Vector<File>();
+		String startTag = this.record.getStartTag();
+		this.recordCount = 0;
+		boolean done = false;
+
+		try
+		{
+			PositionedReader reader = new ReadAheadReader(inputFile);
+			try
+			{
+				ArrayList<Key> run = new ArrayList<Key>();
+				long runBytes = 0;
+				while (true)
+				{
+					long start = reader.skipTo(startTag);
+					this.record.readText(reader);
+					if (this.record.isRejected())
+					{
+						// not sorted, its bytes are in no range
+						if (this.record.getLine() == null)
+						{
+							break;
+						}
+						continue;
+					}
+					if (this.record.getSeqIds().isEmpty())
+					{
+						break;
+					}
+					String accession =
+						(String)this.record.getSeqIds().get(0);
+					run.add(new Key(accession, start,
+							reader.getPosition() - start,
+							this.recordCount++));
+					runBytes += KEYBYTES + 2 * accession.length();
+					if (runBytes >= runBudget)
+					{
+						spilled.add(spill(pool, spilling, run, runs));
+						run = new ArrayList<Key>();
+						runBytes = 0;
+					}
+					if (this.record.getLine() == null)
+					{
+						break;
+					}
+				}
+				if (!run.isEmpty() || spilled.isEmpty())
+				{
+					spilled.add(spill(pool, spilling, run, runs));
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+
+			for (int i = 0; i < spilled.size(); i++)
+			{
+				spilled.get(i).get();
+			}
+			this.runCount = runs.size();
+			done = true;
+			return runs;
+		}
+		catch (InterruptedException e)
+		{
+			throw new InterruptedIOException(e.toString());
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("spilling a run failed", e.getCause());
+		}
+		finally
+		{
+			pool.shutdown();
+			if (!done)
+			{
+				// a run still spilling would write its file again
+				try
+				{
+					pool.awaitTermination(Long.MAX_VALUE,
+							      TimeUnit.DAYS);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+				delete(runs);
+			}
+		}
+	}
+
+	private Future<File> spill(ExecutorService pool,
+				   final Semaphore spilling,
+				   final ArrayList<Key> run,
+				   Vector<File> runs)
+		throws IOException
+	{
+		// Purpose: sorts and writes 'run' on a pool thread
+		// Returns: the future run file
+		// Effects: adds the run file to 'runs', waits while "threads"
+		//          runs are already spilling
+
+		final File runFile = File.createTempFile("seqsort", ".run",
+							 this.tempDir);
+		runs.add(runFile);
+		// the task releases the permit when it ends
+		spilling.acquireUninterruptibly();
+		try
+		{
+			return pool.submit(new Callable<File>()
+			{
+				public File call()
+					throws IOException
+				{
+					try
+					{
+						Collections.sort(run);
+						DataOutputStream out = new DataOutputStream(
+							new BufferedOutputStream(
+								new FileOutputStream(runFile),
+								1 << 16));
+						try
+						{
+							out.writeInt(run.size());
+							for (int i = 0; i < run.size(); i++)
+							{
+								run.get(i).write(out);
+							}
+						}
+						finally
+						{
+							out.close();
+						}
+						return runFile;
+					}
+					finally
+					{
+						spilling.release();
+					}
+				}
+			});
+		}
+		catch (RuntimeException e)
+		{
+			// the pool would not take the task
+			spilling.release();
+			throw e;
+		}
+	}
+
+	private static void delete(Vector<File> runs)
+	{
+		for (int i = 0; i < runs.size(); i++)
+		{
+			runs.get(i).delete();
+		}
+	}
+
+	private static class Key implements Comparable<Key>
+	{
+		// Concept:
+		//	  IS: the sort key and byte range of one record
+
+		Key(String accession, long start, long length, long sequence)
+		{
+			this.accession = accession;
+			this.start = start;
+			this.length = length;
+			this.sequence = sequence;
+		}
+
+		static Key read(DataInputStream in)
+			throws IOException
+		{
+			return new Key(in.readUTF(), in.readLong(), in.readLong(),
+				       in.readLong());
+		}
+
+		void write(DataOutputStream out)
+			throws IOException
+		{
+			out.writeUTF(this.accession);
+			out.writeLong(this.start);
+			out.writeLong(this.length);
+			out.writeLong(this.sequence);
+		}
+
+		public int compareTo(Key other)
+		{
+			int order = this.accession.compareTo(other.accession);
+			if (order != 0)
+			{
+				return order;
+			}
+			// keep input order for equal accessions
+			return Long.compare(this.sequence, other.sequence);
+		}
+
+		String accession;
+		long start;
+		long length;
+		long sequence;
+	}
+
+	private class Merger
+	{
+		// Concept:
+		//	  IS: a k-way merge of sorted run files
+		//	DOES: returns the keys of all runs in sorted order, the
+		//	      current key is in "accession", "start" and "length"
+
+		Merger(Vector<File> runs)
+			throws IOException
+		{
+			// each run gets an equal share of the budget as buffer
+			int bufferSize = (int)Math.max(4096, Math.min(1 << 16,
+				memoryBudget / Math.max(1, runs.size())));
+			boolean opened = false;
+			try
+			{
+				for (int i = 0; i < runs.size(); i++)
+				{
+					DataInputStream in = new DataInputStream(
+						new BufferedInputStream(
+							new FileInputStream(runs.get(i)),
+							bufferSize));
+					this.inputs.add(in);
+					this.remaining.add(in.readInt());
+					advance(i);
+				}
+				opened = true;
+			}
+			finally
+			{
+				if (!opened)
+				{
+					// close the runs opened so far
+					try
+					{
+						close();
+					}
+					catch (IOException e)
+					{
+						// the first error is the one thrown
+					}
+				}
+			}
+		}
+
+		boolean next()
+			throws IOException
+		{
+			Head head = this.heads.poll();
+			if (head == null)
+			{
+				return false;
+			}
+			this.accession = head.key.accession;
+			this.start = head.key.start;
+			this.length = head.key.length;
+			advance(head.run);
+			return true;
+		}
+
+		void close()
+			throws IOException
+		{
+			// Purpose: closes every run, even if closing one fails
+			// Throws: the first IOException
+
+			IOException error = null;
+			for (int i = 0; i < this.inputs.size(); i++)
+			{
+				try
+				{
+					this.inputs.get(i).close();
+				}
+				catch (IOException e)
+				{
+					if (error == null)
+					{
+						error = e;
+					}
+				}
+			}
+			if (error != null)
+			{
+				throw error;
+			}
+		}
+
+		private void advance(int run)
+			throws IOException
+		{
+			// Purpose: queues the next key of 'run', if any
+
+			int left = this.remaining.get(run);
+			if (left > 0)
+			{
+				this.remaining.set(run, left - 1);
+				this.heads.add(new Head(Key.read(this.inputs.get(run)),
+							run));
+			}
+		}
+
+		String accession;
+		long start;
+		long length;
+
+		private Vector<DataInputStream> inputs =
+			new Vector<DataInputStream>();
+		private Vector<Integer> remaining = new Vector<Integer>();
+		private PriorityQueue<Head> heads = new PriorityQueue<Head>();
+	}
+
+	private static class Head implements Comparable<Head>
+	{
+		// Concept:
+		//	  IS: the next key of one run in the merge, and the run
+
+		Head(Key key, int run)
+		{
+			this.key = key;
+			this.run = run;
+		}
+
+		public int compareTo(Head other)
+		{
+			return this.key.compareTo(other.key);
+		}
+
+		Key key;
+		int run;
+	}
+
+	//
+	//instance vars
+	//
+
+	// reads the records of the input
+	private SeqRecord record;
+
+	// bytes the sort may use for keys
+	private long memoryBudget;
+
+	// where runs are spilled
+	private File tempDir;
+
+	// threads sorting and spilling runs
+	private int threads;
+
+	// number of records and runs of the last sort
+	private long recordCount = 0;
+	private int runCount = 0;
+
+	// estimated heap bytes of a Key and its accession String, not
+	// counting the characters
+	private static final int KEYBYTES = 120;
+}
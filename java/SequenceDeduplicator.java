@@ -0,0 +1,225 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class SequenceDeduplicator
+{
+	// Concept:
+	//	  IS: an object that finds sequence records whose sequence has
+	//	      already been seen under another accession
+	//	 HAS: a SequenceHashTable from sequence hash to canonical
+	//	      accession, a file of canonical accessions, and an optional
+	//	      writer for the duplicate mapping
+	//	DOES: Given a sequence record of any format, hashes its
+	//	      normalized sequence. The first record with a sequence is
+	//	      its canonical record, every later one is a duplicate and
+	//	      is mapped to the canonical accession
+	// Implementation:
+	//	The hash is the first 128 bits of the SHA-256 digest of the
+	//	upper cased residues (SeqRecord.getBases()), so GenBank, EMBL
+	//	and FASTA copies of a sequence match. Canonical accessions are
+	//	appended to the accession file, the table value is the offset
+	//	of the accession in the file shifted left 8 bits plus its
+	//	length. Both files persist so a deduplicator can be reopened
+	//	for the next input. Duplicates are written to the mapping
+	//	writer as "accession<TAB>canonical accession" lines.
+
+	//
+	// Constructors
+	//
+
+	public SequenceDeduplicator(
+		String tableFile,      // the SequenceHashTable file
+		String accessionFile,  // the canonical accession file
+		long capacity,         // the most distinct sequences expected
+		Writer mapping)        // where duplicates are written, may be
+				       // null
+		throws IOException
+	{
+		// Purpose: opens or creates the files of a deduplicator
+		// Throws: IOException if the files can't be opened
+
+		this.table = new SequenceHashTable(tableFile, capacity);
+		this.accessions = new RandomAccessFile(accessionFile, "rw");
+		this.accessionsEnd = this.accessions.length();
+		this.mapping = mapping;
+		try
+		{
+			this.digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every Java platform must provide SHA-256
+			throw new IOException(e.toString());
+		}
+	}
+
+	//
+	// Methods
+	//
+
+	public String add(SeqRecord record)
+		throws IOException
+	{
+		// Purpose: adds the sequence of 'record'
+		// Returns: the canonical accession if the sequence was already
+		//          seen, null if 'record' is now its canonical record
+		//          or has no sequence or seqId
+		// Assumes: nothing
+		// Effects: writes new canonical accessions to the accession
+		//          file and duplicates to the mapping writer
+		// Throws: IOException if the files can't be written
+
+		if (record.getSeqIds().isEmpty())
+		{
+			return null;
+		}
+		return add((String)record.getSeqIds().get(0), record.getBases());
+	}
+
+	public String add(String accession, String bases)
+		throws IOException
+	{
+		// Purpose: adds sequence 'bases' of 'accession'
+		// Returns: as add(SeqRecord)
+		// Assumes: 'bases' is normalized and 'accession' is shorter
+		//          than 256 bytes
+		// Throws: IOException if the files can't be written
+
+		if (bases.length() == 0)
+		{
+			return null;
+		}
+		hash(bases);
+
+		byte[] id = accession.getBytes(StandardCharsets.ISO_8859_1);
+		int idLength = Math.min(id.length, 255);
+		long value = (this.accessionsEnd << 8) | idLength;
+		long canonical = this.table.putIfAbsent(this.high, this.low,
+							value);
+		if (canonical < 0)
+		{
+			this.accessions.seek(this.accessionsEnd);
+			this.accessions.write(id, 0, idLength);
+			this.accessions.write('\n');
+			this.accessionsEnd = this.accessions.getFilePointer();
+			return null;
+		}
+
+		String canonicalAccession = readAccession(canonical);
+		this.duplicateCount++;
+		if (this.mapping != null)
+		{
+			this.mapping.write(accession);
+			this.mapping.write('\t');
+			this.mapping.write(canonicalAccession);
+			this.mapping.write('\n');
+		}
+		return canonicalAccession;
+	}
+
+	public String getCanonical(String bases)
+		throws IOException
+	{
+		// Purpose: looks up the canonical accession of sequence 'bases'
+		// Returns: the accession, or null if the sequence is new
+		// Assumes: 'bases' is normalized
+
+		hash(bases);
+		long canonical = this.table.get(this.high, this.low);
+		return canonical < 0 ? null : readAccession(canonical);
+	}
+
+	public long getSequenceCount()
+		// Purpose: accessor for the number of distinct sequences
+	{
+		return this.table.size();
+	}
+
+	public long getDuplicateCount()
+		// Purpose: accessor for the duplicates found since opening
+	{
+		return this.duplicateCount;
+	}
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: writes everything to disk and closes the files
+
+		this.table.close();
+		this.accessions.close();
+		if (this.mapping != null)
+		{
+			this.mapping.flush();
+		}
+	}
+
+	private void hash(String bases)
+	{
+		// Purpose: sets "high" and "low" to the hash of 'bases'
+		// Notes: characters are fed to the digest through a reused
+		//        byte array, residues are ASCII
+
+		int length = bases.length();
+		for (int start = 0; start < length; start += this.chunk.length)
+		{
+			int count = Math.min(this.chunk.length, length - start);
+			for (int i = 0; i < count; i++)
+			{
+				this.chunk[i] = (byte)bases.charAt(start + i);
+			}
+			this.digest.update(this.chunk, 0, count);
+		}
+		byte[] sum = this.digest.digest();
+		this.high = toLong(sum, 0);
+		this.low = toLong(sum, 8);
+	}
+
+	private String readAccession(long value)
+		throws IOException
+	{
+		// Purpose: reads the canonical accession stored at 'value'
+
+		byte[] id = new byte[(int)(value & 0xff)];
+		this.accessions.seek(value >>> 8);
+		this.accessions.readFully(id);
+		return new String(id, StandardCharsets.ISO_8859_1);
+	}
+
+	private static long toLong(byte[] bytes, int offset)
+	{
+		long value = 0L;
+		for (int i = 0; i < 8; i++)
+		{
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	//
+	//instance vars
+	//
+
+	// sequence hash to canonical accession
+	private SequenceHashTable table;
+
+	// canonical accessions, one per line, and the end of the file
+	private RandomAccessFile accessions;
+	private long accessionsEnd;
+
+	// where duplicates are written, may be null
+	private Writer mapping;
+
+	// duplicates found since opening
+	private long duplicateCount = 0;
+
+	// hashing state reused for every sequence
+	private MessageDigest digest;
+	private byte[] chunk = new byte[8192];
+	private long high;
+	private long low;
+}
@@ -0,0 +1,217 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class SequenceHashTable
+{
+	// Concept:
+	//	  IS: an on-disk hash table from 128 bit sequence hashes to long
+	//	      values
+	//	 HAS: a memory-mapped file of fixed size slots
+	//	DOES: adds a hash with its value unless it is already there, and
+	//	      looks up the value of a hash. Survives restarts because
+	//	      the table is the file
+	// Implementation:
+	//	Open addressing with linear probing over a power of two number
+	//	of slots, so the table is at most half full at its capacity.
+	//	Each slot is the two longs of the hash and the value plus one,
+	//	a stored value of 0 marks an empty slot. The file is mapped
+	//	in segments of 2^25 slots as one mapping can't exceed 2GB.
+	//	Nothing is held on the heap per entry. The table does not grow,
+	//	adding past its capacity throws IllegalStateException.
+
+	//
+	// Constructors
+	//
+
+	public SequenceHashTable(
+		String file,      // the table file, created if it doesn't exist
+		long capacity)    // the most entries the table will hold
+		throws IOException
+	{
+		// Purpose: opens the table in 'file', creating it with room
+		//          for 'capacity' entries if it doesn't exist
+		// Throws: IOException if the file can't be mapped or is not a
+		//         table file
+
+		boolean exists = new File(file).length() > 0;
+		this.channel = new RandomAccessFile(file, "rw").getChannel();
+		this.header = this.channel.map(FileChannel.MapMode.READ_WRITE,
+					       0, HEADERSIZE);
+		if (exists)
+		{
+			if (this.header.getLong(0) != MAGIC)
+			{
+				this.channel.close();
+				throw new IOException(file +
+					" is not a sequence hash table");
+			}
+			this.slotCount = this.header.getLong(8);
+			this.size = this.header.getLong(16);
+		}
+		else
+		{
+			this.slotCount = 1024;
+			while (this.slotCount < capacity * 2)
+			{
+				this.slotCount <<= 1;
+			}
+			this.header.putLong(0, MAGIC);
+			this.header.putLong(8, this.slotCount);
+			this.header.putLong(16, 0L);
+		}
+		this.mask = this.slotCount - 1;
+
+		int segmentCount = (int)((this.slotCount + SEGMENTSLOTS - 1) /
+					 SEGMENTSLOTS);
+		this.segments = new MappedByteBuffer[segmentCount];
+		for (int i = 0; i < segmentCount; i++)
+		{
+			long slots = Math.min(SEGMENTSLOTS,
+				this.slotCount - (long)i * SEGMENTSLOTS);
+			this.segments[i] = this.channel.map(
+				FileChannel.MapMode.READ_WRITE,
+				HEADERSIZE + (long)i * SEGMENTSLOTS * SLOTSIZE,
+				slots * SLOTSIZE);
+		}
+	}
+
+	//
+	// Methods
+	//
+
+	public long putIfAbsent(long high, long low, long value)
+	{
+		// Purpose: adds hash 'high','low' with 'value' unless the hash
+		//          is already in the table
+		// Returns: the value already stored for the hash, or -1 if it
+		//          was added
+		// Assumes: 'value' >= 0
+		// Effects: the table may have a new entry
+		// Throws: IllegalStateException if the table is full
+
+		long slot = mix(high ^ low) & this.mask;
+		while (true)
+		{
+			MappedByteBuffer segment = segment(slot);
+			int offset = offset(slot);
+			long stored = segment.getLong(offset + 16);
+			if (stored == 0L)
+			{
+				if (this.size >= this.slotCount - (this.slotCount >> 2))
+				{
+					throw new IllegalStateException(
+						"sequence hash table is full at " +
+						this.size + " entries");
+				}
+				segment.putLong(offset, high);
+				segment.putLong(offset + 8, low);
+				segment.putLong(offset + 16, value + 1);
+				this.size++;
+				this.header.putLong(16, this.size);
+				return -1L;
+			}
+			if (segment.getLong(offset) == high &&
+			    segment.getLong(offset + 8) == low)
+			{
+				return stored - 1;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	public long get(long high, long low)
+	{
+		// Purpose: looks up the value of hash 'high','low'
+		// Returns: the value, or -1 if the hash is not in the table
+
+		long slot = mix(high ^ low) & this.mask;
+		while (true)
+		{
+			MappedByteBuffer segment = segment(slot);
+			int offset = offset(slot);
+			long stored = segment.getLong(offset + 16);
+			if (stored == 0L)
+			{
+				return -1L;
+			}
+			if (segment.getLong(offset) == high &&
+			    segment.getLong(offset + 8) == low)
+			{
+				return stored - 1;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	public long size()
+		// Purpose: accessor for the number of entries in the table
+	{
+		return this.size;
+	}
+
+	public void force()
+	{
+		// Purpose: writes changes to the table through to disk
+
+		this.header.force();
+		for (int i = 0; i < this.segments.length; i++)
+		{
+			this.segments[i].force();
+		}
+	}
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: writes changes to disk and closes the table
+
+		force();
+		this.channel.close();
+	}
+
+	private MappedByteBuffer segment(long slot)
+	{
+		return this.segments[(int)(slot >>> SEGMENTBITS)];
+	}
+
+	private static int offset(long slot)
+	{
+		return (int)(slot & (SEGMENTSLOTS - 1)) * SLOTSIZE;
+	}
+
+	private static long mix(long h)
+		// Purpose: spreads the bits of 'h' (the MurmurHash3 finalizer)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	//
+	//instance vars
+	//
+
+	private FileChannel channel;
+	private MappedByteBuffer header;
+	private MappedByteBuffer[] segments;
+
+	// number of slots, a power of two, and slotCount - 1
+	private long slotCount;
+	private long mask;
+
+	// number of entries
+	private long size;
+
+	// file layout
+	private static final long MAGIC = 0x5345514841534831L;  // SEQHASH1
+	private static final int HEADERSIZE = 64;
+	private static final int SLOTSIZE = 24;
+	private static final int SEGMENTBITS = 25;
+	private static final long SEGMENTSLOTS = 1L << SEGMENTBITS;
+}
@@ -0,0 +1,373 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class SequenceStore
+{
+	// Concept:
+	//	  IS: a read only view of a compressed sequence store written by
+	//	      SequenceStoreWriter
+	//	 HAS: the index of the store, from accession and from
+	//	      accession.version to index entry, and the memory-mapped
+	//	      block file
+	//	DOES: Given an accession, returns the sequence, its length, or
+	//	      a subsequence, inflating only the blocks that hold the
+	//	      requested residues
+	// Implementation:
+	//	The index is read once when the store is opened, keeping only
+	//	the position and size of each entry; an entry is read again
+	//	from the index file when it is looked up. A plain accession
+	//	finds its last appended entry, "accession.version" finds that
+	//	version even after a newer one was appended. The block file is
+	//	mapped in windows of 2^WINDOWBITS bytes on first use, a block
+	//	never crosses a window (see SequenceStoreWriter). The store is
+	//	a snapshot, sequences appended after it was opened are not seen.
+	//	Lookups may be made from several threads at once.
+
+	//
+	// Constructors
+	//
+
+	public SequenceStore(String base)
+		throws IOException
+	{
+		// Purpose: opens the store 'base'
+		// Throws: IOException if the store can't be read
+
+		this.blocks = new RandomAccessFile(
+			base + SequenceStoreWriter.BLOCKSUFFIX, "r").getChannel();
+		this.index = new RandomAccessFile(
+			base + SequenceStoreWriter.INDEXSUFFIX, "r").getChannel();
+		this.blockSize = this.blocks.size();
+		readIndex(this.index, this.entries);
+	}
+
+	//
+	// Methods
+	//
+
+	public boolean contains(String key)
+		// Purpose: determines whether the store has 'key', an accession
+		//          or accession.version
+	{
+		return this.entries.containsKey(key);
+	}
+
+	public Set<String> getKeys()
+		// Purpose: accessor for the accessions and accession.versions
+		//          in the store
+	{
+		return Collections.unmodifiableSet(this.entries.keySet());
+	}
+
+	public int getLength(String key)
+		throws IOException
+	{
+		// Purpose: finds the length of the sequence of 'key'
+		// Returns: the length, or -1 if 'key' is not in the store
+
+		Entry entry = getEntry(key);
+		return entry == null ? -1 : entry.length;
+	}
+
+	public String getVersion(String key)
+		throws IOException
+	{
+		// Purpose: finds the version stored for 'key'
+		// Returns: the version, or null if 'key' is not in the store
+
+		Entry entry = getEntry(key);
+		return entry == null ? null : entry.version;
+	}
+
+	public String fetch(String key)
+		throws IOException
+	{
+		// Purpose: gets the sequence of 'key'
+		// Returns: the residues, or null if 'key' is not in the store
+
+		Entry entry = getEntry(key);
+		return entry == null ? null : decode(entry, 0, entry.length);
+	}
+
+	public String fetch(String key, int start, int end)
+		throws IOException
+	{
+		// Purpose: gets residues 'start' to 'end' of 'key', counting
+		//          from 1 and including both ends
+		// Returns: the residues, or null if 'key' is not in the store
+		// Throws: IllegalArgumentException if the range is not within
+		//         the sequence
+
+		Entry entry = getEntry(key);
+		if (entry == null)
+		{
+			return null;
+		}
+		if (start < 1 || end > entry.length || start > end + 1)
+		{
+			throw new IllegalArgumentException(key + ":" + start + "-" +
+				end + " is outside 1-" + entry.length);
+		}
+		return decode(entry, start - 1, end);
+	}
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: closes the store
+
+		this.blocks.close();
+		this.index.close();
+	}
+
+	private Entry getEntry(String key)
+		throws IOException
+	{
+		// Purpose: reads the index entry of 'key'
+		// Returns: the entry, or null if 'key' is not in the store
+
+		Long located = this.entries.get(key);
+		if (located == null)
+		{
+			return null;
+		}
+		long position = located.longValue() >>> ENTRYBITS;
+		int size = (int)(located.longValue() & ((1 << ENTRYBITS) - 1));
+		ByteBuffer bytes = ByteBuffer.allocate(size);
+		while (bytes.hasRemaining())
+		{
+			if (this.index.read(bytes, position + bytes.position()) < 0)
+			{
+				throw new EOFException("index entry of " + key);
+			}
+		}
+		DataInputStream in = new DataInputStream(
+			new ByteArrayInputStream(bytes.array()));
+		Entry entry = new Entry();
+		in.readUTF();
+		entry.version = in.readUTF();
+		entry.bits = in.readByte();
+		entry.length = in.readInt();
+		int blockCount = in.readInt();
+		entry.offsets = new long[blockCount];
+		entry.sizes = new int[blockCount];
+		for (int b = 0; b < blockCount; b++)
+		{
+			entry.offsets[b] = in.readLong();
+			entry.sizes[b] = in.readInt();
+		}
+		return entry;
+	}
+
+	private String decode(Entry entry, int from, int to)
+		throws IOException
+	{
+		// Purpose: decodes residues 'from' (0 based) up to but not
+		//          including 'to' of 'entry'
+		// Returns: the residues
+
+		int bits = entry.bits;
+		String alphabet = SequenceStoreWriter.ALPHABETS[bits];
+		int mask = (1 << bits) - 1;
+		char[] residues = new char[to - from];
+		int count = 0;
+		MappedByteBuffer[] mapped = ensureMapped();
+		Inflater inflater = new Inflater();
+		try
+		{
+			int firstBlock = from / SequenceStoreWriter.BLOCKRESIDUES;
+			int lastBlock = (to - 1) / SequenceStoreWriter.BLOCKRESIDUES;
+			for (int b = firstBlock; b <= lastBlock && from < to; b++)
+			{
+				int blockStart = b * SequenceStoreWriter.BLOCKRESIDUES;
+				int blockLength = Math.min(entry.length - blockStart,
+					SequenceStoreWriter.BLOCKRESIDUES);
+				// one spare byte so a code can always be read as a pair
+				byte[] packed = new byte[
+					(int)(((long)blockLength * bits + 7) / 8) + 1];
+
+				long offset = entry.offsets[b];
+				ByteBuffer block = mapped[(int)(offset >>>
+					SequenceStoreWriter.WINDOWBITS)].duplicate();
+				int at = (int)(offset & WINDOWMASK);
+				block.limit(at + entry.sizes[b]).position(at);
+				byte[] compressed = new byte[entry.sizes[b]];
+				block.get(compressed);
+				inflater.reset();
+				inflater.setInput(compressed);
+				int inflated = 0;
+				while (!inflater.finished())
+				{
+					int n = inflater.inflate(packed, inflated,
+						packed.length - inflated);
+					if (n == 0 && (inflater.needsInput() ||
+						       inflater.needsDictionary() ||
+						       inflated == packed.length))
+					{
+						throw new IOException("truncated block " + b +
+							" at " + offset);
+					}
+					inflated += n;
+				}
+
+				int end = Math.min(to, blockStart + blockLength);
+				for (int i = from - blockStart; i < end - blockStart; i++)
+				{
+					int bit = i * bits;
+					int pair = ((packed[bit >>> 3] & 0xff) << 8) |
+						(packed[(bit >>> 3) + 1] & 0xff);
+					residues[count++] = alphabet.charAt(
+						(pair >>> (16 - (bit & 7) - bits)) & mask);
+				}
+				from = end;
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException("bad block: " + e.getMessage());
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return new String(residues, 0, count);
+	}
+
+	private synchronized MappedByteBuffer[] ensureMapped()
+		throws IOException
+	{
+		// Purpose: maps the block file in windows of 2^WINDOWBITS bytes
+		//          the first time it is needed
+		// Returns: the windows
+
+		if (this.mapped == null)
+		{
+			long window = 1L << SequenceStoreWriter.WINDOWBITS;
+			int count = (int)((this.blockSize + window - 1) / window);
+			MappedByteBuffer[] windows = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++)
+			{
+				long start = i * window;
+				windows[i] = this.blocks.map(FileChannel.MapMode.READ_ONLY,
+					start, Math.min(window, this.blockSize - start));
+			}
+			this.mapped = windows;
+		}
+		return this.mapped;
+	}
+
+	static long readIndex(FileChannel index, Map<String,Long> entries)
+		throws IOException
+	{
+		// Purpose: reads the entries of the index file 'index'
+		// Returns: the position after the last complete entry
+		// Effects: if 'entries' is not null, maps each accession and
+		//          accession.version to its entry's position and size
+		// Throws: IOException if 'index' is not a sequence store index
+
+		index.position(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+			Channels.newInputStream(index), 1 << 16));
+		long position = 8;
+		try
+		{
+			if (in.readLong() != SequenceStoreWriter.MAGIC)
+			{
+				throw new IOException("not a sequence store index");
+			}
+			while (true)
+			{
+				String accession = in.readUTF();
+				String version = in.readUTF();
+				in.readByte();
+				in.readInt();
+				int blockCount = in.readInt();
+				if (blockCount < 0 || in.skipBytes(12 * blockCount) !=
+				    12 * blockCount)
+				{
+					break;
+				}
+				long size = 2 + utfLength(accession) + 2 +
+					utfLength(version) + 9 + 12L * blockCount;
+				if (entries != null)
+				{
+					Long located = Long.valueOf(
+						(position << ENTRYBITS) | size);
+					entries.put(accession, located);
+					if (version.length() > 0)
+					{
+						entries.put(version, located);
+					}
+				}
+				position += size;
+			}
+		}
+		catch (EOFException e)
+		{
+			// a torn entry or the end of the index
+		}
+		return position;
+	}
+
+	private static int utfLength(String text)
+	{
+		// Purpose: counts the bytes of 'text' in modified UTF-8
+
+		int length = 0;
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			length += (c >= 1 && c <= 0x7f) ? 1 : (c <= 0x7ff ? 2 : 3);
+		}
+		return length;
+	}
+
+	private static class Entry
+	{
+		// Concept:
+		//	  IS: one index entry
+
+		String version;
+		int bits;
+		int length;
+		long[] offsets;
+		int[] sizes;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the store files
+	private FileChannel blocks;
+	private FileChannel index;
+
+	// size of the block file when the store was opened
+	private long blockSize;
+
+	// the windows of the block file, null until first needed
+	private MappedByteBuffer[] mapped = null;
+
+	// accession and accession.version to (entry position << ENTRYBITS)
+	// | entry size
+	private HashMap<String,Long> entries = new HashMap<String,Long>();
+
+	//
+	// class vars
+	//
+
+	// bits of an entry's size in the located value; an entry of the
+	// longest sequence is under 2^19 bytes
+	private static final int ENTRYBITS = 20;
+
+	private static final long WINDOWMASK =
+		(1L << SequenceStoreWriter.WINDOWBITS) - 1;
+}
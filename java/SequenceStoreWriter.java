@@ -0,0 +1,349 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+
+public class SequenceStoreWriter
+{
+	// Concept:
+	//	  IS: an object that appends sequences to a sequence store, the
+	//	      files "<base>.seqs" (blocks) and "<base>.seqx" (index)
+	//	      read by SequenceStore
+	//	 HAS: the open store files and a deflater
+	//	DOES: Given a sequence record, packs its residues, compresses
+	//	      them in fixed size blocks and appends the blocks and an
+	//	      index entry. Existing entries are never rewritten, a new
+	//	      version of an accession is just appended after the old one
+	// Implementation:
+	//	Residues are packed with the smallest alphabet that holds the
+	//	whole sequence:
+	//	    2 bits  ACGT
+	//	    4 bits  ACGTRYSWKMBDHVN-
+	//	    5 bits  A-Z * -  (amino acids, and nucleotides with U)
+	//	The packed sequence is cut into blocks of BLOCKRESIDUES residues,
+	//	each deflated on its own so a read inflates only the blocks it
+	//	needs. Blocks never cross a 2^WINDOWBITS boundary of the block
+	//	file (the writer pads up to it) so a reader can map the file in
+	//	windows and find each block whole in one window.
+	//	An index entry is:
+	//	    accession, version (UTF), bits (byte), length (int),
+	//	    block count (int), per block: offset (long), size (int)
+	//	Index entries are written only after their blocks are forced to
+	//	disk, and a torn entry at the end of the index (from a crash) is
+	//	cut off when the store is opened again, so the index only ever
+	//	names complete blocks.
+	//	Typical use:
+	//	    SequenceStoreWriter writer = new SequenceStoreWriter("gb");
+	//	    while (...) {
+	//	        record.readText(reader);
+	//	        writer.append(record);
+	//	    }
+	//	    writer.close();
+
+	//
+	// Constructors
+	//
+
+	public SequenceStoreWriter(String base)
+		throws IOException
+	{
+		// Purpose: opens the store 'base' for appending, creating it if
+		//          it does not exist
+		// Throws: IOException if the files can't be opened or are not a
+		//         sequence store
+
+		this.blocks = FileChannel.open(new File(base + BLOCKSUFFIX).toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		this.index = FileChannel.open(new File(base + INDEXSUFFIX).toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		if (this.index.size() == 0)
+		{
+			writeMagic(this.blocks);
+			writeMagic(this.index);
+		}
+		else
+		{
+			// drop a torn last entry
+			this.index.truncate(SequenceStore.readIndex(this.index, null));
+		}
+		this.blockEnd = Math.max(8, this.blocks.size());
+		this.indexEnd = this.index.size();
+	}
+
+	//
+	// Methods
+	//
+
+	public boolean append(SeqRecord record)
+		throws IOException
+	{
+		// Purpose: appends the sequence of 'record' under its primary
+		//          accession and version
+		// Returns: false if 'record' has no accession (end of input)
+		// Throws: IOException if the store can't be written
+
+		if (record.getSeqIds().isEmpty())
+		{
+			return false;
+		}
+		append((String)record.getSeqIds().get(0), record.getVersion(),
+		       record.getBases());
+		return true;
+	}
+
+	public void append(String accession, String version,
+			   CharSequence residues)
+		throws IOException
+	{
+		// Purpose: appends normalized 'residues' under 'accession' and
+		//          'version'
+		// Returns: nothing
+		// Throws: IOException if the store can't be written,
+		//         IllegalArgumentException if a residue is not a letter,
+		//         '*' or '-'
+
+		int length = residues.length();
+		int bits = bitsFor(residues);
+		byte[] codes = CODES[bits];
+		int blockCount = (length + BLOCKRESIDUES - 1) / BLOCKRESIDUES;
+		long[] offsets = new long[blockCount];
+		int[] sizes = new int[blockCount];
+
+		for (int b = 0; b < blockCount; b++)
+		{
+			int from = b * BLOCKRESIDUES;
+			int to = Math.min(length, from + BLOCKRESIDUES);
+			int packedSize = pack(residues, from, to, bits, codes);
+
+			this.deflater.reset();
+			this.deflater.setInput(this.packed, 0, packedSize);
+			this.deflater.finish();
+			int size = 0;
+			while (!this.deflater.finished())
+			{
+				if (size == this.compressed.length)
+				{
+					byte[] larger = new byte[size * 2];
+					System.arraycopy(this.compressed, 0, larger, 0, size);
+					this.compressed = larger;
+				}
+				size += this.deflater.deflate(this.compressed, size,
+					this.compressed.length - size);
+			}
+
+			// keep the block inside one window
+			long windowEnd = ((this.blockEnd >>> WINDOWBITS) + 1)
+				<< WINDOWBITS;
+			if (this.blockEnd + size > windowEnd)
+			{
+				this.blockEnd = windowEnd;
+			}
+			offsets[b] = this.blockEnd;
+			sizes[b] = size;
+			writeFully(this.blocks, ByteBuffer.wrap(this.compressed, 0, size),
+				   this.blockEnd);
+			this.blockEnd += size;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+			64 + 12 * blockCount);
+		DataOutputStream entry = new DataOutputStream(bytes);
+		entry.writeUTF(accession);
+		entry.writeUTF(version == null ? "" : version);
+		entry.writeByte(bits);
+		entry.writeInt(length);
+		entry.writeInt(blockCount);
+		for (int b = 0; b < blockCount; b++)
+		{
+			entry.writeLong(offsets[b]);
+			entry.writeInt(sizes[b]);
+		}
+		entry.flush();
+		this.pending.write(bytes.toByteArray());
+		this.count++;
+		if (this.pending.size() >= FLUSHSIZE)
+		{
+			flush();
+		}
+	}
+
+	public long getCount()
+		// Purpose: accessor for the number of sequences appended
+	{
+		return this.count;
+	}
+
+	public void flush()
+		throws IOException
+	{
+		// Purpose: makes the sequences appended so far durable and
+		//          visible to stores opened afterwards
+		// Effects: forces the blocks, then writes and forces the index
+
+		if (this.pending.size() == 0)
+		{
+			return;
+		}
+		this.blocks.force(false);
+		byte[] entries = this.pending.toByteArray();
+		writeFully(this.index, ByteBuffer.wrap(entries), this.indexEnd);
+		this.indexEnd += entries.length;
+		this.index.force(false);
+		this.pending.reset();
+	}
+
+	public void close()
+		throws IOException
+	{
+		// Purpose: flushes and closes the store
+
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			this.deflater.end();
+			this.blocks.close();
+			this.index.close();
+		}
+	}
+
+	private int pack(CharSequence residues, int from, int to, int bits,
+			 byte[] codes)
+	{
+		// Purpose: packs residues 'from' to 'to' into "packed"
+		// Returns: the number of packed bytes
+
+		long buffer = 0;
+		int buffered = 0;
+		int size = 0;
+		for (int i = from; i < to; i++)
+		{
+			buffer = (buffer << bits) | codes[residues.charAt(i) & 0x7f];
+			buffered += bits;
+			if (buffered >= 8)
+			{
+				buffered -= 8;
+				this.packed[size++] = (byte)(buffer >>> buffered);
+			}
+		}
+		if (buffered > 0)
+		{
+			this.packed[size++] = (byte)(buffer << (8 - buffered));
+		}
+		return size;
+	}
+
+	static int bitsFor(CharSequence residues)
+	{
+		// Purpose: finds the smallest alphabet that holds 'residues'
+		// Returns: 2, 4 or 5
+		// Throws: IllegalArgumentException if a residue is in none
+
+		int bits = 2;
+		for (int i = 0; i < residues.length(); i++)
+		{
+			char c = residues.charAt(i);
+			if (c >= 128 || CODES[5][c] < 0)
+			{
+				throw new IllegalArgumentException("residue '" + c +
+					"' at " + i + " can't be stored");
+			}
+			if (bits < 5 && CODES[bits][c] < 0)
+			{
+				bits = CODES[4][c] >= 0 ? 4 : 5;
+			}
+		}
+		return bits;
+	}
+
+	private static void writeMagic(FileChannel channel)
+		throws IOException
+	{
+		ByteBuffer magic = ByteBuffer.allocate(8);
+		magic.putLong(0, MAGIC);
+		writeFully(channel, magic, 0);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer,
+				       long position)
+		throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	// the store files and where the next block and entry go
+	private FileChannel blocks;
+	private FileChannel index;
+	private long blockEnd;
+	private long indexEnd;
+
+	// index entries waiting for their blocks to be forced
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+	// sequences appended
+	private long count = 0;
+
+	// buffers for one block
+	private Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+	private byte[] packed = new byte[(BLOCKRESIDUES * 5 + 7) / 8];
+	private byte[] compressed = new byte[BLOCKRESIDUES];
+
+	//
+	// class vars
+	//
+
+	// "SEQSTOR1", first 8 bytes of both files
+	static final long MAGIC = 0x53455153544f5231L;
+
+	static final String BLOCKSUFFIX = ".seqs";
+	static final String INDEXSUFFIX = ".seqx";
+
+	// residues per block
+	static final int BLOCKRESIDUES = 1 << 16;
+
+	// blocks never cross a multiple of 2^WINDOWBITS
+	static final int WINDOWBITS = 30;
+
+	// bytes of index entries written at once
+	private static final int FLUSHSIZE = 1 << 20;
+
+	// the residues of each alphabet in code order
+	static final String[] ALPHABETS = new String[6];
+
+	// CODES[bits][c] is the code of residue c, or -1
+	static final byte[][] CODES = new byte[6][];
+
+	static
+	{
+		ALPHABETS[2] = "ACGT";
+		ALPHABETS[4] = "ACGTRYSWKMBDHVN-";
+		ALPHABETS[5] = "ABCDEFGHIJKLMNOPQRSTUVWXYZ*-";
+		for (int bits = 2; bits <= 5; bits++)
+		{
+			if (ALPHABETS[bits] == null)
+			{
+				continue;
+			}
+			CODES[bits] = new byte[128];
+			java.util.Arrays.fill(CODES[bits], (byte)-1);
+			for (int i = 0; i < ALPHABETS[bits].length(); i++)
+			{
+				CODES[bits][ALPHABETS[bits].charAt(i)] = (byte)i;
+			}
+		}
+	}
+}
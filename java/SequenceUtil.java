@@ -0,0 +1,252 @@
+package org.jax.mgi.bio.seqrecord;
+
+public class SequenceUtil
+{
+	// Concept:
+	//	  IS: a set of utility functions for the sequence text of
+	//	      sequence records
+	//	 HAS: lookup tables for normalizing, complementing and
+	//	      validating residues
+	//	DOES: strips position numbers, blanks and newlines from
+	//	      sequence text and upper cases it, reverse complements
+	//	      nucleotide sequences and validates sequences against the
+	//	      IUPAC codes
+	// Implementation:
+	//	There are two paths. The bulk path copies the text into a
+	//	char array once and runs a branch free table lookup over it,
+	//	writing residues in place. It is still one character at a
+	//	time: the table gather and the in-place compaction are not
+	//	vectorized by the JIT, the gain is only from avoiding charAt
+	//	and the Character methods. The scalar path uses those and is
+	//	kept as the reference implementation. The bulk path is used
+	//	unless the system property seqrecord.sequence.bulk is "false"
+	//	or setBulk(false) is called. Both give identical results.
+
+	//
+	// Methods
+	//
+
+	public static boolean isBulk()
+		// Purpose: determines which path is in use
+		// Returns: true for the bulk path, false for the scalar path
+	{
+		return bulk;
+	}
+
+	public static void setBulk(boolean useBulk)
+		// Purpose: selects the bulk or scalar path for all callers
+	{
+		bulk = useBulk;
+	}
+
+	static char residue(char c)
+		// Purpose: normalizes one character as normalize does
+		// Returns: the upper case residue or 0 if 'c' is dropped
+	{
+		return c < 128 ? NORMAL[c] : 0;
+	}
+
+	public static String normalize(CharSequence text)
+		// Purpose: gets the residues of sequence text 'text'
+		// Returns: the letters, '*' and '-' of 'text' upper cased, with
+		//          position numbers, blanks and newlines removed
+		// Assumes: nothing
+		// Effects: nothing
+		// Throws: nothing
+		// Notes: used to clean GenBank ORIGIN and EMBL SQ lines
+	{
+		if (bulk)
+		{
+			char[] chars = toChars(text);
+			int count = 0;
+			for (int i = 0; i < chars.length; i++)
+			{
+				char c = chars[i];
+				char r = c < 128 ? NORMAL[c] : 0;
+				chars[count] = r;
+				// advance only when the character is kept
+				count += (r != 0) ? 1 : 0;
+			}
+			return new String(chars, 0, count);
+		}
+
+		StringBuffer residues = new StringBuffer(text.length());
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c < 128 && (Character.isLetter(c) || c == '*' ||
+			    c == '-'))
+			{
+				residues.append(Character.toUpperCase(c));
+			}
+		}
+		return residues.toString();
+	}
+
+	public static String reverseComplement(CharSequence bases)
+		// Purpose: gets the reverse complement of nucleotide 'bases'
+		// Returns: the reverse complement, IUPAC ambiguity codes are
+		//          complemented (e.g. R <-> Y) and case is kept.
+		//          Characters that are not IUPAC codes are kept as is
+	{
+		int length = bases.length();
+		if (bulk)
+		{
+			char[] chars = toChars(bases);
+			char[] reversed = new char[length];
+			for (int i = 0; i < length; i++)
+			{
+				char c = chars[i];
+				reversed[length - 1 - i] =
+					c < 128 ? COMPLEMENT[c] : c;
+			}
+			return new String(reversed);
+		}
+
+		StringBuffer reversed = new StringBuffer(length);
+		for (int i = length - 1; i >= 0; i--)
+		{
+			reversed.append(complement(bases.charAt(i)));
+		}
+		return reversed.toString();
+	}
+
+	public static boolean isNucleotide(CharSequence bases)
+		// Purpose: determines whether 'bases' has only IUPAC
+		//          nucleotide codes (ACGTU RYSWKM BDHV N and '-')
+		// Returns: true if it has, in either case
+	{
+		return firstInvalid(bases, NUCLEOTIDE) < 0;
+	}
+
+	public static boolean isProtein(CharSequence residues)
+		// Purpose: determines whether 'residues' has only IUPAC amino
+		//          acid codes (including B Z X U O, '*' and '-')
+		// Returns: true if it has, in either case
+	{
+		return firstInvalid(residues, PROTEIN) < 0;
+	}
+
+	public static int firstInvalid(CharSequence residues, boolean protein)
+		// Purpose: finds the first character of 'residues' that is not
+		//          an IUPAC nucleotide or, if 'protein', amino acid code
+		// Returns: its index, or -1 if all are valid
+	{
+		return firstInvalid(residues, protein ? PROTEIN : NUCLEOTIDE);
+	}
+
+	private static int firstInvalid(CharSequence residues, String codes)
+		// Purpose: finds the first character of 'residues' not in
+		//          upper case 'codes', ignoring case
+	{
+		if (bulk)
+		{
+			boolean[] valid = (codes == PROTEIN) ?
+				VALIDPROTEIN : VALIDNUCLEOTIDE;
+			char[] chars = toChars(residues);
+			for (int i = 0; i < chars.length; i++)
+			{
+				char c = chars[i];
+				if (c >= 128 || !valid[c])
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		for (int i = 0; i < residues.length(); i++)
+		{
+			char c = Character.toUpperCase(residues.charAt(i));
+			if (codes.indexOf(c) < 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static char complement(char c)
+		// Purpose: complements a single IUPAC nucleotide code
+	{
+		char upper = Character.toUpperCase(c);
+		int index = FORWARD.indexOf(upper);
+		if (index < 0)
+		{
+			return c;
+		}
+		char complement = REVERSE.charAt(index);
+		return Character.isLowerCase(c) ?
+			Character.toLowerCase(complement) : complement;
+	}
+
+	private static char[] toChars(CharSequence text)
+		// Purpose: copies 'text' into a new char array in one call
+	{
+		int length = text.length();
+		char[] chars = new char[length];
+		if (text instanceof String)
+		{
+			((String)text).getChars(0, length, chars, 0);
+		}
+		else if (text instanceof StringBuffer)
+		{
+			((StringBuffer)text).getChars(0, length, chars, 0);
+		}
+		else if (text instanceof StringBuilder)
+		{
+			((StringBuilder)text).getChars(0, length, chars, 0);
+		}
+		else
+		{
+			for (int i = 0; i < length; i++)
+			{
+				chars[i] = text.charAt(i);
+			}
+		}
+		return chars;
+	}
+
+	//
+	// class vars
+	//
+
+	// true to use the bulk path, volatile as setBulk may be called
+	// while other threads normalize
+	private static volatile boolean bulk = !"false".equals(
+		System.getProperty("seqrecord.sequence.bulk"));
+
+	// IUPAC codes, upper case
+	private static final String NUCLEOTIDE = "ACGTURYSWKMBDHVN-";
+	private static final String PROTEIN =
+		"ABCDEFGHIJKLMNOPQRSTUVWXYZ*-";
+
+	// each code in FORWARD complements the code at the same index of
+	// REVERSE
+	private static final String FORWARD = "ACGTURYSWKMBDHVN-";
+	private static final String REVERSE = "TGCAAYRSWMKVHDBN-";
+
+	// ASCII lookup tables for the bulk path:
+	// NORMAL maps a character to its upper case residue or 0 to drop it
+	// COMPLEMENT maps a character to its complement
+	// VALID* are true for characters that are valid codes
+	private static final char[] NORMAL = new char[128];
+	private static final char[] COMPLEMENT = new char[128];
+	private static final boolean[] VALIDNUCLEOTIDE = new boolean[128];
+	private static final boolean[] VALIDPROTEIN = new boolean[128];
+
+	static
+	{
+		for (char c = 0; c < 128; c++)
+		{
+			if (Character.isLetter(c) || c == '*' || c == '-')
+			{
+				NORMAL[c] = Character.toUpperCase(c);
+			}
+			COMPLEMENT[c] = complement(c);
+			char upper = Character.toUpperCase(c);
+			VALIDNUCLEOTIDE[c] = NUCLEOTIDE.indexOf(upper) >= 0;
+			VALIDPROTEIN[c] = PROTEIN.indexOf(upper) >= 0;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.*;
+
+public class ShardManifest
+{
+	// Concept:
+	//	  IS: a list of record aligned byte ranges (shards) of flat
+	//	      files of sequence records
+	//	 HAS: for each shard its id, format, file, start and end offset
+	//	DOES: reads and writes itself as a manifest file, and splits
+	//	      files into shards
+	// Implementation:
+	//	A manifest line is id<TAB>format<TAB>file<TAB>start<TAB>end.
+	//	A shard starts at the first line of a record, except the first
+	//	shard of a file which starts at 0, and ends where the next
+	//	shard starts. Boundaries are found by seeking to about every
+	//	"shardSize" bytes and skipping to the next line that starts
+	//	with the record start tag of the format, so planning reads only
+	//	a little of each file.
+
+	//
+	// Constructors
+	//
+
+	public ShardManifest()
+	{
+		// Purpose: creates an empty manifest
+	}
+
+	//
+	// Methods
+	//
+
+	public void plan(String file, String format, long shardSize)
+		throws IOException
+	{
+		// Purpose: splits 'file' into shards of about 'shardSize' bytes
+		//          and adds them to the manifest
+		// Returns: nothing
+		// Throws: IOException if 'file' can't be read,
+		//         IllegalArgumentException if 'format' is not known
+
+		String startTag = SeqRecordFactory.create(format).getStartTag();
+		PositionedReader reader = new PositionedReader(file);
+		try
+		{
+			long size = reader.length();
+			long start = 0;
+			while (start < size)
+			{
+				long end = size;
+				if (start + shardSize < size)
+				{
+					// finish the line we land in, then find the next
+					// record
+					reader.seek(start + shardSize);
+					reader.readLine();
+					end = reader.skipTo(startTag);
+				}
+				add(new Shard(this.shards.size(), format, file,
+					      start, end));
+				start = end;
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	public void add(Shard shard)
+		// Purpose: adds 'shard' to the manifest
+	{
+		this.shards.add(shard);
+	}
+
+	public Vector<Shard> getShards()
+		// Purpose: accessor for the shards in id order
+	{
+		return this.shards;
+	}
+
+	public void write(String manifestFile)
+		throws IOException
+	{
+		// Purpose: writes the manifest to 'manifestFile'
+
+		Writer out = new BufferedWriter(new FileWriter(manifestFile));
+		try
+		{
+			for (int i = 0; i < this.shards.size(); i++)
+			{
+				Shard shard = this.shards.get(i);
+				out.write(shard.getId() + "\t" + shard.getFormat() +
+					"\t" + shard.getFile() + "\t" +
+					shard.getStart() + "\t" + shard.getEnd() + "\n");
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	public static ShardManifest read(String manifestFile)
+		throws IOException
+	{
+		// Purpose: reads the manifest in 'manifestFile'
+		// Returns: the manifest
+		// Throws: IOException if the file can't be read or has a bad
+		//         line
+
+		ShardManifest manifest = new ShardManifest();
+		BufferedReader in = new BufferedReader(new FileReader(manifestFile));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				if (line.length() == 0)
+				{
+					continue;
+				}
+				String[] fields = line.split("\t");
+				try
+				{
+					manifest.add(new Shard(Integer.parseInt(fields[0]),
+						fields[1], fields[2],
+						Long.parseLong(fields[3]),
+						Long.parseLong(fields[4])));
+				}
+				catch (RuntimeException e)
+				{
+					throw new IOException(manifestFile +
+						": bad line " + line);
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return manifest;
+	}
+
+	public static class Shard
+	{
+		// Concept:
+		//	  IS: one record aligned byte range of a flat file
+		//	 HAS: an id, a format, a file, a start and an end offset
+
+		public Shard(int id, String format, String file, long start,
+			     long end)
+		{
+			this.id = id;
+			this.format = format;
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+
+		public int getId()
+		{
+			return this.id;
+		}
+
+		public String getFormat()
+		{
+			return this.format;
+		}
+
+		public String getFile()
+		{
+			return this.file;
+		}
+
+		public long getStart()
+		{
+			return this.start;
+		}
+
+		public long getEnd()
+		{
+			return this.end;
+		}
+
+		public long getLength()
+		{
+			return this.end - this.start;
+		}
+
+		private int id;
+		private String format;
+		private String file;
+		private long start;
+		private long end;
+	}
+
+	//
+	//instance vars
+	//
+
+	// the shards in id order
+	private Vector<Shard> shards = new Vector<Shard>();
+}
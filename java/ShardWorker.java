@@ -0,0 +1,322 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class ShardWorker
+{
+	// Concept:
+	//	  IS: one worker of a multi-process ingest of flat files that
+	//	      have been split into shards by a ShardManifest
+	//	 HAS: a manifest, an output directory holding one output file per
+	//	      shard and a completion ledger, and a RecordHandler
+	//	DOES: parses the shards assigned to it with the record class of
+	//	      their format, writes each shard's output and records the
+	//	      shard in the ledger when it is complete. Merges the shard
+	//	      outputs once all shards are complete
+	// Implementation:
+	//	Worker i of n takes the shards whose id modulo n is i and that
+	//	are not in the ledger, so rerunning a worker, or running worker
+	//	0 of 1, retries only the shards that did not complete. A shard's
+	//	output is written to a temporary file and renamed before its
+	//	ledger line "id<TAB>records" is appended under a file lock, so
+	//	workers in separate processes or on separate machines sharing
+	//	a file system can use the same ledger.
+	//	Command line use, one process per worker:
+	//	    ShardWorker plan <format> <shard size> <manifest> <file>...
+	//	    ShardWorker work <manifest> <output dir> <worker> <workers>
+	//	    ShardWorker merge <manifest> <output dir> <merged file>
+
+	//
+	// Constructors
+	//
+
+	public ShardWorker(
+		ShardManifest manifest,   // the shards of the ingest
+		String outputDir,         // where shard outputs and ledger go
+		RecordHandler handler)    // the work done on each record
+	{
+		// Purpose: creates a worker
+		// Throws: nothing
+
+		this.manifest = manifest;
+		this.outputDir = new File(outputDir);
+		this.handler = handler;
+	}
+
+	//
+	// Methods
+	//
+
+	public int run(int worker, int workerCount)
+		throws IOException
+	{
+		// Purpose: processes the incomplete shards assigned to 'worker'
+		//          of 'workerCount'
+		// Returns: the number of shards processed
+		// Effects: writes shard outputs and ledger lines
+		// Throws: IOException if a shard can't be read or its output
+		//         can't be written
+
+		this.outputDir.mkdirs();
+		Set<Integer> done = getCompleted();
+		Vector<ShardManifest.Shard> shards = this.manifest.getShards();
+		int processed = 0;
+		for (int i = 0; i < shards.size(); i++)
+		{
+			ShardManifest.Shard shard = shards.get(i);
+			if (shard.getId() % workerCount != worker ||
+			    done.contains(Integer.valueOf(shard.getId())))
+			{
+				continue;
+			}
+
+			File output = outputFile(shard);
+			File temp = new File(output.getPath() + ".tmp");
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(temp), StandardCharsets.ISO_8859_1),
+				1 << 16);
+			long records;
+			try
+			{
+				records = process(shard, this.handler, out);
+			}
+			finally
+			{
+				out.close();
+			}
+			Files.move(temp.toPath(), output.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			complete(shard, records);
+			processed++;
+		}
+		return processed;
+	}
+
+	public static long process(ShardManifest.Shard shard,
+				   RecordHandler handler, Writer out)
+		throws IOException
+	{
+		// Purpose: parses the records that start in 'shard'
+		// Returns: the number of records
+		// Effects: calls 'handler' for each record
+		// Throws: IOException if the file can't be read
+
+		SeqRecord record = SeqRecordFactory.create(shard.getFormat());
+		String startTag = record.getStartTag();
+		PositionedReader reader = new ReadAheadReader(shard.getFile(),
+							      shard.getStart());
+		long records = 0;
+		try
+		{
+			while (reader.skipTo(startTag) < shard.getEnd())
+			{
+				record.readText(reader);
+				if (record.getSeqIds().isEmpty())
+				{
+					break;
+				}
+				handler.handle(record, out);
+				records++;
+				if (record.getLine() == null)
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return records;
+	}
+
+	public Set<Integer> getCompleted()
+		throws IOException
+	{
+		// Purpose: reads the ids of the completed shards from the ledger
+		// Returns: the ids, none if there is no ledger yet
+
+		Set<Integer> done = new HashSet<Integer>();
+		File ledger = new File(this.outputDir, LEDGER);
+		if (!ledger.exists())
+		{
+			return done;
+		}
+		BufferedReader in = new BufferedReader(new FileReader(ledger));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				int tab = line.indexOf('\t');
+				if (tab > 0)
+				{
+					done.add(Integer.valueOf(line.substring(0, tab)));
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return done;
+	}
+
+	public void merge(String mergedFile)
+		throws IOException
+	{
+		// Purpose: concatenates the shard outputs in shard order
+		// Returns: nothing
+		// Throws: IOException if a shard is not complete or a file
+		//         can't be read or written
+
+		Set<Integer> done = getCompleted();
+		Vector<ShardManifest.Shard> shards = this.manifest.getShards();
+		FileChannel out = new FileOutputStream(mergedFile).getChannel();
+		try
+		{
+			for (int i = 0; i < shards.size(); i++)
+			{
+				ShardManifest.Shard shard = shards.get(i);
+				if (!done.contains(Integer.valueOf(shard.getId())))
+				{
+					throw new IOException("shard " + shard.getId() +
+						" is not complete");
+				}
+				FileChannel in = new FileInputStream(
+					outputFile(shard)).getChannel();
+				try
+				{
+					long position = 0;
+					long size = in.size();
+					while (position < size)
+					{
+						position += in.transferTo(position,
+							size - position, out);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private void complete(ShardManifest.Shard shard, long records)
+		throws IOException
+	{
+		// Purpose: appends the ledger line of 'shard' under a lock
+
+		FileChannel ledger = FileChannel.open(
+			new File(this.outputDir, LEDGER).toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.APPEND);
+		try
+		{
+			FileLock lock = ledger.lock();
+			try
+			{
+				ledger.write(ByteBuffer.wrap((shard.getId() + "\t" +
+					records + "\n").getBytes(
+						StandardCharsets.ISO_8859_1)));
+				ledger.force(true);
+			}
+			finally
+			{
+				lock.release();
+			}
+		}
+		finally
+		{
+			ledger.close();
+		}
+	}
+
+	private File outputFile(ShardManifest.Shard shard)
+	{
+		return new File(this.outputDir, "shard-" + shard.getId() + ".out");
+	}
+
+	public static void main(String[] args)
+		throws IOException
+	{
+		// Purpose: plans, works or merges a sharded ingest, see Concept
+		// Notes: the handler writes "accession<TAB>version<TAB>length"
+		//        per record
+
+		if (args.length >= 5 && args[0].equals("plan"))
+		{
+			ShardManifest manifest = new ShardManifest();
+			for (int i = 4; i < args.length; i++)
+			{
+				manifest.plan(args[i], args[1], Long.parseLong(args[2]));
+			}
+			manifest.write(args[3]);
+		}
+		else if (args.length == 5 && args[0].equals("work"))
+		{
+			ShardWorker worker = new ShardWorker(
+				ShardManifest.read(args[1]), args[2], SUMMARY);
+			worker.run(Integer.parseInt(args[3]),
+				   Integer.parseInt(args[4]));
+		}
+		else if (args.length == 4 && args[0].equals("merge"))
+		{
+			new ShardWorker(ShardManifest.read(args[1]), args[2],
+					SUMMARY).merge(args[3]);
+		}
+		else
+		{
+			System.err.println("usage: ShardWorker plan <format> " +
+				"<shard size> <manifest> <file>...\n" +
+				"       ShardWorker work <manifest> <output dir> " +
+				"<worker> <workers>\n" +
+				"       ShardWorker merge <manifest> <output dir> " +
+				"<merged file>");
+			System.exit(1);
+		}
+	}
+
+	//
+	//instance vars
+	//
+
+	// the shards of the ingest
+	private ShardManifest manifest;
+
+	// where shard outputs and the ledger are written
+	private File outputDir;
+
+	// the work done on each record
+	private RecordHandler handler;
+
+	// the completion ledger in the output directory
+	private static final String LEDGER = "ledger";
+
+	// writes "accession<TAB>version<TAB>length" for each record
+	public static final RecordHandler SUMMARY = new RecordHandler()
+	{
+		public void handle(SeqRecord record, Writer out)
+			throws IOException
+		{
+			out.write((String)record.getSeqIds().get(0));
+			out.write('\t');
+			out.write(record.getVersion());
+			out.write('\t');
+			out.write(Integer.toString(record.getSeqLength()));
+			out.write('\n');
+		}
+	};
+}
@@ -0,0 +1,269 @@
+package org.jax.mgi.bio.seqrecord;
+
+import java.io.*;
+import java.util.*;
+
+public class TaxonomyInterrogator
+{
+	// Concept:
+	//        IS: an object that queries a sequence record to determine
+	//	      if it is for a given organism using the NCBI taxonomy
+	//       HAS: the parent of every taxon from an NCBI taxdump nodes.dmp
+	//	      file and the set of descendants of each requested clade
+	//      DOES: Given a sequence record and a controlled vocabulary
+	//		string determine if the taxon id of the record is in
+	//		the clade mapped to the vocabulary. e.g. Given a
+	//		sequence record 's' and a string "mouse" determine
+	//		if 's' is from a taxon within the genus Mus
+	// RESPONSIBLE FOR: 1) loading the taxonomy tree from a local file
+	//		    2) mapping controlled vocab terms to clades
+	//		    3) providing basic predicates to compare the taxon
+	//		       of a sequence record to controlled vocabulary
+	// Implementation:
+	//	The tree is held as an int array indexed by taxon id holding
+	//	the parent id. Each clade is a BitSet indexed by taxon id so
+	//	classifying a record is a single bit test whatever the depth
+	//	of its taxon. Unlike GBSeqInterrogator, matching does not
+	//	depend on the wording of the lineage text.
+
+	//
+	// Constructors
+	//
+
+	public TaxonomyInterrogator(
+		String nodesFile)  // path of an NCBI taxdump nodes.dmp file
+		throws IOException
+	{
+		// Purpose: loads the taxonomy tree from 'nodesFile' and
+		//          precomputes the clades of the default vocabulary
+		//          (mouse, rat, rodent, human)
+		// Throws: IOException if 'nodesFile' can't be read or is not
+		//         in nodes.dmp format
+
+		loadNodes(nodesFile);
+		addClade("mouse", MOUSE);
+		addClade("rat", RAT);
+		addClade("rodent", RODENT);
+		addClade("human", HUMAN);
+	}
+
+	//
+	// Methods
+	//
+
+	public void addClade(
+		String organism,   // organism controlled vocabulary
+		int taxonId)       // NCBI taxon id at the root of the clade
+	{
+		// Purpose: maps 'organism' to the clade rooted at 'taxonId'
+		// Returns: nothing
+		// Assumes: 'organism' has been converted to lower case
+		// Effects: precomputes the descendants of 'taxonId'
+		// Throws: nothing
+
+		this.clades.put(organism, descendants(taxonId));
+	}
+
+	public boolean isOrganism(
+		SeqRecord s,       // a sequence record
+		String organism)   // organism controlled vocabulary
+	{
+	// Purpose: Determines whether sequence record 's' is for 'organism'
+        // Returns: true if the taxon of 's' is within the clade mapped to
+	//		'organism'
+        // Assumes: 'organism' is a valid controlled vocabulary and has
+	//		been converted to lower case
+        // Effects: nothing
+        // Throws: nothing
+        // Notes: records without a taxon id are never for 'organism'
+
+		// times the test for JFR when the event is enabled
+		SeqRecordFilterEvent event = SeqRecordFilterEvent.start();
+
+		return event.finish(s, "TaxonomyInterrogator", organism,
+			isTaxon(s.getTaxonId(), organism));
+	}
+
+	public boolean isTaxon(
+		int taxonId,       // an NCBI taxon id
+		String organism)   // organism controlled vocabulary
+	{
+	// Purpose: Determines whether 'taxonId' is within the clade mapped
+	//		to 'organism'
+        // Returns: true if it is, false if it isn't or is not a known id
+
+		BitSet clade = this.clades.get(organism);
+		return clade != null && taxonId > 0 && clade.get(taxonId);
+	}
+
+	public int getParent(int taxonId)
+		// Purpose: accessor for the parent of 'taxonId'
+		// Returns: the parent id, or -1 if 'taxonId' is not known
+	{
+		if (taxonId <= 0 || taxonId >= this.parents.length)
+		{
+			return -1;
+		}
+		return this.parents[taxonId];
+	}
+
+	private BitSet descendants(int cladeId)
+		// Purpose: finds every taxon at or below 'cladeId'
+		// Returns: a BitSet indexed by taxon id
+		// Notes: each taxon is visited once. Walking up from a taxon
+		//	  stops at the first ancestor already decided and the
+		//	  whole path gets that ancestor's answer
+	{
+		BitSet inClade = new BitSet(this.parents.length);
+		BitSet decided = new BitSet(this.parents.length);
+		int[] path = new int[64];
+
+		if (cladeId > 0 && cladeId < this.parents.length &&
+		    this.parents[cladeId] != 0)
+		{
+			inClade.set(cladeId);
+			decided.set(cladeId);
+		}
+
+		for (int taxon = 1; taxon < this.parents.length; taxon++)
+		{
+			if (this.parents[taxon] == 0 || decided.get(taxon))
+			{
+				continue;
+			}
+
+			// walk up until we reach a decided taxon or the root
+			int depth = 0;
+			int current = taxon;
+			boolean answer = false;
+			while (true)
+			{
+				if (decided.get(current))
+				{
+					answer = inClade.get(current);
+					break;
+				}
+				if (depth == path.length)
+				{
+					path = Arrays.copyOf(path, depth * 2);
+				}
+				path[depth++] = current;
+				int parent = this.parents[current];
+				if (parent == current || parent <= 0 ||
+				    parent >= this.parents.length)
+				{
+					// reached the root
+					break;
+				}
+				current = parent;
+			}
+
+			for (int i = 0; i < depth; i++)
+			{
+				decided.set(path[i]);
+				if (answer)
+				{
+					inClade.set(path[i]);
+				}
+			}
+		}
+		return inClade;
+	}
+
+	private void loadNodes(String nodesFile)
+		throws IOException
+	{
+		// Purpose: reads the taxon and parent ids of 'nodesFile'
+		// Returns: nothing
+		// Effects: sets "parents"
+		// Throws: IOException if the file can't be read or a line
+		//         does not start with two numeric fields
+		// Notes: lines look like "10090\t|\t862507\t|\tspecies\t|..."
+		//        Ids of taxa not in the file have parent 0
+
+		int[] loaded = new int[INITIALSIZE];
+		int maxId = 0;
+		BufferedReader reader = new BufferedReader(
+			new FileReader(nodesFile), 1 << 16);
+		try
+		{
+			String line;
+			int lineCount = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				lineCount++;
+				int idEnd = line.indexOf('|');
+				if (idEnd < 0)
+				{
+					continue;
+				}
+				int parentEnd = line.indexOf('|', idEnd + 1);
+				if (parentEnd < 0)
+				{
+					parentEnd = line.length();
+				}
+				int id = parseId(line, 0, idEnd);
+				int parent = parseId(line, idEnd + 1, parentEnd);
+				if (id <= 0 || parent <= 0)
+				{
+					throw new IOException(nodesFile + " line " +
+						lineCount + " is not a nodes.dmp line");
+				}
+				if (id >= loaded.length)
+				{
+					loaded = Arrays.copyOf(loaded,
+						Math.max(id + 1, loaded.length * 2));
+				}
+				loaded[id] = parent;
+				maxId = Math.max(maxId, id);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		this.parents = Arrays.copyOf(loaded, maxId + 1);
+	}
+
+	private static int parseId(String line, int start, int end)
+		// Purpose: reads the number between 'start' and 'end' of 'line'
+		//          ignoring surrounding blanks and tabs
+		// Returns: the number or -1 if there is none
+	{
+		int id = -1;
+		for (int i = start; i < end; i++)
+		{
+			char c = line.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				id = (id < 0 ? 0 : id * 10) + (c - '0');
+			}
+			else if (c != ' ' && c != '\t')
+			{
+				return -1;
+			}
+		}
+		return id;
+	}
+
+	//
+	// instance variables
+	//
+
+	// parent taxon id indexed by taxon id, 0 for unused ids
+	private int[] parents;
+
+	// maps organism controlled vocab to a BitSet of the taxon ids in
+	// its clade
+	private HashMap<String, BitSet> clades = new HashMap<String, BitSet>();
+
+	// default controlled vocab clades
+	private static final int MOUSE = 10088;    // genus Mus
+	private static final int RAT = 10114;      // genus Rattus
+	private static final int RODENT = 9989;    // order Rodentia
+	private static final int HUMAN = 9606;     // Homo sapiens
+
+	// initial size of the parent array, current dumps have about
+	// 3 million ids
+	private static final int INITIALSIZE = 1 << 22;
+}